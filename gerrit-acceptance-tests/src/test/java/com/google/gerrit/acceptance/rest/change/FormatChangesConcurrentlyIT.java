@@ -0,0 +1,82 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.acceptance.rest.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.TruthJUnit.assume;
+import static com.google.gerrit.extensions.client.ListChangesOption.CURRENT_COMMIT;
+import static com.google.gerrit.extensions.client.ListChangesOption.CURRENT_REVISION;
+import static com.google.gerrit.extensions.client.ListChangesOption.DETAILED_ACCOUNTS;
+import static com.google.gerrit.extensions.client.ListChangesOption.DETAILED_LABELS;
+import static com.google.gerrit.extensions.client.ListChangesOption.MESSAGES;
+import static com.google.gerrit.extensions.client.ListChangesOption.SUBMITTABLE;
+import static java.util.stream.Collectors.toList;
+
+import com.google.gerrit.acceptance.AbstractDaemonTest;
+import com.google.gerrit.acceptance.GerritConfig;
+import com.google.gerrit.acceptance.NoHttpd;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.client.ListChangesOption;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.server.OutputFormat;
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+
+@NoHttpd
+public class FormatChangesConcurrentlyIT extends AbstractDaemonTest {
+  private static final EnumSet<ListChangesOption> OPTIONS =
+      EnumSet.of(
+          CURRENT_COMMIT,
+          CURRENT_REVISION,
+          DETAILED_ACCOUNTS,
+          DETAILED_LABELS,
+          MESSAGES,
+          SUBMITTABLE);
+
+  @Test
+  @GerritConfig(name = "change.formatThreads", value = "4")
+  public void queryResultsMatchChangesFormattedOneByOne() throws Exception {
+    // Changes are only formatted concurrently when they are read from NoteDb.
+    assume().that(notesMigration.readChanges()).isTrue();
+
+    List<String> changeIds = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      PushOneCommit.Result r = createChange();
+      changeIds.add(0, r.getChangeId());
+      if (i % 3 == 0) {
+        gApi.changes().id(r.getChangeId()).current().review(ReviewInput.approve());
+      } else if (i % 3 == 1) {
+        gApi.changes().id(r.getChangeId()).addReviewer(user.email);
+      }
+    }
+
+    List<ChangeInfo> results =
+        gApi.changes().query("project:" + project.get()).withOptions(OPTIONS).get();
+
+    // Most recently updated first, like the query sorts them.
+    assertThat(results.stream().map(c -> c.changeId).collect(toList()))
+        .containsExactlyElementsIn(changeIds)
+        .inOrder();
+    Gson gson = OutputFormat.JSON_COMPACT.newGson();
+    for (ChangeInfo c : results) {
+      ChangeInfo serial = gApi.changes().id(c._number).get(OPTIONS);
+      assertThat(gson.toJson(c)).isEqualTo(gson.toJson(serial));
+    }
+  }
+}
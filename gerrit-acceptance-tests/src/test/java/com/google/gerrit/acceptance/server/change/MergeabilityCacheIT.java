@@ -0,0 +1,164 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.acceptance.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.acceptance.GitUtil.pushHead;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.AbstractDaemonTest;
+import com.google.gerrit.acceptance.NoHttpd;
+import com.google.gerrit.extensions.client.SubmitType;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.server.change.MergeabilityCache;
+import com.google.gerrit.server.change.MergeabilityCacheImpl.EntryKey;
+import com.google.gerrit.server.git.CodeReviewCommit;
+import com.google.gerrit.server.git.CodeReviewCommit.CodeReviewRevWalk;
+import com.google.gerrit.server.git.strategy.SubmitDryRun;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+@NoHttpd
+public class MergeabilityCacheIT extends AbstractDaemonTest {
+  private static final String FILE = "a.txt";
+  private static final String MERGE_STRATEGY = "recursive";
+
+  @Inject private MergeabilityCache mergeabilityCache;
+  @Inject private SubmitDryRun submitDryRun;
+
+  @Inject
+  @Named("mergeability")
+  private Cache<EntryKey, Boolean> cache;
+
+  private Branch.NameKey dest;
+  private ObjectId mergeable1;
+  private ObjectId conflicting;
+  private ObjectId mergeable2;
+
+  @Before
+  public void setUp() throws Exception {
+    dest = new Branch.NameKey(project, "refs/heads/master");
+    RevCommit base = commitBuilder().add(FILE, "base").message("base").create();
+    pushHead(testRepo, dest.get(), false);
+
+    conflicting = pushChange(base, FILE, "conflicting");
+    mergeable1 = pushChange(base, "b.txt", "b");
+    mergeable2 = pushChange(base, "c.txt", "c");
+    commitBuilder().add(FILE, "moved").message("moved").create();
+    pushHead(testRepo, dest.get(), false);
+  }
+
+  private ObjectId pushChange(RevCommit parent, String file, String content) throws Exception {
+    testRepo.reset(parent);
+    RevCommit c = commitBuilder().add(file, content).message(file).insertChangeId().create();
+    pushHead(testRepo, "refs/for/master", false);
+    testRepo.reset(parent);
+    return c;
+  }
+
+  @Test
+  public void getAllMatchesGet() throws Exception {
+    // The conflicting commit comes first, so its dry run could affect the following ones.
+    List<ObjectId> commits = ImmutableList.of(conflicting, mergeable1, mergeable2);
+    for (SubmitType type :
+        ImmutableList.of(
+            SubmitType.MERGE_IF_NECESSARY,
+            SubmitType.MERGE_ALWAYS,
+            SubmitType.REBASE_IF_NECESSARY,
+            SubmitType.CHERRY_PICK,
+            SubmitType.FAST_FORWARD_ONLY)) {
+      try (Repository repo = repoManager.openRepository(project)) {
+        Ref ref = repo.exactRef(dest.get());
+        cache.invalidateAll();
+        Map<ObjectId, Boolean> all =
+            mergeabilityCache.getAll(commits, ref, type, MERGE_STRATEGY, dest, repo);
+        assertThat(all.keySet()).containsExactlyElementsIn(commits);
+
+        cache.invalidateAll();
+        for (ObjectId commit : commits) {
+          assertThat(all.get(commit))
+              .named(commit.name() + " with " + type)
+              .isEqualTo(mergeabilityCache.get(commit, ref, type, MERGE_STRATEGY, dest, repo));
+        }
+        boolean moved = type != SubmitType.FAST_FORWARD_ONLY;
+        assertThat(all.get(conflicting)).isFalse();
+        assertThat(all.get(mergeable1)).isEqualTo(moved);
+        assertThat(all.get(mergeable2)).isEqualTo(moved);
+      }
+    }
+  }
+
+  @Test
+  public void getAllReturnsCachedResults() throws Exception {
+    try (Repository repo = repoManager.openRepository(project)) {
+      Ref ref = repo.exactRef(dest.get());
+      cache.invalidateAll();
+      assertThat(
+              mergeabilityCache.get(
+                  mergeable1, ref, SubmitType.MERGE_IF_NECESSARY, MERGE_STRATEGY, dest, repo))
+          .isTrue();
+
+      Map<ObjectId, Boolean> all =
+          mergeabilityCache.getAll(
+              ImmutableList.of(mergeable1, conflicting),
+              ref,
+              SubmitType.MERGE_IF_NECESSARY,
+              MERGE_STRATEGY,
+              dest,
+              repo);
+      assertThat(all.get(mergeable1)).isTrue();
+      assertThat(all.get(conflicting)).isFalse();
+      assertThat(
+              mergeabilityCache.getIfPresent(
+                  conflicting, ref, SubmitType.MERGE_IF_NECESSARY, MERGE_STRATEGY))
+          .isFalse();
+    }
+  }
+
+  @Test
+  public void dryRunsCanReuseWalk() throws Exception {
+    List<ObjectId> commits = ImmutableList.of(conflicting, mergeable1, mergeable2);
+    try (Repository repo = repoManager.openRepository(project);
+        CodeReviewRevWalk rw = CodeReviewCommit.newRevWalk(repo)) {
+      ObjectId tip = repo.exactRef(dest.get()).getObjectId();
+      Set<RevCommit> accepted = SubmitDryRun.getAlreadyAccepted(repo, rw);
+      // Many more dry runs than a walk has flags, which each dry run must release again.
+      for (int i = 0; i < 20; i++) {
+        for (ObjectId commit : commits) {
+          Set<RevCommit> commitAccepted = new HashSet<>(accepted);
+          commitAccepted.add(rw.parseCommit(tip));
+          commitAccepted.addAll(Arrays.asList(rw.parseCommit(commit).getParents()));
+          assertThat(
+                  submitDryRun.run(
+                      SubmitType.MERGE_IF_NECESSARY, repo, rw, dest, tip, commit, commitAccepted))
+              .named(commit.name() + " in round " + i)
+              .isEqualTo(!commit.equals(conflicting));
+        }
+      }
+    }
+  }
+}
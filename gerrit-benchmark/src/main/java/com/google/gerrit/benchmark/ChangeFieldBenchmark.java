@@ -0,0 +1,63 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.index.Schema;
+import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
+import com.google.gerrit.server.query.change.ChangeData;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Builds the fields of a change index document.
+ *
+ * <p>The notes of the change are loaded before each invocation, so this measures computing the
+ * field values, not reading NoteDb.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChangeFieldBenchmark {
+  private final Schema<ChangeData> schema = ChangeSchemaDefinitions.INSTANCE.getLatest();
+  private int next;
+  private ChangeData cd;
+
+  @Setup(Level.Invocation)
+  public void loadChange(ServerState state, RequestState ctx) throws Exception {
+    List<Change.Id> changes = state.server.getChanges();
+    Change.Id id = changes.get(next++ % changes.size());
+    ReviewDb db = state.server.getInjector().getProvider(ReviewDb.class).get();
+    cd = state.server.getInstance(ChangeData.Factory.class).create(db, InMemoryServer.PROJECT, id);
+    cd.notes();
+  }
+
+  @Benchmark
+  public void buildFields(RequestState ctx, Blackhole bh) {
+    for (Schema.Values<ChangeData> values : schema.buildFields(cd)) {
+      bh.consume(values.getValues());
+    }
+  }
+}
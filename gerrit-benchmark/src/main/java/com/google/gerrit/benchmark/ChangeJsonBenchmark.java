@@ -0,0 +1,80 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import com.google.gerrit.extensions.client.ListChangesOption;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.change.ChangeJson;
+import com.google.gerrit.server.query.change.ChangeData;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Formats changes as returned by the change query REST endpoint.
+ *
+ * <p>Each invocation formats new {@link ChangeData} instances, so that nothing computed by an
+ * earlier invocation is reused except what the server caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChangeJsonBenchmark {
+  @Param({"25"})
+  public int changes;
+
+  @Param({"false", "true"})
+  public boolean detailed;
+
+  private List<ChangeData> toFormat;
+
+  @Setup(Level.Invocation)
+  public void loadChanges(ServerState state, RequestState ctx) {
+    ChangeData.Factory changeDataFactory = state.server.getInstance(ChangeData.Factory.class);
+    ReviewDb db = state.server.getInjector().getProvider(ReviewDb.class).get();
+    toFormat = new ArrayList<>(changes);
+    for (Change.Id id : state.server.getChanges().subList(0, changes)) {
+      toFormat.add(changeDataFactory.create(db, InMemoryServer.PROJECT, id));
+    }
+  }
+
+  @Benchmark
+  public List<ChangeInfo> format(ServerState state, RequestState ctx) throws Exception {
+    EnumSet<ListChangesOption> options = EnumSet.of(ListChangesOption.LABELS);
+    if (detailed) {
+      options.add(ListChangesOption.DETAILED_LABELS);
+      options.add(ListChangesOption.DETAILED_ACCOUNTS);
+      options.add(ListChangesOption.CURRENT_REVISION);
+      options.add(ListChangesOption.MESSAGES);
+    }
+    return state
+        .server
+        .getInstance(ChangeJson.Factory.class)
+        .create(options)
+        .formatChangeDatas(toFormat);
+  }
+}
@@ -0,0 +1,166 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.access.AccessSectionInfo;
+import com.google.gerrit.extensions.api.access.PermissionInfo;
+import com.google.gerrit.extensions.api.access.PermissionRuleInfo;
+import com.google.gerrit.extensions.api.access.ProjectAccessInput;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.api.changes.ReviewInput.CommentInput;
+import com.google.gerrit.extensions.api.projects.ProjectInput;
+import com.google.gerrit.extensions.common.ChangeInput;
+import com.google.gerrit.lifecycle.LifecycleManager;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.server.ReviewDb;
+import com.google.gerrit.server.account.AccountManager;
+import com.google.gerrit.server.account.AuthRequest;
+import com.google.gerrit.server.notedb.MutableNotesMigration;
+import com.google.gerrit.server.notedb.NotesMigrationState;
+import com.google.gerrit.server.schema.SchemaCreator;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gerrit.testutil.InMemoryDatabase;
+import com.google.gerrit.testutil.InMemoryModule;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * In-memory server populated with changes, for benchmarks that need a realistic site.
+ *
+ * <p>Uses the same in-memory database, repositories and Lucene index as the server tests, with all
+ * change data in NoteDb. The site has one project in which a branch namespace is hidden, so that
+ * ref filtering cannot take the shortcut for users who can see all refs.
+ */
+public class InMemoryServer implements AutoCloseable {
+  public static final Project.NameKey PROJECT = new Project.NameKey("benchmark");
+
+  public static InMemoryServer start(int changeCount) throws Exception {
+    Config cfg = InMemoryModule.newDefaultConfig();
+    MutableNotesMigration migration =
+        MutableNotesMigration.newDisabled().setFrom(NotesMigrationState.NOTE_DB);
+    InMemoryServer server =
+        new InMemoryServer(Guice.createInjector(new InMemoryModule(cfg, migration)));
+    server.populate(changeCount);
+    return server;
+  }
+
+  @Inject private AccountManager accountManager;
+  @Inject private GerritApi gApi;
+  @Inject private InMemoryDatabase inMemoryDatabase;
+  @Inject private OneOffRequestContext requestContext;
+  @Inject private SchemaCreator schemaCreator;
+
+  private final Injector injector;
+  private final LifecycleManager lifecycle;
+  private final List<Change.Id> changes = new ArrayList<>();
+  private Account.Id userId;
+
+  private InMemoryServer(Injector injector) {
+    this.injector = injector;
+    lifecycle = new LifecycleManager();
+    lifecycle.add(injector);
+    injector.injectMembers(this);
+    lifecycle.start();
+  }
+
+  private void populate(int changeCount) throws Exception {
+    try (ReviewDb db = inMemoryDatabase.getDatabase().open()) {
+      schemaCreator.create(db);
+    }
+    // The first account is an administrator.
+    userId = accountManager.authenticate(AuthRequest.forUser("admin")).getAccountId();
+
+    try (ManualRequestContext ctx = openContext()) {
+      ProjectInput in = new ProjectInput();
+      in.name = PROJECT.get();
+      in.createEmptyCommit = true;
+      gApi.projects().create(in);
+      hideBranches("refs/heads/hidden/*");
+
+      for (int i = 0; i < changeCount; i++) {
+        ChangeInput ci = new ChangeInput();
+        ci.project = PROJECT.get();
+        ci.branch = "master";
+        ci.subject = "Change " + i;
+        int number = gApi.changes().create(ci).get()._number;
+        changes.add(new Change.Id(number));
+
+        ReviewInput review = ReviewInput.recommend().message("Looks good");
+        CommentInput comment = new CommentInput();
+        comment.path = "/COMMIT_MSG";
+        comment.line = 1;
+        comment.message = "Comment on change " + i;
+        review.comments = ImmutableMap.of(comment.path, ImmutableList.of(comment));
+        gApi.changes().id(number).current().review(review);
+      }
+    }
+  }
+
+  private void hideBranches(String pattern) throws Exception {
+    PermissionInfo read = new PermissionInfo(null, null);
+    read.rules =
+        ImmutableMap.of(
+            "global:Anonymous-Users",
+            new PermissionRuleInfo(PermissionRuleInfo.Action.BLOCK, null));
+    AccessSectionInfo section = new AccessSectionInfo();
+    section.permissions = ImmutableMap.of("read", read);
+    ProjectAccessInput access = new ProjectAccessInput();
+    access.add = ImmutableMap.of(pattern, section);
+    gApi.projects().name(PROJECT.get()).access(access);
+  }
+
+  public Injector getInjector() {
+    return injector;
+  }
+
+  public <T> T getInstance(Class<T> type) {
+    return injector.getInstance(type);
+  }
+
+  /** @return IDs of all changes created in {@link #PROJECT}. */
+  public List<Change.Id> getChanges() {
+    return changes;
+  }
+
+  public Account.Id getUserId() {
+    return userId;
+  }
+
+  /**
+   * Sets up a request context for the user on the current thread.
+   *
+   * <p>Benchmark methods run on JMH worker threads, so per-thread state must open its own context.
+   */
+  public ManualRequestContext openContext() throws OrmException {
+    return requestContext.openAs(userId);
+  }
+
+  @Override
+  public void close() {
+    lifecycle.stop();
+    InMemoryDatabase.drop(inMemoryDatabase);
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectControl;
+import com.google.gerrit.server.project.RefPatternMatcher;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Evaluates ref patterns and ref permissions, as done for every ref on push and fetch. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RefPermissionBenchmark {
+  private static final ImmutableList<String> PATTERNS =
+      ImmutableList.of(
+          "refs/heads/*",
+          "refs/heads/master",
+          "^refs/heads/rel-[0-9]+\\.[0-9]+",
+          "refs/users/${username}/*",
+          "^refs/heads/team/${shardeduserid}/.*");
+
+  private static final ImmutableList<String> REFS =
+      ImmutableList.of(
+          "refs/heads/master",
+          "refs/heads/rel-2.15",
+          "refs/heads/hidden/secret",
+          "refs/heads/team/01/1/feature",
+          "refs/users/admin/topic",
+          "refs/changes/01/1/1",
+          "refs/changes/01/1/meta",
+          "refs/tags/v1.0");
+
+  private List<RefPatternMatcher> matchers;
+  private CurrentUser user;
+
+  @Setup(Level.Trial)
+  public void setUp(ServerState state) {
+    matchers = PATTERNS.stream().map(RefPatternMatcher::getMatcher).collect(toImmutableList());
+    user =
+        state
+            .server
+            .getInstance(IdentifiedUser.GenericFactory.class)
+            .create(state.server.getUserId());
+  }
+
+  @Benchmark
+  public void matchPatterns(Blackhole bh) {
+    for (RefPatternMatcher matcher : matchers) {
+      for (String ref : REFS) {
+        bh.consume(matcher.match(ref, user));
+      }
+    }
+  }
+
+  @Benchmark
+  public void refVisibility(ServerState state, RequestState ctx, Blackhole bh) throws Exception {
+    // A new ProjectControl per invocation, since it caches the RefControl of each ref.
+    ProjectControl pc =
+        state
+            .server
+            .getInstance(ProjectCache.class)
+            .checkedGet(InMemoryServer.PROJECT)
+            .controlFor(user);
+    for (String ref : REFS) {
+      bh.consume(pc.controlForRef(ref).isVisible());
+    }
+  }
+}
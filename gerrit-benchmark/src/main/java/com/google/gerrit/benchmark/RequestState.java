@@ -0,0 +1,38 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import com.google.gerrit.server.util.ManualRequestContext;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Request context of the benchmark user on a benchmark thread. */
+@State(Scope.Thread)
+public class RequestState {
+  private ManualRequestContext ctx;
+
+  @Setup(Level.Trial)
+  public void open(ServerState state) throws Exception {
+    ctx = state.server.openContext();
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    ctx.close();
+  }
+}
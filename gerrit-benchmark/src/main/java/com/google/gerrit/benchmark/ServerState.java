@@ -0,0 +1,41 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** {@link InMemoryServer} shared by all threads of a benchmark. */
+@State(Scope.Benchmark)
+public class ServerState {
+  @Param({"100"})
+  public int changeCount;
+
+  public InMemoryServer server;
+
+  @Setup(Level.Trial)
+  public void start() throws Exception {
+    server = InMemoryServer.start(changeCount);
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    server.close();
+  }
+}
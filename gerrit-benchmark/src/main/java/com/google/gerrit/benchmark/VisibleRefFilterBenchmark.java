@@ -0,0 +1,69 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.benchmark;
+
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.VisibleRefFilter;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Filters all refs of a project down to those visible to a user, as done for a fetch. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VisibleRefFilterBenchmark {
+  private Repository repo;
+  private Map<String, Ref> refs;
+
+  @Setup(Level.Trial)
+  public void openRepository(ServerState state) throws Exception {
+    repo =
+        state
+            .server
+            .getInstance(GitRepositoryManager.class)
+            .openRepository(InMemoryServer.PROJECT);
+    refs = repo.getRefDatabase().getRefs(RefDatabase.ALL);
+  }
+
+  @TearDown(Level.Trial)
+  public void closeRepository() {
+    repo.close();
+  }
+
+  @Benchmark
+  public Map<String, Ref> filter(ServerState state, RequestState ctx) throws Exception {
+    ProjectState projectState =
+        state.server.getInstance(ProjectCache.class).checkedGet(InMemoryServer.PROJECT);
+    return state
+        .server
+        .getInstance(VisibleRefFilter.Factory.class)
+        .create(projectState, repo)
+        .filter(refs, false);
+  }
+}
@@ -0,0 +1,127 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.h2;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.server.cache.JavaCacheSerializer;
+import com.google.gerrit.server.cache.h2.H2CacheImpl.SqlStore;
+import com.google.inject.TypeLiteral;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reads and writes a persistent cache backed by an in-memory H2 database.
+ *
+ * <p>{@code diskOnly} uses a cache without memory tier, so every read goes to the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class H2CacheBenchmark {
+  private static final AtomicInteger dbCnt = new AtomicInteger();
+
+  @Param({"1000"})
+  public int keys;
+
+  @Param({"1024"})
+  public int valueSize;
+
+  private H2CacheImpl<String, String> memAndDisk;
+  private H2CacheImpl<String, String> diskOnly;
+  private SqlStore<String, String> memAndDiskStore;
+  private SqlStore<String, String> diskOnlyStore;
+  private String value;
+  private final AtomicInteger next = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    TypeLiteral<String> keyType = new TypeLiteral<String>() {};
+    memAndDiskStore = newStore(keyType);
+    diskOnlyStore = newStore(keyType);
+    memAndDisk =
+        new H2CacheImpl<>(
+            MoreExecutors.directExecutor(),
+            memAndDiskStore,
+            keyType,
+            CacheBuilder.newBuilder().build());
+    diskOnly =
+        new H2CacheImpl<>(
+            MoreExecutors.directExecutor(),
+            diskOnlyStore,
+            keyType,
+            CacheBuilder.newBuilder().maximumSize(0).build());
+
+    StringBuilder b = new StringBuilder(valueSize);
+    for (int i = 0; i < valueSize; i++) {
+      b.append((char) ('a' + i % 26));
+    }
+    value = b.toString();
+    for (int i = 0; i < keys; i++) {
+      memAndDisk.put(key(i), value);
+      diskOnly.put(key(i), value);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    memAndDiskStore.close();
+    diskOnlyStore.close();
+  }
+
+  @Benchmark
+  public String getMemory() {
+    return memAndDisk.getIfPresent(nextKey());
+  }
+
+  @Benchmark
+  public String getDisk() {
+    return diskOnly.getIfPresent(nextKey());
+  }
+
+  @Benchmark
+  public void put() {
+    memAndDisk.put(nextKey(), value);
+  }
+
+  private String nextKey() {
+    return key(next.getAndIncrement() % keys);
+  }
+
+  private static String key(int i) {
+    return "key-" + i;
+  }
+
+  private static SqlStore<String, String> newStore(TypeLiteral<String> keyType) {
+    return new SqlStore<>(
+        "jdbc:h2:mem:Benchmark_" + dbCnt.incrementAndGet(),
+        keyType,
+        null,
+        new JavaCacheSerializer<>(),
+        1,
+        1 << 30,
+        0);
+  }
+}
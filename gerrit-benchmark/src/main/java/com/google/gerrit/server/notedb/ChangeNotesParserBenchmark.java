@@ -0,0 +1,77 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.notedb;
+
+import com.google.gerrit.benchmark.InMemoryServer;
+import com.google.gerrit.benchmark.ServerState;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.notedb.ChangeNotesCommit.ChangeNotesRevWalk;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Parses the NoteDb meta ref of a change, bypassing the change notes cache. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChangeNotesParserBenchmark {
+  private Repository repo;
+  private ChangeNotesRevWalk walk;
+  private ChangeNoteUtil noteUtil;
+  private NoteDbMetrics metrics;
+  private final List<Change.Id> ids = new ArrayList<>();
+  private final List<ObjectId> tips = new ArrayList<>();
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp(ServerState state) throws Exception {
+    InMemoryServer server = state.server;
+    repo = server.getInstance(GitRepositoryManager.class).openRepository(InMemoryServer.PROJECT);
+    walk = ChangeNotesCommit.newRevWalk(repo);
+    noteUtil = server.getInstance(ChangeNoteUtil.class);
+    metrics = new NoteDbMetrics(new DisabledMetricMaker());
+    for (Change.Id id : server.getChanges()) {
+      ids.add(id);
+      tips.add(repo.exactRef(RefNames.changeMetaRef(id)).getObjectId());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    walk.close();
+    repo.close();
+  }
+
+  @Benchmark
+  public ChangeNotesState parse() throws Exception {
+    int i = next++ % ids.size();
+    walk.reset();
+    return new ChangeNotesParser(ids.get(i), tips.get(i), walk, noteUtil, metrics).parseAll();
+  }
+}
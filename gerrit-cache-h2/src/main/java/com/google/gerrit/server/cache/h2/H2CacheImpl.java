@@ -14,31 +14,26 @@
 
 package com.google.gerrit.server.cache.h2;
 
-import com.google.common.base.Throwables;
 import com.google.common.cache.AbstractLoadingCache;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.BloomFilter;
 import com.google.common.hash.Funnel;
 import com.google.common.hash.Funnels;
 import com.google.common.hash.PrimitiveSink;
 import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.server.cache.CacheSerializer;
 import com.google.gerrit.server.cache.PersistentCache;
 import com.google.inject.TypeLiteral;
 import java.io.IOException;
-import java.io.InvalidClassException;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
-import java.sql.Types;
 import java.util.Calendar;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -50,7 +45,6 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import org.h2.jdbc.JdbcSQLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +65,10 @@ import org.slf4j.LoggerFactory;
  * PatchListCache. The BloomFilter is sized when the cache starts to be 64,000 entries or double the
  * number of items currently in the database table.
  *
+ * <p>Keys and values are stored using the {@link CacheSerializer}s of the cache binding. Each row
+ * is tagged with the version of the binding; rows written with a different version are never read
+ * and are removed on the next prune, so incompatible formats invalidate cleanly.
+ *
  * <p>This cache does not export its items as a ConcurrentMap.
  *
  * @see H2CacheFactory
@@ -78,9 +76,6 @@ import org.slf4j.LoggerFactory;
 public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements PersistentCache {
   private static final Logger log = LoggerFactory.getLogger(H2CacheImpl.class);
 
-  private static final ImmutableSet<String> OLD_CLASS_NAMES =
-      ImmutableSet.of("com.google.gerrit.server.change.ChangeKind");
-
   private final Executor executor;
   private final SqlStore<K, V> store;
   private final TypeLiteral<K> keyType;
@@ -255,17 +250,22 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
   }
 
   private static class KeyType<K> {
+    private final CacheSerializer<K> serializer;
+
+    KeyType(CacheSerializer<K> serializer) {
+      this.serializer = serializer;
+    }
+
     String columnType() {
       return "OTHER";
     }
 
-    @SuppressWarnings("unchecked")
-    K get(ResultSet rs, int col) throws SQLException {
-      return (K) rs.getObject(col);
+    K get(ResultSet rs, int col) throws IOException, SQLException {
+      return serializer.deserialize(rs.getBytes(col));
     }
 
     void set(PreparedStatement ps, int col, K value) throws SQLException {
-      ps.setObject(col, value, Types.JAVA_OBJECT);
+      ps.setBytes(col, serialize(value));
     }
 
     Funnel<K> funnel() {
@@ -274,27 +274,29 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
 
         @Override
         public void funnel(K from, PrimitiveSink into) {
-          try (ObjectOutputStream ser = new ObjectOutputStream(new SinkOutputStream(into))) {
-            ser.writeObject(from);
-            ser.flush();
-          } catch (IOException err) {
-            throw new RuntimeException("Cannot hash as Serializable", err);
-          }
+          into.putBytes(serialize(from));
         }
       };
     }
 
+    private byte[] serialize(K key) {
+      try {
+        return serializer.serialize(key);
+      } catch (IOException err) {
+        throw new RuntimeException("Cannot serialize cache key " + key, err);
+      }
+    }
+
     @SuppressWarnings("unchecked")
-    static <K> KeyType<K> create(TypeLiteral<K> type) {
+    static <K> KeyType<K> create(TypeLiteral<K> type, CacheSerializer<K> serializer) {
       if (type.getRawType() == String.class) {
         return (KeyType<K>) STRING;
       }
-      return (KeyType<K>) OTHER;
+      return new KeyType<>(serializer);
     }
 
-    static final KeyType<?> OTHER = new KeyType<>();
     static final KeyType<String> STRING =
-        new KeyType<String>() {
+        new KeyType<String>(null) {
           @Override
           String columnType() {
             return "VARCHAR(4096)";
@@ -322,6 +324,8 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
   static class SqlStore<K, V> {
     private final String url;
     private final KeyType<K> keyType;
+    private final CacheSerializer<V> valueSerializer;
+    private final int version;
     private final long maxSize;
     private final long expireAfterWrite;
     private final BlockingQueue<SqlHandle> handles;
@@ -330,9 +334,18 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
     private volatile BloomFilter<K> bloomFilter;
     private int estimatedSize;
 
-    SqlStore(String jdbcUrl, TypeLiteral<K> keyType, long maxSize, long expireAfterWrite) {
+    SqlStore(
+        String jdbcUrl,
+        TypeLiteral<K> keyType,
+        CacheSerializer<K> keySerializer,
+        CacheSerializer<V> valueSerializer,
+        int version,
+        long maxSize,
+        long expireAfterWrite) {
       this.url = jdbcUrl;
-      this.keyType = KeyType.create(keyType);
+      this.keyType = KeyType.create(keyType, keySerializer);
+      this.valueSerializer = valueSerializer;
+      this.version = version;
       this.maxSize = maxSize;
       this.expireAfterWrite = expireAfterWrite;
 
@@ -374,27 +387,24 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
         c = acquire();
         try (Statement s = c.conn.createStatement()) {
           if (estimatedSize <= 0) {
-            try (ResultSet r = s.executeQuery("SELECT COUNT(*) FROM data")) {
+            try (ResultSet r =
+                s.executeQuery("SELECT COUNT(*) FROM data WHERE version=" + version)) {
               estimatedSize = r.next() ? r.getInt(1) : 0;
             }
           }
 
           BloomFilter<K> b = newBloomFilter();
-          try (ResultSet r = s.executeQuery("SELECT k FROM data")) {
+          try (ResultSet r = s.executeQuery("SELECT k FROM data WHERE version=" + version)) {
             while (r.next()) {
               b.put(keyType.get(r, 1));
             }
-          } catch (JdbcSQLException e) {
-            if (e.getCause() instanceof InvalidClassException) {
-              log.warn(
-                  "Entries cached for "
-                      + url
-                      + " have an incompatible class and can't be deserialized. "
-                      + "Cache is flushed.");
-              invalidateAll();
-            } else {
-              throw e;
-            }
+          } catch (IOException e) {
+            log.warn(
+                "Entries cached for "
+                    + url
+                    + " have an incompatible class and can't be deserialized. "
+                    + "Cache is flushed.");
+            invalidateAll();
           }
           return b;
         }
@@ -412,9 +422,10 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       try {
         c = acquire();
         if (c.get == null) {
-          c.get = c.conn.prepareStatement("SELECT v, created FROM data WHERE k=?");
+          c.get = c.conn.prepareStatement("SELECT v, created FROM data WHERE k=? AND version=?");
         }
         keyType.set(c.get, 1, key);
+        c.get.setInt(2, version);
         try (ResultSet r = c.get.executeQuery()) {
           if (!r.next()) {
             missCount.incrementAndGet();
@@ -428,8 +439,15 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
             return null;
           }
 
-          @SuppressWarnings("unchecked")
-          V val = (V) r.getObject(1);
+          V val;
+          try {
+            val = valueSerializer.deserialize(r.getBytes(1));
+          } catch (IOException e) {
+            log.warn("Cannot deserialize cache entry of " + url + " for " + key, e);
+            invalidate(c, key);
+            missCount.incrementAndGet();
+            return null;
+          }
           ValueHolder<V> h = new ValueHolder<>(val);
           h.clean = true;
           hitCount.incrementAndGet();
@@ -439,9 +457,7 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
           c.get.clearParameters();
         }
       } catch (SQLException e) {
-        if (!isOldClassNameError(e)) {
-          log.warn("Cannot read cache " + url + " for " + key, e);
-        }
+        log.warn("Cannot read cache " + url + " for " + key, e);
         c = close(c);
         return null;
       } finally {
@@ -449,15 +465,6 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       }
     }
 
-    private static boolean isOldClassNameError(Throwable t) {
-      for (Throwable c : Throwables.getCausalChain(t)) {
-        if (c instanceof ClassNotFoundException && OLD_CLASS_NAMES.contains(c.getMessage())) {
-          return true;
-        }
-      }
-      return false;
-    }
-
     private boolean expired(Timestamp created) {
       if (expireAfterWrite == 0) {
         return false;
@@ -495,18 +502,22 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
         c = acquire();
         if (c.put == null) {
           c.put =
-              c.conn.prepareStatement("MERGE INTO data (k, v, created, accessed) VALUES(?,?,?,?)");
+              c.conn.prepareStatement(
+                  "MERGE INTO data (k, v, version, created, accessed) VALUES(?,?,?,?,?)");
         }
         try {
           keyType.set(c.put, 1, key);
-          c.put.setObject(2, holder.value, Types.JAVA_OBJECT);
-          c.put.setTimestamp(3, new Timestamp(holder.created));
-          c.put.setTimestamp(4, TimeUtil.nowTs());
+          c.put.setBytes(2, valueSerializer.serialize(holder.value));
+          c.put.setInt(3, version);
+          c.put.setTimestamp(4, new Timestamp(holder.created));
+          c.put.setTimestamp(5, TimeUtil.nowTs());
           c.put.executeUpdate();
           holder.clean = true;
         } finally {
           c.put.clearParameters();
         }
+      } catch (IOException e) {
+        log.warn("Cannot serialize value for cache " + url, e);
       } catch (SQLException e) {
         log.warn("Cannot put into cache " + url, e);
         c = close(c);
@@ -561,6 +572,8 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       try {
         c = acquire();
         try (Statement s = c.conn.createStatement()) {
+          s.executeUpdate("DELETE FROM data WHERE version!=" + version);
+
           long used = 0;
           try (ResultSet r = s.executeQuery("SELECT SUM(space) FROM data")) {
             used = r.next() ? r.getLong(1) : 0;
@@ -573,7 +586,13 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
               s.executeQuery(
                   "SELECT" + " k" + ",space" + ",created" + " FROM data" + " ORDER BY accessed")) {
             while (maxSize < used && r.next()) {
-              K key = keyType.get(r, 1);
+              K key;
+              try {
+                key = keyType.get(r, 1);
+              } catch (IOException e) {
+                log.warn("Cannot deserialize key while pruning cache " + url, e);
+                continue;
+              }
               Timestamp created = r.getTimestamp(3);
               if (mem.getIfPresent(key) != null && !expired(created)) {
                 touch(c, key);
@@ -599,7 +618,14 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       try {
         c = acquire();
         try (Statement s = c.conn.createStatement();
-            ResultSet r = s.executeQuery("SELECT" + " COUNT(*)" + ",SUM(space)" + " FROM data")) {
+            ResultSet r =
+                s.executeQuery(
+                    "SELECT"
+                        + " COUNT(*)"
+                        + ",SUM(space)"
+                        + " FROM data"
+                        + " WHERE version="
+                        + version)) {
           if (r.next()) {
             size = r.getLong(1);
             space = r.getLong(2);
@@ -662,6 +688,7 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
         stmt.addBatch(
             "ALTER TABLE data ADD COLUMN IF NOT EXISTS "
                 + "space BIGINT AS OCTET_LENGTH(k) + OCTET_LENGTH(v)");
+        stmt.addBatch("ALTER TABLE data ADD COLUMN IF NOT EXISTS version INT DEFAULT 0 NOT NULL");
         stmt.executeBatch();
       }
     }
@@ -694,22 +721,4 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
       return null;
     }
   }
-
-  private static class SinkOutputStream extends OutputStream {
-    private final PrimitiveSink sink;
-
-    SinkOutputStream(PrimitiveSink sink) {
-      this.sink = sink;
-    }
-
-    @Override
-    public void write(int b) {
-      sink.putByte((byte) b);
-    }
-
-    @Override
-    public void write(byte[] b, int p, int n) {
-      sink.putBytes(b, p, n);
-    }
-  }
 }
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertTrue;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.server.cache.BooleanCacheSerializer;
 import com.google.gerrit.server.cache.h2.H2CacheImpl.SqlStore;
 import com.google.gerrit.server.cache.h2.H2CacheImpl.ValueHolder;
 import com.google.inject.TypeLiteral;
@@ -38,11 +39,14 @@ public class H2CacheTest {
   @Before
   public void setUp() {
     mem = CacheBuilder.newBuilder().build();
+    impl = newCache("jdbc:h2:mem:Test_" + (++dbCnt), 1);
+  }
 
+  private H2CacheImpl<String, Boolean> newCache(String url, int version) {
     TypeLiteral<String> keyType = new TypeLiteral<String>() {};
     SqlStore<String, Boolean> store =
-        new SqlStore<>("jdbc:h2:mem:Test_" + (++dbCnt), keyType, 1 << 20, 0);
-    impl = new H2CacheImpl<>(MoreExecutors.directExecutor(), store, keyType, mem);
+        new SqlStore<>(url, keyType, null, BooleanCacheSerializer.INSTANCE, version, 1 << 20, 0);
+    return new H2CacheImpl<>(MoreExecutors.directExecutor(), store, keyType, mem);
   }
 
   @Test
@@ -72,4 +76,19 @@ public class H2CacheTest {
             }));
     assertFalse("did not invoke Callable", called.get());
   }
+
+  @Test
+  public void versionMismatchIgnoresDiskEntries() {
+    String url = "jdbc:h2:mem:Test_" + (++dbCnt);
+    H2CacheImpl<String, Boolean> v1 = newCache(url, 1);
+    v1.put("foo", true);
+    mem.invalidate("foo");
+    assertTrue("exists on disk", v1.getIfPresent("foo"));
+    mem.invalidate("foo");
+
+    H2CacheImpl<String, Boolean> v2 = newCache(url, 2);
+    assertNull("ignored on disk", v2.getIfPresent("foo"));
+    v1.stop();
+    v2.stop();
+  }
 }
@@ -15,6 +15,7 @@
 package com.google.gerrit.elasticsearch;
 
 import static com.google.gson.FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.codec.binary.Base64.decodeBase64;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
@@ -22,7 +23,9 @@ import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.index.Index;
@@ -32,21 +35,39 @@ import com.google.gerrit.server.index.Schema.Values;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gwtorm.protobuf.ProtobufCodec;
+import io.searchbox.action.BulkableAction;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.http.JestHttpClient;
 import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.BulkResult.BulkResultItem;
 import io.searchbox.core.Delete;
 import io.searchbox.indices.CreateIndex;
 import io.searchbox.indices.DeleteIndex;
 import io.searchbox.indices.IndicesExists;
+import io.searchbox.indices.Refresh;
+import io.searchbox.indices.settings.GetSettings;
+import io.searchbox.indices.settings.UpdateSettings;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.Config;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
+  private static final Logger log = LoggerFactory.getLogger(AbstractElasticIndex.class);
+
+  /** Refresh interval used by Elasticsearch if none is configured for the index. */
+  private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
   protected static <T> List<T> decodeProtos(
       JsonObject doc, String fieldName, ProtobufCodec<T> codec) {
     JsonArray field = doc.getAsJsonArray(fieldName);
@@ -66,6 +87,21 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
   protected final Gson gson;
   protected final ElasticQueryBuilder queryBuilder;
 
+  private final int bulkActions;
+  private final long bulkFlushIntervalMillis;
+  private final Object bulkLock = new Object();
+  // Held while taking a batch from pending and writing it, so that batches are written in the order
+  // their actions were buffered.
+  private final Object flushLock = new Object();
+
+  // Actions buffered during a bulk update, or null if not in a bulk update. Guarded by bulkLock.
+  private List<BulkableAction<?>> pending;
+  // Buffered actions that failed to be written during the bulk update. Guarded by bulkLock.
+  private int bulkFailures;
+  // Only accessed by the caller of beginBulkUpdate() and endBulkUpdate().
+  private String previousRefreshInterval;
+  private ScheduledExecutorService bulkFlusher;
+
   AbstractElasticIndex(
       @GerritServerConfig Config cfg,
       SitePaths sitePaths,
@@ -83,6 +119,16 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
             indexName,
             schema.getVersion());
     this.client = clientBuilder.build();
+    this.bulkActions = Math.max(cfg.getInt("elasticsearch", null, "bulkActions", 1000), 1);
+    this.bulkFlushIntervalMillis =
+        Math.max(
+            cfg.getTimeUnit(
+                "elasticsearch",
+                null,
+                "bulkFlushInterval",
+                TimeUnit.SECONDS.toMillis(5),
+                TimeUnit.MILLISECONDS),
+            1);
   }
 
   @Override
@@ -92,6 +138,9 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
 
   @Override
   public void close() {
+    if (bulkFlusher != null) {
+      bulkFlusher.shutdownNow();
+    }
     client.shutdownClient();
   }
 
@@ -102,14 +151,65 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
 
   @Override
   public void delete(K c) throws IOException {
-    Bulk bulk = addActions(new Bulk.Builder(), c).refresh(true).build();
-    JestResult result = client.execute(bulk);
+    execute(deleteActions(c), "delete %s", c);
+  }
+
+  @Override
+  public void beginBulkUpdate() throws IOException {
+    synchronized (bulkLock) {
+      if (pending != null) {
+        return;
+      }
+      pending = new ArrayList<>();
+      bulkFailures = 0;
+    }
+    // Searches are not expected until endBulkUpdate(), so stop periodic refreshes, which would
+    // otherwise keep creating small segments.
+    previousRefreshInterval = getRefreshInterval();
+    setRefreshInterval("-1");
+
+    bulkFlusher =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("Elasticsearch-Bulk-" + indexName)
+                .setDaemon(true)
+                .build());
+    bulkFlusher.scheduleWithFixedDelay(
+        this::flushPending, bulkFlushIntervalMillis, bulkFlushIntervalMillis, MILLISECONDS);
+  }
+
+  @Override
+  public int endBulkUpdate() throws IOException {
+    synchronized (bulkLock) {
+      if (pending == null) {
+        return 0;
+      }
+    }
+    bulkFlusher.shutdown();
+    bulkFlusher = null;
+
+    int failures;
+    try {
+      synchronized (flushLock) {
+        List<BulkableAction<?>> batch;
+        synchronized (bulkLock) {
+          batch = pending;
+          pending = null;
+        }
+        int failed = writeBatch(batch);
+        synchronized (bulkLock) {
+          failures = bulkFailures + failed;
+        }
+      }
+    } finally {
+      setRefreshInterval(previousRefreshInterval);
+    }
+    JestResult result = client.execute(new Refresh.Builder().addIndex(indexName).build());
     if (!result.isSucceeded()) {
       throw new IOException(
-          String.format(
-              "Failed to delete change %s in index %s: %s",
-              c, indexName, result.getErrorMessage()));
+          String.format("Failed to refresh index %s: %s", indexName, result.getErrorMessage()));
     }
+    return failures;
   }
 
   @Override
@@ -133,7 +233,7 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
     }
   }
 
-  protected abstract Bulk.Builder addActions(Bulk.Builder builder, K c);
+  protected abstract List<? extends BulkableAction<?>> deleteActions(K c);
 
   protected abstract String getMappings();
 
@@ -150,6 +250,147 @@ abstract class AbstractElasticIndex<K, V> implements Index<K, V> {
     return new io.searchbox.core.Index.Builder(doc).index(indexName).type(type).id(id).build();
   }
 
+  /**
+   * Write actions to the index.
+   *
+   * <p>Outside of a bulk update the actions are executed right away, refreshing the index so that
+   * they are visible to the next search. During a bulk update they are buffered and sent without
+   * refresh once {@code elasticsearch.bulkActions} actions have accumulated, and at least every
+   * {@code elasticsearch.bulkFlushInterval}. Failures to write buffered actions are counted and
+   * returned by {@link #endBulkUpdate()}.
+   *
+   * @param actions actions to execute.
+   * @param format format of a description of the operation for error messages.
+   * @param args arguments referenced by {@code format}.
+   * @throws IOException if the actions could not be executed outside of a bulk update.
+   */
+  protected void execute(List<? extends BulkableAction<?>> actions, String format, Object... args)
+      throws IOException {
+    synchronized (bulkLock) {
+      if (pending != null) {
+        pending.addAll(actions);
+        if (pending.size() < bulkActions) {
+          return;
+        }
+      }
+    }
+    if (isBulkUpdate()) {
+      flushPending();
+      return;
+    }
+
+    Bulk bulk = new Bulk.Builder().addAction(actions).refresh(true).build();
+    JestResult result = client.execute(bulk);
+    if (!result.isSucceeded()) {
+      throw new IOException(
+          String.format(
+              "Failed to %s in index %s: %s",
+              String.format(format, args), indexName, result.getErrorMessage()));
+    }
+  }
+
+  private boolean isBulkUpdate() {
+    synchronized (bulkLock) {
+      return pending != null;
+    }
+  }
+
+  private void flushPending() {
+    synchronized (flushLock) {
+      List<BulkableAction<?>> batch;
+      synchronized (bulkLock) {
+        if (pending == null || pending.isEmpty()) {
+          return;
+        }
+        batch = pending;
+        pending = new ArrayList<>();
+      }
+      int failed = writeBatch(batch);
+      synchronized (bulkLock) {
+        bulkFailures += failed;
+      }
+    }
+  }
+
+  /**
+   * Write buffered actions without refresh, in requests of at most {@code bulkActions} actions.
+   *
+   * @return number of actions that failed.
+   */
+  private int writeBatch(List<BulkableAction<?>> batch) {
+    int failed = 0;
+    for (List<BulkableAction<?>> part : Lists.partition(batch, bulkActions)) {
+      failed += writePart(part);
+    }
+    return failed;
+  }
+
+  private int writePart(List<BulkableAction<?>> part) {
+    BulkResult result;
+    try {
+      result = client.execute(new Bulk.Builder().addAction(part).refresh(false).build());
+    } catch (IOException e) {
+      log.error("Failed to write {} documents to index {}", part.size(), indexName, e);
+      return part.size();
+    }
+    List<BulkResultItem> failedItems = result.getFailedItems();
+    if (!failedItems.isEmpty()) {
+      log.error(
+          "Failed to write {} of {} documents to index {}, e.g. {}: {}",
+          failedItems.size(),
+          part.size(),
+          indexName,
+          failedItems.get(0).id,
+          failedItems.get(0).error);
+      return failedItems.size();
+    }
+    if (!result.isSucceeded()) {
+      log.error(
+          "Failed to write {} documents to index {}: {}",
+          part.size(),
+          indexName,
+          result.getErrorMessage());
+      return part.size();
+    }
+    return 0;
+  }
+
+  private String getRefreshInterval() {
+    try {
+      JestResult result = client.execute(new GetSettings.Builder().addIndex(indexName).build());
+      if (result.isSucceeded()) {
+        JsonObject index = result.getJsonObject().getAsJsonObject(indexName);
+        JsonObject settings = index != null ? index.getAsJsonObject("settings") : null;
+        JsonObject indexSettings = settings != null ? settings.getAsJsonObject("index") : null;
+        JsonElement interval =
+            indexSettings != null ? indexSettings.get("refresh_interval") : null;
+        return interval != null ? interval.getAsString() : DEFAULT_REFRESH_INTERVAL;
+      }
+      log.warn(
+          "Failed to read refresh interval of index {}: {}", indexName, result.getErrorMessage());
+    } catch (IOException e) {
+      log.warn("Failed to read refresh interval of index {}", indexName, e);
+    }
+    return DEFAULT_REFRESH_INTERVAL;
+  }
+
+  private void setRefreshInterval(String interval) {
+    String settings = String.format("{\"index\":{\"refresh_interval\":\"%s\"}}", interval);
+    try {
+      JestResult result =
+          client.execute(new UpdateSettings.Builder(settings).addIndex(indexName).build());
+      if (!result.isSucceeded()) {
+        log.warn(
+            "Failed to set refresh interval of index {} to {}: {}",
+            indexName,
+            interval,
+            result.getErrorMessage());
+      }
+    } catch (IOException e) {
+      log.warn("Failed to set refresh interval of index {} to {}", indexName, interval, e);
+    }
+  }
+
   private static boolean shouldAddElement(Object element) {
     return !(element instanceof String) || !((String) element).isEmpty();
   }
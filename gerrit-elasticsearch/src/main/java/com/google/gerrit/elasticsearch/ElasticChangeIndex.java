@@ -59,8 +59,7 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.Bulk.Builder;
+import io.searchbox.core.Delete;
 import io.searchbox.core.Search;
 import io.searchbox.core.search.sort.Sort;
 import io.searchbox.core.search.sort.Sort.Sorting;
@@ -131,21 +130,10 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
       throw new IOException(e);
     }
 
-    Bulk bulk =
-        new Bulk.Builder()
-            .defaultIndex(indexName)
-            .defaultType("changes")
-            .addAction(insert(insertIndex, cd))
-            .addAction(delete(deleteIndex, cd.getId()))
-            .refresh(true)
-            .build();
-    JestResult result = client.execute(bulk);
-    if (!result.isSucceeded()) {
-      throw new IOException(
-          String.format(
-              "Failed to replace change %s in index %s: %s",
-              cd.getId(), indexName, result.getErrorMessage()));
-    }
+    execute(
+        ImmutableList.of(insert(insertIndex, cd), delete(deleteIndex, cd.getId())),
+        "replace change %s",
+        cd.getId());
   }
 
   @Override
@@ -163,8 +151,8 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
   }
 
   @Override
-  protected Builder addActions(Builder builder, Id c) {
-    return builder.addAction(delete(OPEN_CHANGES, c)).addAction(delete(OPEN_CHANGES, c));
+  protected List<Delete> deleteActions(Id c) {
+    return ImmutableList.of(delete(OPEN_CHANGES, c), delete(CLOSED_CHANGES, c));
   }
 
   @Override
@@ -183,6 +171,10 @@ class ElasticChangeIndex extends AbstractElasticIndex<Change.Id, ChangeData>
 
     QuerySource(List<String> types, Predicate<ChangeData> p, QueryOptions opts)
         throws QueryParseException {
+      if (opts.searchAfter() != null) {
+        // search_after is not available in Elasticsearch 2.x.
+        throw new QueryParseException("Cursor-based paging is not supported by this index");
+      }
       List<Sort> sorts =
           ImmutableList.of(
               new Sort(ChangeField.UPDATED.getName(), Sorting.DESC),
@@ -39,8 +39,7 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.Bulk.Builder;
+import io.searchbox.core.Delete;
 import io.searchbox.core.Search;
 import io.searchbox.core.search.sort.Sort;
 import io.searchbox.core.search.sort.Sort.Sorting;
@@ -87,20 +86,8 @@ public class ElasticGroupIndex extends AbstractElasticIndex<AccountGroup.UUID, A
 
   @Override
   public void replace(AccountGroup group) throws IOException {
-    Bulk bulk =
-        new Bulk.Builder()
-            .defaultIndex(indexName)
-            .defaultType(GROUPS)
-            .addAction(insert(GROUPS, group))
-            .refresh(true)
-            .build();
-    JestResult result = client.execute(bulk);
-    if (!result.isSucceeded()) {
-      throw new IOException(
-          String.format(
-              "Failed to replace group %s in index %s: %s",
-              group.getGroupUUID().get(), indexName, result.getErrorMessage()));
-    }
+    execute(
+        ImmutableList.of(insert(GROUPS, group)), "replace group %s", group.getGroupUUID().get());
   }
 
   @Override
@@ -110,8 +97,8 @@ public class ElasticGroupIndex extends AbstractElasticIndex<AccountGroup.UUID, A
   }
 
   @Override
-  protected Builder addActions(Builder builder, AccountGroup.UUID c) {
-    return builder.addAction(delete(GROUPS, c));
+  protected List<Delete> deleteActions(AccountGroup.UUID c) {
+    return ImmutableList.of(delete(GROUPS, c));
   }
 
   @Override
@@ -0,0 +1,203 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.elasticsearch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.elasticsearch.ElasticGroupIndex.GROUPS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.elasticsearch.ElasticTestUtils.ElasticNodeInfo;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.index.group.GroupSchemaDefinitions;
+import com.google.inject.util.Providers;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ElasticBulkUpdateTest {
+  private static ElasticNodeInfo nodeInfo;
+
+  @BeforeClass
+  public static void startIndexService() throws InterruptedException, ExecutionException {
+    nodeInfo = ElasticTestUtils.startElasticsearchNode();
+  }
+
+  @AfterClass
+  public static void stopElasticsearchServer() {
+    if (nodeInfo != null) {
+      nodeInfo.node.close();
+      nodeInfo.elasticDir.delete();
+      nodeInfo = null;
+    }
+  }
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Config cfg;
+  private TestIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    cfg = new Config();
+    ElasticTestUtils.configure(cfg, nodeInfo.port);
+    cfg.setInt("elasticsearch", null, "bulkActions", 10);
+    cfg.setString("elasticsearch", null, "bulkFlushInterval", "1 h");
+  }
+
+  @After
+  public void tearDown() {
+    if (index != null) {
+      index.close();
+      nodeInfo.node.client().admin().indices().prepareDelete(index.indexName).get();
+    }
+  }
+
+  @Test
+  public void allDocumentsAreWritten() throws Exception {
+    createIndex();
+    index.beginBulkUpdate();
+    for (int i = 0; i < 25; i++) {
+      index.write(i, "{\"id\":" + i + "}");
+    }
+    assertThat(index.endBulkUpdate()).isEqualTo(0);
+    assertThat(countDocuments()).isEqualTo(25);
+  }
+
+  @Test
+  public void previousRefreshIntervalIsRestored() throws Exception {
+    createIndex();
+    setRefreshInterval("30s");
+    index.beginBulkUpdate();
+    assertThat(getRefreshInterval()).isEqualTo("-1");
+    index.write(1, "{\"id\":1}");
+    index.endBulkUpdate();
+    assertThat(getRefreshInterval()).isEqualTo("30s");
+  }
+
+  @Test
+  public void pendingDocumentsAreFlushedByTimer() throws Exception {
+    cfg.setString("elasticsearch", null, "bulkFlushInterval", "100 ms");
+    createIndex();
+    index.beginBulkUpdate();
+    index.write(1, "{\"id\":1}");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (!exists(1) && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    // Documents are visible to a realtime get as soon as they are written, without refresh.
+    assertThat(exists(1)).isTrue();
+    assertThat(index.endBulkUpdate()).isEqualTo(0);
+  }
+
+  @Test
+  public void failedDocumentsAreCounted() throws Exception {
+    createIndex();
+    index.beginBulkUpdate();
+    // One failure in the batch written once bulkActions documents are buffered, two in the batch
+    // written by endBulkUpdate().
+    index.write(100, "{\"id\":\"not a number\"}");
+    for (int i = 0; i < 14; i++) {
+      index.write(i, "{\"id\":" + i + "}");
+    }
+    index.write(101, "{\"id\":\"not a number\"}");
+    index.write(102, "{\"id\":\"not a number\"}");
+    assertThat(index.endBulkUpdate()).isEqualTo(3);
+    assertThat(countDocuments()).isEqualTo(14);
+  }
+
+  private void createIndex() throws IOException {
+    index =
+        new TestIndex(
+            cfg,
+            new SitePaths(tempFolder.getRoot().toPath()),
+            new JestClientBuilder(new ElasticConfiguration(cfg)));
+    index.deleteAll();
+  }
+
+  private long countDocuments() {
+    return nodeInfo
+        .node
+        .client()
+        .prepareSearch(index.indexName)
+        .setSize(0)
+        .get()
+        .getHits()
+        .getTotalHits();
+  }
+
+  private boolean exists(int id) {
+    return nodeInfo
+        .node
+        .client()
+        .prepareGet(index.indexName, GROUPS, Integer.toString(id))
+        .setRealtime(true)
+        .get()
+        .isExists();
+  }
+
+  private String getRefreshInterval() {
+    return nodeInfo
+        .node
+        .client()
+        .admin()
+        .indices()
+        .prepareGetSettings(index.indexName)
+        .get()
+        .getSetting(index.indexName, "index.refresh_interval");
+  }
+
+  private void setRefreshInterval(String interval) {
+    nodeInfo
+        .node
+        .client()
+        .admin()
+        .indices()
+        .prepareUpdateSettings(index.indexName)
+        .setSettings(Settings.settingsBuilder().put("index.refresh_interval", interval))
+        .get();
+  }
+
+  private static class TestIndex extends ElasticGroupIndex {
+    TestIndex(Config cfg, SitePaths sitePaths, JestClientBuilder clientBuilder) {
+      super(
+          cfg,
+          sitePaths,
+          Providers.of(null),
+          clientBuilder,
+          GroupSchemaDefinitions.INSTANCE.getLatest());
+    }
+
+    void write(int id, String doc) throws IOException {
+      execute(
+          ImmutableList.of(
+              new io.searchbox.core.Index.Builder(doc)
+                  .index(indexName)
+                  .type(GROUPS)
+                  .id(Integer.toString(id))
+                  .build()),
+          "write document %s",
+          id);
+    }
+  }
+}
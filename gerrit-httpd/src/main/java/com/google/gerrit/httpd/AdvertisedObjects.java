@@ -0,0 +1,70 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.httpd;
+
+import static org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH;
+
+import com.google.common.cache.Weigher;
+import java.util.Collection;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Objects advertised to a client during the first request of a push over smart HTTP.
+ *
+ * <p>The ids are packed into a single byte array, as a repository may advertise hundreds of
+ * thousands of objects and the set is held until the client sends its second request.
+ */
+final class AdvertisedObjects {
+  static AdvertisedObjects create(Collection<ObjectId> ids) {
+    byte[] raw = new byte[ids.size() * OBJECT_ID_LENGTH];
+    int p = 0;
+    for (ObjectId id : ids) {
+      id.copyRawTo(raw, p);
+      p += OBJECT_ID_LENGTH;
+    }
+    return new AdvertisedObjects(raw);
+  }
+
+  private final byte[] raw;
+
+  private AdvertisedObjects(byte[] raw) {
+    this.raw = raw;
+  }
+
+  int size() {
+    return raw.length / OBJECT_ID_LENGTH;
+  }
+
+  void addTo(Set<ObjectId> ids) {
+    for (int p = 0; p < raw.length; p += OBJECT_ID_LENGTH) {
+      ids.add(ObjectId.fromRaw(raw, p));
+    }
+  }
+
+  /** Approximates memory usage of cache entries in bytes. */
+  static class AdvertisedObjectsWeigher
+      implements Weigher<AdvertisedObjectsCacheKey, AdvertisedObjects> {
+    @Override
+    public int weigh(AdvertisedObjectsCacheKey key, AdvertisedObjects value) {
+      return 16
+          + 2 * 8 // Size of AdvertisedObjectsCacheKey, 64 bit JVM
+          + 16
+          + 8 // Size of AdvertisedObjects, 64 bit JVM
+          + 16
+          + value.raw.length; // Size of packed ids
+    }
+  }
+}
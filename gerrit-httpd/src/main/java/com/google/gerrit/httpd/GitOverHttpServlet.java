@@ -42,9 +42,6 @@ import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -59,7 +56,6 @@ import org.eclipse.jgit.http.server.GitServlet;
 import org.eclipse.jgit.http.server.GitSmartHttpTools;
 import org.eclipse.jgit.http.server.ServletUtils;
 import org.eclipse.jgit.http.server.resolver.AsIsFileService;
-import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.PostUploadHook;
 import org.eclipse.jgit.transport.PostUploadHookChain;
@@ -115,8 +111,9 @@ public class GitOverHttpServlet extends GitServlet {
           new CacheModule() {
             @Override
             protected void configure() {
-              cache(ID_CACHE, AdvertisedObjectsCacheKey.class, new TypeLiteral<Set<ObjectId>>() {})
-                  .maximumWeight(4096)
+              cache(ID_CACHE, AdvertisedObjectsCacheKey.class, AdvertisedObjects.class)
+                  .maximumWeight(64 << 20)
+                  .weigher(AdvertisedObjects.AdvertisedObjectsWeigher.class)
                   .expireAfterWrite(10, TimeUnit.MINUTES);
             }
           });
@@ -311,10 +308,10 @@ public class GitOverHttpServlet extends GitServlet {
   }
 
   static class ReceiveFilter implements Filter {
-    private final Cache<AdvertisedObjectsCacheKey, Set<ObjectId>> cache;
+    private final Cache<AdvertisedObjectsCacheKey, AdvertisedObjects> cache;
 
     @Inject
-    ReceiveFilter(@Named(ID_CACHE) Cache<AdvertisedObjectsCacheKey, Set<ObjectId>> cache) {
+    ReceiveFilter(@Named(ID_CACHE) Cache<AdvertisedObjectsCacheKey, AdvertisedObjects> cache) {
       this.cache = cache;
     }
 
@@ -364,9 +361,9 @@ public class GitOverHttpServlet extends GitServlet {
       if (isGet) {
         cache.invalidate(cacheKey);
       } else {
-        Set<ObjectId> ids = cache.getIfPresent(cacheKey);
+        AdvertisedObjects ids = cache.getIfPresent(cacheKey);
         if (ids != null) {
-          rp.getAdvertisedObjects().addAll(ids);
+          ids.addTo(rp.getAdvertisedObjects());
           cache.invalidate(cacheKey);
         }
       }
@@ -374,7 +371,7 @@ public class GitOverHttpServlet extends GitServlet {
       chain.doFilter(request, response);
 
       if (isGet) {
-        cache.put(cacheKey, Collections.unmodifiableSet(new HashSet<>(rp.getAdvertisedObjects())));
+        cache.put(cacheKey, AdvertisedObjects.create(rp.getAdvertisedObjects()));
       }
     }
 
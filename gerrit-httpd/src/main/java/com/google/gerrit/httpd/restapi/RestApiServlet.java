@@ -45,6 +45,7 @@ import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
@@ -188,6 +189,9 @@ public class RestApiServlet extends HttpServlet {
 
   private static final int HEAP_EST_SIZE = 10 * 8 * 1024; // Presize 10 blocks.
 
+  /** JSON responses larger than this are streamed to the client instead of being buffered. */
+  private static final int JSON_STREAM_THRESHOLD = 1 << 20;
+
   /**
    * Garbage prefix inserted before JSON output to prevent XSSI.
    *
@@ -860,9 +864,11 @@ public class RestApiServlet extends HttpServlet {
       ListMultimap<String, String> config,
       Object result)
       throws IOException {
-    TemporaryBuffer.Heap buf = heap(HEAP_EST_SIZE, Integer.MAX_VALUE);
-    buf.write(JSON_MAGIC);
-    Writer w = new BufferedWriter(new OutputStreamWriter(buf, UTF_8));
+    boolean head = req != null && "HEAD".equals(req.getMethod());
+    SpillingOutputStream out =
+        new SpillingOutputStream(req, res, head ? Integer.MAX_VALUE : JSON_STREAM_THRESHOLD);
+    out.write(JSON_MAGIC);
+    Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
     Gson gson = newGson(config, req);
     if (result instanceof JsonElement) {
       gson.toJson((JsonElement) result, w);
@@ -871,8 +877,96 @@ public class RestApiServlet extends HttpServlet {
     }
     w.write('\n');
     w.flush();
+    if (out.isStreaming()) {
+      return out.finish();
+    }
     return replyBinaryResult(
-        req, res, asBinaryResult(buf).setContentType(JSON_TYPE).setCharacterEncoding(UTF_8));
+        req,
+        res,
+        asBinaryResult(out.getBuffer()).setContentType(JSON_TYPE).setCharacterEncoding(UTF_8));
+  }
+
+  /**
+   * Buffers the start of a JSON response, switching to writing it directly to the client once it
+   * grows beyond a threshold.
+   *
+   * <p>Once the response was spilled its status cannot be changed anymore, so a failure serializing
+   * the rest of it is propagated and aborts the connection, see {@link #handleException}.
+   *
+   * <p>Small responses are sent from the buffer with a Content-Length, and are only compressed if
+   * that makes them smaller. Large responses are sent with chunked transfer encoding, compressed on
+   * the fly if the client accepts gzip, so that the server never holds more than the threshold of
+   * the serialized response in memory.
+   */
+  private static class SpillingOutputStream extends OutputStream {
+    private final HttpServletRequest req;
+    private final HttpServletResponse res;
+    private final int threshold;
+    private TemporaryBuffer.Heap buf;
+    private CountingOutputStream counter;
+    private OutputStream dst;
+
+    SpillingOutputStream(@Nullable HttpServletRequest req, HttpServletResponse res, int threshold) {
+      this.req = req;
+      this.res = res;
+      this.threshold = threshold;
+      this.buf = heap(HEAP_EST_SIZE, Integer.MAX_VALUE);
+    }
+
+    boolean isStreaming() {
+      return dst != null;
+    }
+
+    TemporaryBuffer.Heap getBuffer() {
+      return buf;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (dst == null && buf.length() + 1 > threshold) {
+        spill();
+      }
+      if (dst != null) {
+        dst.write(b);
+      } else {
+        buf.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (dst == null && buf.length() + len > threshold) {
+        spill();
+      }
+      if (dst != null) {
+        dst.write(b, off, len);
+      } else {
+        buf.write(b, off, len);
+      }
+    }
+
+    private void spill() throws IOException {
+      res.setContentType(JSON_TYPE);
+      res.setCharacterEncoding(UTF_8.name());
+      counter = new CountingOutputStream(res.getOutputStream());
+      if (acceptsGzip(req)) {
+        res.setHeader("Content-Encoding", "gzip");
+        dst = new GZIPOutputStream(counter, 8192);
+      } else {
+        dst = counter;
+      }
+      buf.writeTo(dst, null);
+      buf = null;
+    }
+
+    /** @return number of bytes sent to the client. */
+    long finish() throws IOException {
+      if (dst instanceof GZIPOutputStream) {
+        ((GZIPOutputStream) dst).finish();
+      }
+      dst.close();
+      return counter.getCount();
+    }
   }
 
   private static Gson newGson(
@@ -1172,8 +1266,9 @@ public class RestApiServlet extends HttpServlet {
         .checkAny(GlobalPermission.fromAnnotation(d.pluginName, d.view.getClass()));
   }
 
-  private static long handleException(
-      Throwable err, HttpServletRequest req, HttpServletResponse res) throws IOException {
+  @VisibleForTesting
+  static long handleException(Throwable err, HttpServletRequest req, HttpServletResponse res)
+      throws IOException {
     String uri = req.getRequestURI();
     if (!Strings.isNullOrEmpty(req.getQueryString())) {
       uri += "?" + req.getQueryString();
@@ -1184,7 +1279,10 @@ public class RestApiServlet extends HttpServlet {
       res.reset();
       return replyError(req, res, SC_INTERNAL_SERVER_ERROR, "Internal server error", err);
     }
-    return 0;
+    // Part of the response, e.g. a large JSON response streamed by replyJson, was already sent with
+    // a success status. Fail the request so that the container aborts the connection rather than
+    // completing a truncated response the client would take for a successful one.
+    throw new IOException("Response already committed", err);
   }
 
   public static long replyError(
@@ -0,0 +1,50 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.httpd;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class AdvertisedObjectsTest {
+  @Test
+  public void addTo() {
+    Set<ObjectId> ids =
+        ImmutableSet.of(
+            ObjectId.fromString("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"),
+            ObjectId.fromString("0123456789abcdef0123456789abcdef01234567"),
+            ObjectId.zeroId());
+    AdvertisedObjects adv = AdvertisedObjects.create(ids);
+    assertThat(adv.size()).isEqualTo(3);
+
+    Set<ObjectId> result = new HashSet<>();
+    adv.addTo(result);
+    assertThat(result).containsExactlyElementsIn(ids);
+  }
+
+  @Test
+  public void empty() {
+    AdvertisedObjects adv = AdvertisedObjects.create(ImmutableSet.of());
+    assertThat(adv.size()).isEqualTo(0);
+
+    Set<ObjectId> result = new HashSet<>();
+    adv.addTo(result);
+    assertThat(result).isEmpty();
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.httpd.restapi;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.util.http.testutil.FakeHttpServletRequest;
+import com.google.gerrit.util.http.testutil.FakeHttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class RestApiServletTest {
+  private static final String MAGIC = ")]}'\n";
+
+  // Larger than the threshold above which JSON responses are streamed.
+  private static final String LARGE = Strings.repeat("x", 2 << 20);
+
+  @Test
+  public void smallJsonResponseIsBuffered() throws Exception {
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    RestApiServlet.replyJson(new FakeHttpServletRequest(), res, ImmutableListMultimap.of(), "x");
+
+    assertThat(res.getHeader("Content-Length")).isEqualTo(Integer.toString(MAGIC.length() + 4));
+    assertThat(res.getActualBodyString()).isEqualTo(MAGIC + "\"x\"\n");
+  }
+
+  @Test
+  public void largeJsonResponseIsStreamed() throws Exception {
+    FakeHttpServletRequest req = new FakeHttpServletRequest();
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    long sent = RestApiServlet.replyJson(req, res, ImmutableListMultimap.of(), LARGE);
+
+    assertThat(res.getHeader("Content-Length")).isNull();
+    assertThat(res.getHeader("Content-Encoding")).isNull();
+    assertThat(res.getActualBodyString()).isEqualTo(MAGIC + "\"" + LARGE + "\"\n");
+    assertThat(sent).isEqualTo(res.getActualBody().length);
+  }
+
+  @Test
+  public void largeJsonResponseIsStreamedCompressed() throws Exception {
+    FakeHttpServletRequest req = new FakeHttpServletRequest();
+    req.addHeader("Accept-Encoding", "gzip");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    long sent = RestApiServlet.replyJson(req, res, ImmutableListMultimap.of(), LARGE);
+
+    assertThat(res.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(sent).isEqualTo(res.getActualBody().length);
+    assertThat(sent).isLessThan((long) LARGE.length());
+    byte[] body =
+        ByteStreams.toByteArray(
+            new GZIPInputStream(new ByteArrayInputStream(res.getActualBody())));
+    assertThat(new String(body, UTF_8)).isEqualTo(MAGIC + "\"" + LARGE + "\"\n");
+  }
+
+  @Test
+  public void serializationErrorAfterSpillAbortsResponse() throws Exception {
+    Map<Object, String> result = new LinkedHashMap<>();
+    result.put("first", LARGE);
+    result.put(
+        new Object() {
+          @Override
+          public String toString() {
+            throw new IllegalStateException("cannot serialize key");
+          }
+        },
+        "second");
+    FakeHttpServletRequest req = new FakeHttpServletRequest();
+    FakeHttpServletResponse res =
+        new FakeHttpServletResponse() {
+          @Override
+          public synchronized boolean isCommitted() {
+            return getActualBody().length > 0;
+          }
+        };
+
+    IllegalStateException err = null;
+    try {
+      RestApiServlet.replyJson(req, res, ImmutableListMultimap.of(), result);
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      err = e;
+    }
+    // The start of the response was already sent with the default success status.
+    assertThat(res.getStatus()).isEqualTo(200);
+    assertThat(res.getActualBodyString()).startsWith(MAGIC);
+
+    try {
+      RestApiServlet.handleException(err, req, res);
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertThat(e.getCause()).isSameAs(err);
+    }
+  }
+}
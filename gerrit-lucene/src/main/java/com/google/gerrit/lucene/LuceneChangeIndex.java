@@ -48,6 +48,7 @@ import com.google.gerrit.server.index.IndexExecutor;
 import com.google.gerrit.server.index.IndexUtils;
 import com.google.gerrit.server.index.QueryOptions;
 import com.google.gerrit.server.index.Schema;
+import com.google.gerrit.server.index.change.ChangeCursor;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.index.change.ChangeIndex;
 import com.google.gerrit.server.index.change.ChangeIndexRewriter;
@@ -79,6 +80,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -270,12 +272,28 @@ public class LuceneChangeIndex implements ChangeIndex {
     return closedIndex;
   }
 
+  private static FieldDoc toFieldDoc(Object searchAfter) throws QueryParseException {
+    if (searchAfter == null) {
+      return null;
+    }
+    if (!(searchAfter instanceof ChangeCursor)) {
+      throw new QueryParseException("Unsupported search position: " + searchAfter);
+    }
+    // Field values must match the order and types of the sort fields in getSort(). Lucene only
+    // skips documents that compare equal to the position if their doc ID is not greater, so use
+    // an invalid doc ID and the next lower change ID instead: in descending order, everything
+    // strictly after (updated, id) is exactly everything at or after (updated, id - 1).
+    ChangeCursor c = (ChangeCursor) searchAfter;
+    return new FieldDoc(-1, Float.NaN, new Object[] {c.updated(), c.id() - 1L});
+  }
+
   private class QuerySource implements ChangeDataSource {
     private final List<ChangeSubIndex> indexes;
     private final Predicate<ChangeData> predicate;
     private final Query query;
     private final QueryOptions opts;
     private final Sort sort;
+    private final FieldDoc after;
 
     private QuerySource(
         List<ChangeSubIndex> indexes, Predicate<ChangeData> predicate, QueryOptions opts, Sort sort)
@@ -285,6 +303,7 @@ public class LuceneChangeIndex implements ChangeIndex {
       this.query = checkNotNull(queryBuilder.toQuery(predicate), "null query from Lucene");
       this.opts = opts;
       this.sort = sort;
+      this.after = toFieldDoc(opts.searchAfter());
     }
 
     @Override
@@ -336,7 +355,7 @@ public class LuceneChangeIndex implements ChangeIndex {
         TopFieldDocs[] hits = new TopFieldDocs[indexes.size()];
         for (int i = 0; i < indexes.size(); i++) {
           searchers[i] = indexes.get(i).acquire();
-          hits[i] = searchers[i].search(query, realLimit, sort);
+          hits[i] = searchers[i].searchAfter(after, query, realLimit, sort, false, false);
         }
         TopDocs docs = TopDocs.merge(sort, realLimit, hits);
 
@@ -200,7 +200,15 @@ public class Reindex extends SiteProgram {
     SiteIndexer<K, V, I> siteIndexer = def.getSiteIndexer();
     siteIndexer.setProgressOut(System.err);
     siteIndexer.setVerboseOut(verbose ? System.out : NullOutputStream.INSTANCE);
-    SiteIndexer.Result result = siteIndexer.indexAll(index);
+    SiteIndexer.Result result;
+    int bulkFailed;
+    index.beginBulkUpdate();
+    try {
+      result = siteIndexer.indexAll(index);
+    } finally {
+      bulkFailed = index.endBulkUpdate();
+    }
+    result = result.withFailed(bulkFailed);
     int n = result.doneCount() + result.failedCount();
     double t = result.elapsed(TimeUnit.MILLISECONDS) / 1000d;
     System.out.format(
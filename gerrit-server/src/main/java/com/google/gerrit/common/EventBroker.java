@@ -41,6 +41,7 @@ import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,6 +71,8 @@ public class EventBroker implements EventDispatcher {
 
   protected final Provider<ReviewDb> dbProvider;
 
+  private final UserScopedEventQueues queues;
+
   @Inject
   public EventBroker(
       DynamicSet<UserScopedEventListener> listeners,
@@ -77,13 +80,15 @@ public class EventBroker implements EventDispatcher {
       PermissionBackend permissionBackend,
       ProjectCache projectCache,
       ChangeNotes.Factory notesFactory,
-      Provider<ReviewDb> dbProvider) {
+      Provider<ReviewDb> dbProvider,
+      UserScopedEventQueues queues) {
     this.listeners = listeners;
     this.unrestrictedListeners = unrestrictedListeners;
     this.permissionBackend = permissionBackend;
     this.projectCache = projectCache;
     this.notesFactory = notesFactory;
     this.dbProvider = dbProvider;
+    this.queues = queues;
   }
 
   @Override
@@ -115,39 +120,44 @@ public class EventBroker implements EventDispatcher {
 
   protected void fireEvent(Change change, ChangeEvent event)
       throws OrmException, PermissionBackendException {
-    for (UserScopedEventListener listener : listeners) {
-      if (isVisibleTo(change, listener.getUser())) {
-        listener.onEvent(event);
-      }
-    }
+    fireEventForUserScopedListeners(event, user -> isVisibleTo(change, user));
     fireEventForUnrestrictedListeners(event);
   }
 
   protected void fireEvent(Project.NameKey project, ProjectEvent event) {
-    for (UserScopedEventListener listener : listeners) {
-      if (isVisibleTo(project, listener.getUser())) {
-        listener.onEvent(event);
-      }
-    }
+    fireEventForUserScopedListenersUnchecked(event, user -> isVisibleTo(project, user));
     fireEventForUnrestrictedListeners(event);
   }
 
   protected void fireEvent(Branch.NameKey branchName, RefEvent event) {
-    for (UserScopedEventListener listener : listeners) {
-      if (isVisibleTo(branchName, listener.getUser())) {
-        listener.onEvent(event);
-      }
-    }
+    fireEventForUserScopedListenersUnchecked(event, user -> isVisibleTo(branchName, user));
     fireEventForUnrestrictedListeners(event);
   }
 
   protected void fireEvent(Event event) throws OrmException, PermissionBackendException {
+    fireEventForUserScopedListeners(event, user -> isVisibleTo(event, user));
+    fireEventForUnrestrictedListeners(event);
+  }
+
+  private void fireEventForUserScopedListenersUnchecked(
+      Event event, Predicate<CurrentUser> isVisible) {
+    try {
+      fireEventForUserScopedListeners(event, isVisible::test);
+    } catch (OrmException | PermissionBackendException e) {
+      throw new IllegalStateException("Visibility check threw unexpected exception", e);
+    }
+  }
+
+  private void fireEventForUserScopedListeners(Event event, EventVisibility.Check check)
+      throws OrmException, PermissionBackendException {
+    EventVisibility visibility = new EventVisibility(check);
     for (UserScopedEventListener listener : listeners) {
-      if (isVisibleTo(event, listener.getUser())) {
+      if (queues.isEnabled()) {
+        queues.offer(listener, event, visibility);
+      } else if (visibility.isVisibleTo(listener.getUser())) {
         listener.onEvent(event);
       }
     }
-    fireEventForUnrestrictedListeners(event);
   }
 
   protected boolean isVisibleTo(Project.NameKey project, CurrentUser user) {
@@ -0,0 +1,52 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.common;
+
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gwtorm.server.OrmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Visibility of a single event, shared by all listeners it is delivered to.
+ *
+ * <p>Many listeners usually act on behalf of the same few accounts, e.g. one CI account with many
+ * {@code stream-events} sessions, so the result of the check is remembered per account.
+ */
+class EventVisibility {
+  @FunctionalInterface
+  interface Check {
+    boolean isVisibleTo(CurrentUser user) throws OrmException, PermissionBackendException;
+  }
+
+  private final Check check;
+  private final ConcurrentMap<Object, Boolean> results = new ConcurrentHashMap<>();
+
+  EventVisibility(Check check) {
+    this.check = check;
+  }
+
+  boolean isVisibleTo(CurrentUser user) throws OrmException, PermissionBackendException {
+    Object key = user.isIdentifiedUser() ? user.getAccountId() : user;
+    Boolean visible = results.get(key);
+    if (visible == null) {
+      // Concurrent deliveries may evaluate the same user twice, which is harmless.
+      visible = check.isVisibleTo(user);
+      results.putIfAbsent(key, visible);
+    }
+    return visible;
+  }
+}
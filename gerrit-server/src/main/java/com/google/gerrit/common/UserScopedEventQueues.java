@@ -0,0 +1,213 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.common;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.gwtorm.server.OrmException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jgit.lib.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous delivery of events to {@link UserScopedEventListener}s.
+ *
+ * <p>Each listener has its own bounded queue, drained in order by the {@code EventDispatch} work
+ * queue, so a slow listener only delays its own events. Visibility of an event is checked on the
+ * dispatch threads, not by the thread posting the event.
+ *
+ * <p>Only used if {@code event.dispatchThreads} is set. Otherwise {@link EventBroker} delivers
+ * events synchronously on the thread posting them.
+ */
+@Singleton
+public class UserScopedEventQueues {
+  private static final Logger log = LoggerFactory.getLogger(UserScopedEventQueues.class);
+
+  /** What to do with an event for a listener whose queue is full. */
+  public enum FullQueuePolicy {
+    /** Drop the event for that listener. */
+    DROP,
+
+    /** Block the thread posting the event until there is room in the queue. */
+    BLOCK
+  }
+
+  private final ExecutorService executor;
+  private final OneOffRequestContext requestContext;
+  private final int queueSize;
+  private final FullQueuePolicy fullQueuePolicy;
+  private final Counter0 dropped;
+
+  // Weak keys, so that queues of unregistered listeners can be collected.
+  private final ConcurrentMap<UserScopedEventListener, ListenerQueue> queues =
+      new MapMaker().weakKeys().makeMap();
+
+  @Inject
+  UserScopedEventQueues(
+      @GerritServerConfig Config cfg,
+      WorkQueue workQueue,
+      OneOffRequestContext requestContext,
+      MetricMaker metricMaker) {
+    this(
+        createExecutor(cfg, workQueue),
+        requestContext,
+        cfg.getInt("event", null, "listenerQueueSize", 1024),
+        cfg.getEnum("event", null, "listenerQueueFullPolicy", FullQueuePolicy.DROP),
+        metricMaker);
+  }
+
+  @VisibleForTesting
+  UserScopedEventQueues(
+      @Nullable ExecutorService executor,
+      OneOffRequestContext requestContext,
+      int queueSize,
+      FullQueuePolicy fullQueuePolicy,
+      MetricMaker metricMaker) {
+    this.executor = executor;
+    this.requestContext = requestContext;
+    this.queueSize = Math.max(queueSize, 1);
+    this.fullQueuePolicy = fullQueuePolicy;
+    this.dropped =
+        metricMaker.newCounter(
+            "events/dropped_deliveries",
+            new Description("Events not delivered to a listener because its queue was full")
+                .setRate()
+                .setUnit("events"));
+    metricMaker.newCallbackMetric(
+        "events/listener_queue_depth",
+        Long.class,
+        new Description("Events waiting for delivery to user-scoped listeners")
+            .setGauge()
+            .setUnit("events"),
+        () -> queues.values().stream().mapToLong(q -> q.pending.size()).sum());
+  }
+
+  @Nullable
+  private static ExecutorService createExecutor(Config cfg, WorkQueue workQueue) {
+    int threads = cfg.getInt("event", null, "dispatchThreads", 0);
+    return threads > 0 ? workQueue.createQueue(threads, "EventDispatch") : null;
+  }
+
+  boolean isEnabled() {
+    return executor != null;
+  }
+
+  void offer(UserScopedEventListener listener, Event event, EventVisibility visibility) {
+    queues
+        .computeIfAbsent(listener, l -> new ListenerQueue())
+        .offer(new Delivery(listener, event, visibility));
+  }
+
+  private static class Delivery {
+    final UserScopedEventListener listener;
+    final Event event;
+    final EventVisibility visibility;
+
+    Delivery(UserScopedEventListener listener, Event event, EventVisibility visibility) {
+      this.listener = listener;
+      this.event = event;
+      this.visibility = visibility;
+    }
+
+    void run() {
+      try {
+        if (visibility.isVisibleTo(listener.getUser())) {
+          listener.onEvent(event);
+        }
+      } catch (OrmException | PermissionBackendException | RuntimeException e) {
+        log.warn("Cannot deliver {} event to {}", event.getType(), listener, e);
+      }
+    }
+  }
+
+  private class ListenerQueue implements Runnable {
+    // Holds the listener only while deliveries are pending, so it does not keep its own weak key
+    // in the map alive.
+    final BlockingQueue<Delivery> pending = new ArrayBlockingQueue<>(queueSize);
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    void offer(Delivery delivery) {
+      boolean added;
+      if (fullQueuePolicy == FullQueuePolicy.BLOCK) {
+        try {
+          pending.put(delivery);
+          added = true;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          added = false;
+        }
+      } else {
+        added = pending.offer(delivery);
+      }
+      if (added) {
+        schedule();
+      } else {
+        dropped.increment();
+      }
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException e) {
+          // Server shutdown.
+          scheduled.set(false);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      try (ManualRequestContext ctx = requestContext.open()) {
+        Delivery d;
+        while ((d = pending.poll()) != null) {
+          d.run();
+        }
+      } catch (OrmException e) {
+        log.error("Cannot open request context, dropping {} events", pending.size(), e);
+        dropped.incrementBy(pending.size());
+        pending.clear();
+      } finally {
+        scheduled.set(false);
+        if (!pending.isEmpty()) {
+          schedule();
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Event delivery (" + pending.size() + " pending)";
+    }
+  }
+}
@@ -17,15 +17,25 @@ package com.google.gerrit.rules;
 import static com.googlecode.prolog_cafe.lang.PrologMachineCopy.save;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.inject.Inject;
+import com.google.inject.Module;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.googlecode.prolog_cafe.exceptions.CompileException;
 import com.googlecode.prolog_cafe.exceptions.SyntaxException;
 import com.googlecode.prolog_cafe.exceptions.TermException;
@@ -42,9 +52,6 @@ import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Reader;
 import java.io.StringReader;
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -52,9 +59,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
@@ -68,19 +74,26 @@ import org.eclipse.jgit.util.RawParseUtils;
  *
  * <p>Rules are loaded from the {@code site_path/cache/rules/rules-SHA1.jar}, where {@code SHA1} is
  * the SHA1 of the Prolog {@code rules.pl} in a project's {@link RefNames#REFS_CONFIG} branch.
+ *
+ * <p>Loaded machines are kept in the {@code prolog_rules} cache, keyed by the SHA1 of the rules.
+ * Concurrent requests for the same rules wait for a single compilation, while requests for other
+ * rules proceed independently.
  */
 @Singleton
 public class RulesCache {
   private static final ImmutableList<String> PACKAGE_LIST =
       ImmutableList.of(Prolog.BUILTIN, "gerrit");
 
-  private static final class MachineRef extends WeakReference<PrologMachineCopy> {
-    final ObjectId key;
+  private static final String CACHE_NAME = "prolog_rules";
 
-    MachineRef(ObjectId key, PrologMachineCopy pcm, ReferenceQueue<PrologMachineCopy> queue) {
-      super(pcm, queue);
-      this.key = key;
-    }
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, ObjectId.class, PrologMachineCopy.class).maximumWeight(64);
+        bind(RulesCache.class);
+      }
+    };
   }
 
   private final boolean enableProjectRules;
@@ -92,15 +105,17 @@ public class RulesCache {
   private final DynamicSet<PredicateProvider> predicateProviders;
   private final ClassLoader systemLoader;
   private final PrologMachineCopy defaultMachine;
-  private final Map<ObjectId, MachineRef> machineCache = new HashMap<>();
-  private final ReferenceQueue<PrologMachineCopy> dead = new ReferenceQueue<>();
+  private final Cache<ObjectId, PrologMachineCopy> machineCache;
+  private final Timer0 loadLatency;
 
   @Inject
   protected RulesCache(
       @GerritServerConfig Config config,
       SitePaths site,
       GitRepositoryManager gm,
-      DynamicSet<PredicateProvider> predicateProviders) {
+      DynamicSet<PredicateProvider> predicateProviders,
+      @Named(CACHE_NAME) Cache<ObjectId, PrologMachineCopy> machineCache,
+      MetricMaker metricMaker) {
     maxDbSize = config.getInt("rules", null, "maxPrologDatabaseSize", 256);
     maxSrcBytes = config.getInt("rules", null, "maxSourceBytes", 128 << 10);
     enableProjectRules = config.getBoolean("rules", null, "enable", true) && maxSrcBytes > 0;
@@ -108,6 +123,13 @@ public class RulesCache {
     rulesDir = cacheDir != null ? cacheDir.resolve("rules") : null;
     gitMgr = gm;
     this.predicateProviders = predicateProviders;
+    this.machineCache = machineCache;
+    this.loadLatency =
+        metricMaker.newTimer(
+            "rules/load_latency",
+            new Description("Latency for loading a project's Prolog rules into a machine.")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
 
     systemLoader = getClass().getClassLoader();
     defaultMachine = save(newEmptyMachine(systemLoader));
@@ -123,29 +145,24 @@ public class RulesCache {
    * @return a Prolog machine, after loading the specified rules.
    * @throws CompileException the machine cannot be created.
    */
-  public synchronized PrologMachineCopy loadMachine(Project.NameKey project, ObjectId rulesId)
+  public PrologMachineCopy loadMachine(Project.NameKey project, ObjectId rulesId)
       throws CompileException {
     if (!enableProjectRules || project == null || rulesId == null) {
       return defaultMachine;
     }
 
-    Reference<? extends PrologMachineCopy> ref = machineCache.get(rulesId);
-    if (ref != null) {
-      PrologMachineCopy pmc = ref.get();
-      if (pmc != null) {
-        return pmc;
-      }
-
-      machineCache.remove(rulesId);
-      ref.enqueue();
+    try {
+      return machineCache.get(
+          rulesId,
+          () -> {
+            try (Timer0.Context ctx = loadLatency.start()) {
+              return createMachine(project, rulesId);
+            }
+          });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), CompileException.class);
+      throw new CompileException("Cannot load rules of " + project, e.getCause());
     }
-
-    gc();
-
-    PrologMachineCopy pcm = createMachine(project, rulesId);
-    MachineRef newRef = new MachineRef(rulesId, pcm, dead);
-    machineCache.put(rulesId, newRef);
-    return pcm;
   }
 
   public PrologMachineCopy loadMachine(String name, Reader in) throws CompileException {
@@ -156,16 +173,6 @@ public class RulesCache {
     return pmc;
   }
 
-  private void gc() {
-    Reference<?> ref;
-    while ((ref = dead.poll()) != null) {
-      ObjectId key = ((MachineRef) ref).key;
-      if (machineCache.get(key) == ref) {
-        machineCache.remove(key);
-      }
-    }
-  }
-
   private PrologMachineCopy createMachine(Project.NameKey project, ObjectId rulesId)
       throws CompileException {
     // If the rules are available as a complied JAR on local disk, prefer
@@ -18,6 +18,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Description.Units;
 import com.google.gerrit.metrics.Field;
@@ -36,10 +40,13 @@ import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.Config;
 
 @Singleton
-public class Sequences {
+public class Sequences implements LifecycleListener {
   public static final String NAME_ACCOUNTS = "accounts";
   public static final String NAME_CHANGES = "changes";
 
@@ -56,7 +63,10 @@ public class Sequences {
   private final NotesMigration migration;
   private final RepoSequence accountSeq;
   private final RepoSequence changeSeq;
+  @Nullable private final ExecutorService prefetchExecutor;
   private final Timer2<SequenceType, Boolean> nextIdLatency;
+  private final Timer2<SequenceType, Boolean> acquireLatency;
+  private final Counter1<SequenceType> acquireContention;
 
   @Inject
   Sequences(
@@ -70,6 +80,34 @@ public class Sequences {
     this.db = db;
     this.migration = migration;
 
+    acquireLatency =
+        metrics.newTimer(
+            "sequence/acquire_latency",
+            new Description("Latency of acquiring a new batch of IDs from repo sequences")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            Field.ofEnum(SequenceType.class, "sequence"),
+            Field.ofBoolean("prefetch"));
+    acquireContention =
+        metrics.newCounter(
+            "sequence/acquire_contention",
+            new Description("Requests for IDs waiting for another request acquiring a new batch")
+                .setRate()
+                .setUnit("requests"),
+            Field.ofEnum(SequenceType.class, "sequence"));
+    boolean prefetchAccounts = cfg.getBoolean("noteDb", "accounts", "sequencePrefetch", false);
+    boolean prefetchChanges = cfg.getBoolean("noteDb", "changes", "sequencePrefetch", false);
+    if (prefetchAccounts || prefetchChanges) {
+      prefetchExecutor =
+          Executors.newSingleThreadExecutor(
+              new ThreadFactoryBuilder()
+                  .setNameFormat("RepoSequence-prefetch-%d")
+                  .setDaemon(true)
+                  .build());
+    } else {
+      prefetchExecutor = null;
+    }
+
     int accountBatchSize = cfg.getInt("noteDb", "accounts", "sequenceBatchSize", 1);
     accountSeq =
         new RepoSequence(
@@ -77,14 +115,23 @@ public class Sequences {
             allUsers,
             NAME_ACCOUNTS,
             () -> ReviewDb.FIRST_ACCOUNT_ID,
-            accountBatchSize);
+            accountBatchSize,
+            prefetchAccounts ? prefetchExecutor : null,
+            monitor(SequenceType.ACCOUNTS));
 
     int gap = getChangeSequenceGap(cfg);
     @SuppressWarnings("deprecation")
     RepoSequence.Seed changeSeed = () -> db.get().nextChangeId() + gap;
     int changeBatchSize = cfg.getInt("noteDb", "changes", "sequenceBatchSize", 20);
     changeSeq =
-        new RepoSequence(repoManager, allProjects, NAME_CHANGES, changeSeed, changeBatchSize);
+        new RepoSequence(
+            repoManager,
+            allProjects,
+            NAME_CHANGES,
+            changeSeed,
+            changeBatchSize,
+            prefetchChanges ? prefetchExecutor : null,
+            monitor(SequenceType.CHANGES));
 
     nextIdLatency =
         metrics.newTimer(
@@ -96,6 +143,31 @@ public class Sequences {
             Field.ofBoolean("multiple"));
   }
 
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    if (prefetchExecutor != null) {
+      // Let a pending prefetch complete, requests for IDs may be waiting for it.
+      prefetchExecutor.shutdown();
+    }
+  }
+
+  private RepoSequence.Monitor monitor(SequenceType type) {
+    return new RepoSequence.Monitor() {
+      @Override
+      public void acquired(long elapsedNanos, boolean prefetch) {
+        acquireLatency.record(type, prefetch, elapsedNanos, TimeUnit.NANOSECONDS);
+      }
+
+      @Override
+      public void contended() {
+        acquireContention.increment(type);
+      }
+    };
+  }
+
   public int nextAccountId() throws OrmException {
     try (Timer2.Context timer = nextIdLatency.start(SequenceType.ACCOUNTS, false)) {
       return accountSeq.next();
@@ -34,6 +34,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Collects {@link AccountInfo} instances so they can be filled in a single batch.
+ *
+ * <p>Instances are thread-safe, so a single loader can be shared by tasks formatting several
+ * entities concurrently.
+ */
 public class AccountLoader {
   public static final Set<FillOptions> DETAILED_OPTIONS =
       Collections.unmodifiableSet(
@@ -69,7 +75,7 @@ public class AccountLoader {
     provided = new ArrayList<>();
   }
 
-  public AccountInfo get(Account.Id id) {
+  public synchronized AccountInfo get(Account.Id id) {
     if (id == null) {
       return null;
     }
@@ -81,12 +87,12 @@ public class AccountLoader {
     return info;
   }
 
-  public void put(AccountInfo info) {
+  public synchronized void put(AccountInfo info) {
     checkArgument(info._accountId != null, "_accountId field required");
     provided.add(info);
   }
 
-  public void fill() throws OrmException {
+  public synchronized void fill() throws OrmException {
     try {
       directory.fillAccountInfo(Iterables.concat(created.values(), provided), options);
     } catch (DirectoryException e) {
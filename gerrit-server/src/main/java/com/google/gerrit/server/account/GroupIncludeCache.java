@@ -16,6 +16,7 @@ package com.google.gerrit.server.account;
 
 import com.google.gerrit.reviewdb.client.AccountGroup;
 import java.util.Collection;
+import java.util.Set;
 
 /** Tracks group inclusions in memory for efficient access. */
 public interface GroupIncludeCache {
@@ -25,6 +26,12 @@ public interface GroupIncludeCache {
   /** @return any groups the passed group belongs to. */
   Collection<AccountGroup.UUID> parentGroupsOf(AccountGroup.UUID groupId);
 
+  /**
+   * @return the passed groups and any groups they belong to, directly or through other included
+   *     groups.
+   */
+  Set<AccountGroup.UUID> transitiveParentGroupsOf(Set<AccountGroup.UUID> groupIds);
+
   /** @return set of any UUIDs that are not internal groups. */
   Collection<AccountGroup.UUID> allExternalMembers();
 
@@ -19,6 +19,7 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.gerrit.common.errors.NoSuchGroupException;
 import com.google.gerrit.reviewdb.client.AccountGroup;
 import com.google.gerrit.reviewdb.server.ReviewDb;
@@ -31,9 +32,13 @@ import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +48,7 @@ import org.slf4j.LoggerFactory;
 public class GroupIncludeCacheImpl implements GroupIncludeCache {
   private static final Logger log = LoggerFactory.getLogger(GroupIncludeCacheImpl.class);
   private static final String PARENT_GROUPS_NAME = "groups_byinclude";
+  private static final String PARENT_GROUPS_CLOSURE_NAME = "groups_byinclude_closure";
   private static final String SUBGROUPS_NAME = "groups_members";
   private static final String EXTERNAL_NAME = "groups_external";
 
@@ -56,6 +62,12 @@ public class GroupIncludeCacheImpl implements GroupIncludeCache {
                 new TypeLiteral<ImmutableList<AccountGroup.UUID>>() {})
             .loader(ParentGroupsLoader.class);
 
+        cache(
+                PARENT_GROUPS_CLOSURE_NAME,
+                new TypeLiteral<ImmutableSet<AccountGroup.UUID>>() {},
+                new TypeLiteral<ImmutableSet<AccountGroup.UUID>>() {})
+            .loader(ParentGroupsClosureLoader.class);
+
         cache(
                 SUBGROUPS_NAME,
                 AccountGroup.UUID.class,
@@ -73,6 +85,8 @@ public class GroupIncludeCacheImpl implements GroupIncludeCache {
 
   private final LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> subgroups;
   private final LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> parentGroups;
+  private final LoadingCache<ImmutableSet<AccountGroup.UUID>, ImmutableSet<AccountGroup.UUID>>
+      parentGroupsClosure;
   private final LoadingCache<String, ImmutableList<AccountGroup.UUID>> external;
 
   @Inject
@@ -81,9 +95,13 @@ public class GroupIncludeCacheImpl implements GroupIncludeCache {
           LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> subgroups,
       @Named(PARENT_GROUPS_NAME)
           LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> parentGroups,
+      @Named(PARENT_GROUPS_CLOSURE_NAME)
+          LoadingCache<ImmutableSet<AccountGroup.UUID>, ImmutableSet<AccountGroup.UUID>>
+              parentGroupsClosure,
       @Named(EXTERNAL_NAME) LoadingCache<String, ImmutableList<AccountGroup.UUID>> external) {
     this.subgroups = subgroups;
     this.parentGroups = parentGroups;
+    this.parentGroupsClosure = parentGroupsClosure;
     this.external = external;
   }
 
@@ -107,10 +125,22 @@ public class GroupIncludeCacheImpl implements GroupIncludeCache {
     }
   }
 
+  @Override
+  public Set<AccountGroup.UUID> transitiveParentGroupsOf(Set<AccountGroup.UUID> groupIds) {
+    try {
+      return parentGroupsClosure.get(ImmutableSet.copyOf(groupIds));
+    } catch (ExecutionException e) {
+      log.warn("Cannot load transitively included groups", e);
+      return ImmutableSet.copyOf(groupIds);
+    }
+  }
+
   @Override
   public void evictSubgroupsOf(AccountGroup.UUID groupId) {
     if (groupId != null) {
       subgroups.invalidate(groupId);
+      // Any closure may reach the group through its subgroups.
+      parentGroupsClosure.invalidateAll();
     }
   }
 
@@ -118,6 +148,7 @@ public class GroupIncludeCacheImpl implements GroupIncludeCache {
   public void evictParentGroupsOf(AccountGroup.UUID groupId) {
     if (groupId != null) {
       parentGroups.invalidate(groupId);
+      parentGroupsClosure.invalidateAll();
 
       if (!AccountGroup.isInternalGroup(groupId)) {
         external.invalidate(EXTERNAL_NAME);
@@ -181,6 +212,34 @@ public class GroupIncludeCacheImpl implements GroupIncludeCache {
     }
   }
 
+  static class ParentGroupsClosureLoader
+      extends CacheLoader<ImmutableSet<AccountGroup.UUID>, ImmutableSet<AccountGroup.UUID>> {
+    private final LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> parentGroups;
+
+    @Inject
+    ParentGroupsClosureLoader(
+        @Named(PARENT_GROUPS_NAME)
+            LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> parentGroups) {
+      this.parentGroups = parentGroups;
+    }
+
+    @Override
+    public ImmutableSet<AccountGroup.UUID> load(ImmutableSet<AccountGroup.UUID> key)
+        throws ExecutionException {
+      Set<AccountGroup.UUID> r = new HashSet<>(key);
+      List<AccountGroup.UUID> q = new ArrayList<>(key);
+      while (!q.isEmpty()) {
+        AccountGroup.UUID id = q.remove(q.size() - 1);
+        for (AccountGroup.UUID g : parentGroups.get(id)) {
+          if (r.add(g)) {
+            q.add(g);
+          }
+        }
+      }
+      return ImmutableSet.copyOf(r);
+    }
+  }
+
   static class AllExternalLoader extends CacheLoader<String, ImmutableList<AccountGroup.UUID>> {
     private final SchemaFactory<ReviewDb> schema;
     private final Groups groups;
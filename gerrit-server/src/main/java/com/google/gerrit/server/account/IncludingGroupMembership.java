@@ -14,50 +14,39 @@
 
 package com.google.gerrit.server.account;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import com.google.gerrit.reviewdb.client.AccountGroup;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Group membership checker for the internal group system.
  *
  * <p>Groups the user is directly a member of are pulled from the in-memory AccountCache by way of
- * the IdentifiedUser. Transitive group memberhips are resolved on demand starting from the
- * requested group and looking for a path to a group the user is a member of. Other group backends
- * are supported by recursively invoking the universal GroupMembership.
+ * the IdentifiedUser. Transitive group memberships are resolved once per user by expanding those
+ * groups, and any external groups of other backends the user belongs to that are included in
+ * internal groups, to all groups including them. The expansion is shared through the
+ * GroupIncludeCache by all users who are directly members of the same groups. Membership in
+ * external groups is checked by recursively invoking the universal GroupMembership.
  */
 public class IncludingGroupMembership implements GroupMembership {
   public interface Factory {
     IncludingGroupMembership create(IdentifiedUser user);
   }
 
-  private final GroupCache groupCache;
   private final GroupIncludeCache includeCache;
   private final IdentifiedUser user;
-  private final Map<AccountGroup.UUID, Boolean> memberOf;
-  private Set<AccountGroup.UUID> knownGroups;
+  private final Set<AccountGroup.UUID> directGroups;
+  private volatile Set<AccountGroup.UUID> knownGroups;
 
   @Inject
-  IncludingGroupMembership(
-      GroupCache groupCache, GroupIncludeCache includeCache, @Assisted IdentifiedUser user) {
-    this.groupCache = groupCache;
+  IncludingGroupMembership(GroupIncludeCache includeCache, @Assisted IdentifiedUser user) {
     this.includeCache = includeCache;
     this.user = user;
-
-    Set<AccountGroup.UUID> groups = user.state().getInternalGroups();
-    memberOf = new ConcurrentHashMap<>(groups.size());
-    for (AccountGroup.UUID g : groups) {
-      memberOf.put(g, true);
-    }
+    directGroups = user.state().getInternalGroups();
   }
 
   @Override
@@ -65,43 +54,24 @@ public class IncludingGroupMembership implements GroupMembership {
     if (id == null) {
       return false;
     }
-
-    Boolean b = memberOf.get(id);
-    return b != null ? b : containsAnyOf(ImmutableSet.of(id));
+    return directGroups.contains(id) || getKnownGroups().contains(id);
   }
 
   @Override
   public boolean containsAnyOf(Iterable<AccountGroup.UUID> queryIds) {
-    // Prefer lookup of a cached result over expanding includes.
-    boolean tryExpanding = false;
+    // Prefer lookup of direct groups over expanding includes.
     for (AccountGroup.UUID id : queryIds) {
-      Boolean b = memberOf.get(id);
-      if (b == null) {
-        tryExpanding = true;
-      } else if (b) {
+      if (id != null && directGroups.contains(id)) {
         return true;
       }
     }
 
-    if (tryExpanding) {
-      for (AccountGroup.UUID id : queryIds) {
-        if (memberOf.containsKey(id)) {
-          // Membership was earlier proven to be false.
-          continue;
-        }
-
-        memberOf.put(id, false);
-        AccountGroup group = groupCache.get(id);
-        if (group == null) {
-          continue;
-        }
-        if (search(includeCache.subgroupsOf(id))) {
-          memberOf.put(id, true);
-          return true;
-        }
+    Set<AccountGroup.UUID> known = getKnownGroups();
+    for (AccountGroup.UUID id : queryIds) {
+      if (id != null && known.contains(id)) {
+        return true;
       }
     }
-
     return false;
   }
 
@@ -116,40 +86,23 @@ public class IncludingGroupMembership implements GroupMembership {
     return r;
   }
 
-  private boolean search(Iterable<AccountGroup.UUID> ids) {
-    return user.getEffectiveGroups().containsAnyOf(ids);
-  }
-
-  private ImmutableSet<AccountGroup.UUID> computeKnownGroups() {
-    GroupMembership membership = user.getEffectiveGroups();
-    Set<AccountGroup.UUID> direct = user.state().getInternalGroups();
-    Set<AccountGroup.UUID> r = Sets.newHashSet(direct);
-    r.remove(null);
-
-    List<AccountGroup.UUID> q = Lists.newArrayList(r);
-    for (AccountGroup.UUID g : membership.intersection(includeCache.allExternalMembers())) {
-      if (g != null && r.add(g)) {
-        q.add(g);
-      }
-    }
-
-    while (!q.isEmpty()) {
-      AccountGroup.UUID id = q.remove(q.size() - 1);
-      for (AccountGroup.UUID g : includeCache.parentGroupsOf(id)) {
-        if (g != null && r.add(g)) {
-          q.add(g);
-          memberOf.put(g, true);
-        }
-      }
+  private Set<AccountGroup.UUID> computeKnownGroups() {
+    Set<AccountGroup.UUID> r = new HashSet<>(directGroups);
+    Collection<AccountGroup.UUID> external = includeCache.allExternalMembers();
+    if (!external.isEmpty()) {
+      r.addAll(user.getEffectiveGroups().intersection(external));
     }
-    return ImmutableSet.copyOf(r);
+    r.remove(null);
+    return includeCache.transitiveParentGroupsOf(r);
   }
 
   @Override
   public Set<AccountGroup.UUID> getKnownGroups() {
-    if (knownGroups == null) {
-      knownGroups = computeKnownGroups();
+    Set<AccountGroup.UUID> r = knownGroups;
+    if (r == null) {
+      r = computeKnownGroups();
+      knownGroups = r;
     }
-    return knownGroups;
+    return r;
   }
 }
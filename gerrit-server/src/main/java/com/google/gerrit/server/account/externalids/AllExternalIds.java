@@ -0,0 +1,110 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account.externalids;
+
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.server.cache.CacheSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+/** All external IDs of a revision of the refs/meta/external-ids notes branch. */
+@AutoValue
+abstract class AllExternalIds implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  static AllExternalIds create(Multimap<Account.Id, ExternalId> byAccount) {
+    ImmutableSetMultimap<String, ExternalId> byEmail =
+        byAccount
+            .values()
+            .stream()
+            .filter(e -> !Strings.isNullOrEmpty(e.email()))
+            .collect(toImmutableSetMultimap(ExternalId::email, e -> e));
+    return new AutoValue_AllExternalIds(ImmutableSetMultimap.copyOf(byAccount), byEmail);
+  }
+
+  public abstract ImmutableSetMultimap<Account.Id, ExternalId> byAccount();
+
+  public abstract ImmutableSetMultimap<String, ExternalId> byEmail();
+
+  /**
+   * Serializes only the external IDs; the by-email index is rebuilt on deserialization.
+   *
+   * <p>Much more compact and faster than Java serialization of the multimaps, which matters since
+   * a snapshot holds every external ID of the site.
+   */
+  static class Serializer implements CacheSerializer<AllExternalIds> {
+    static final Serializer INSTANCE = new Serializer();
+
+    @Override
+    public byte[] serialize(AllExternalIds object) throws IOException {
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(buf)) {
+        out.writeInt(object.byAccount().size());
+        for (ExternalId extId : object.byAccount().values()) {
+          writeNullable(out, extId.key().scheme());
+          out.writeUTF(extId.key().id());
+          out.writeInt(extId.accountId().get());
+          writeNullable(out, extId.email());
+          writeNullable(out, extId.password());
+        }
+      }
+      return buf.toByteArray();
+    }
+
+    @Override
+    public AllExternalIds deserialize(byte[] in) throws IOException {
+      try (DataInputStream din = new DataInputStream(new ByteArrayInputStream(in))) {
+        int n = din.readInt();
+        Multimap<Account.Id, ExternalId> byAccount =
+            MultimapBuilder.hashKeys().arrayListValues().build();
+        for (int i = 0; i < n; i++) {
+          ExternalId.Key key = ExternalId.Key.create(readNullable(din), din.readUTF());
+          Account.Id accountId = new Account.Id(din.readInt());
+          ExternalId extId =
+              ExternalId.create(key, accountId, readNullable(din), readNullable(din));
+          byAccount.put(accountId, extId);
+        }
+        if (din.read() != -1) {
+          throw new IOException("Trailing data in serialized external IDs");
+        }
+        return create(byAccount);
+      }
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+      out.writeBoolean(s != null);
+      if (s != null) {
+        out.writeUTF(s);
+      }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+      return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private Serializer() {}
+  }
+}
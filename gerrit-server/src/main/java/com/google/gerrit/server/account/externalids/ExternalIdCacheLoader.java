@@ -0,0 +1,163 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account.externalids;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads all external IDs of a revision of the refs/meta/external-ids notes branch.
+ *
+ * <p>If the external IDs of one of the recent ancestors of the requested revision are still cached,
+ * in memory or on disk, only the notes that changed since that ancestor are read and applied to its
+ * snapshot. Otherwise all notes are read.
+ */
+@Singleton
+class ExternalIdCacheLoader extends CacheLoader<ObjectId, AllExternalIds> {
+  private static final Logger log = LoggerFactory.getLogger(ExternalIdCacheLoader.class);
+
+  // Maximum number of commits to walk back looking for a cached snapshot. Looking up a revision
+  // that is not cached costs a disk cache lookup, so this should stay small.
+  private static final int MAX_HISTORY_LOOKBACK = 10;
+
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsersName;
+  private final ExternalIdReader externalIdReader;
+  private final Provider<Cache<ObjectId, AllExternalIds>> externalIdCache;
+  private final Timer0 reloadDifferential;
+
+  @Inject
+  ExternalIdCacheLoader(
+      GitRepositoryManager repoManager,
+      AllUsersName allUsersName,
+      ExternalIdReader externalIdReader,
+      @Named(ExternalIdCacheImpl.CACHE_NAME)
+          Provider<Cache<ObjectId, AllExternalIds>> externalIdCache,
+      MetricMaker metricMaker) {
+    this.repoManager = repoManager;
+    this.allUsersName = allUsersName;
+    this.externalIdReader = externalIdReader;
+    this.externalIdCache = externalIdCache;
+    this.reloadDifferential =
+        metricMaker.newTimer(
+            "notedb/read_external_ids_differential_latency",
+            new Description(
+                    "Latency for loading external IDs from NoteDb by applying the changes since"
+                        + " a cached revision.")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+  }
+
+  @Override
+  public AllExternalIds load(ObjectId notesRev) throws IOException {
+    if (!ObjectId.zeroId().equals(notesRev)) {
+      externalIdReader.checkReadEnabled();
+      try (Repository repo = repoManager.openRepository(allUsersName);
+          RevWalk rw = new RevWalk(repo)) {
+        RevCommit commit = rw.parseCommit(notesRev);
+        RevCommit c = commit;
+        for (int i = 0; i < MAX_HISTORY_LOOKBACK && c.getParentCount() > 0; i++) {
+          c = rw.parseCommit(c.getParent(0));
+          AllExternalIds cached = externalIdCache.get().getIfPresent(c.copy());
+          if (cached != null) {
+            try (Timer0.Context ctx = reloadDifferential.start()) {
+              return applyDiff(rw.getObjectReader(), c, commit, cached);
+            }
+          }
+        }
+      }
+    }
+
+    ListMultimap<Account.Id, ExternalId> byAccount =
+        MultimapBuilder.hashKeys().arrayListValues().build();
+    for (ExternalId extId : externalIdReader.all(notesRev)) {
+      byAccount.put(extId.accountId(), extId);
+    }
+    return AllExternalIds.create(byAccount);
+  }
+
+  private static AllExternalIds applyDiff(
+      ObjectReader reader, RevCommit oldCommit, RevCommit newCommit, AllExternalIds old)
+      throws IOException {
+    List<ExternalId> removed = new ArrayList<>();
+    List<ExternalId> added = new ArrayList<>();
+    try (TreeWalk tw = new TreeWalk(reader)) {
+      tw.setRecursive(true);
+      tw.setFilter(TreeFilter.ANY_DIFF);
+      tw.addTree(oldCommit.getTree());
+      tw.addTree(newCommit.getTree());
+      while (tw.next()) {
+        // Notes may be stored in fan-out directories; the note name is the path without slashes.
+        String noteName = tw.getPathString().replace("/", "");
+        addIfValid(reader, noteName, tw.getObjectId(0), removed);
+        addIfValid(reader, noteName, tw.getObjectId(1), added);
+      }
+    }
+
+    // Apply all removals before any additions, since a note that moved between fan-out
+    // directories shows up as a removal and an addition of the same external ID.
+    ListMultimap<Account.Id, ExternalId> byAccount =
+        MultimapBuilder.hashKeys().arrayListValues().build(old.byAccount());
+    for (ExternalId extId : removed) {
+      byAccount.remove(extId.accountId(), extId);
+    }
+    for (ExternalId extId : added) {
+      byAccount.put(extId.accountId(), extId);
+    }
+    return AllExternalIds.create(byAccount);
+  }
+
+  private static void addIfValid(
+      ObjectReader reader, String noteName, ObjectId blobId, List<ExternalId> extIds)
+      throws IOException {
+    if (ObjectId.zeroId().equals(blobId)) {
+      return;
+    }
+    byte[] raw = reader.open(blobId, OBJ_BLOB).getCachedBytes(ExternalIdReader.MAX_NOTE_SZ);
+    try {
+      extIds.add(ExternalId.parse(noteName, raw));
+    } catch (ConfigInvalidException e) {
+      log.error(String.format("Ignoring invalid external ID note %s", noteName), e);
+    }
+  }
+}
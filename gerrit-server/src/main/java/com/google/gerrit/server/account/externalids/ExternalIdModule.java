@@ -14,11 +14,23 @@
 
 package com.google.gerrit.server.account.externalids;
 
-import com.google.inject.AbstractModule;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.ObjectIdCacheSerializer;
+import org.eclipse.jgit.lib.ObjectId;
 
-public class ExternalIdModule extends AbstractModule {
+public class ExternalIdModule extends CacheModule {
   @Override
   protected void configure() {
+    persist(ExternalIdCacheImpl.CACHE_NAME, ObjectId.class, AllExternalIds.class)
+        // The cached data is potentially pretty large and we are always only interested in the
+        // latest value. Keep one more entry than that, so that a thread that read the notes ref
+        // just before an update does not evict the snapshot for the new revision.
+        .maximumWeight(2)
+        .version(1)
+        .keySerializer(ObjectIdCacheSerializer.INSTANCE)
+        .valueSerializer(AllExternalIds.Serializer.INSTANCE)
+        .loader(ExternalIdCacheLoader.class);
+
     bind(ExternalIdCacheImpl.class);
     bind(ExternalIdCache.class).to(ExternalIdCacheImpl.class);
   }
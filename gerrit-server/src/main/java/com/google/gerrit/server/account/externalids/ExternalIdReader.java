@@ -191,7 +191,7 @@ public class ExternalIdReader {
     return ExternalId.parse(noteId.name(), raw);
   }
 
-  private void checkReadEnabled() throws IOException {
+  void checkReadEnabled() throws IOException {
     if (failOnLoad) {
       throw new IOException("Reading from external IDs is disabled");
     }
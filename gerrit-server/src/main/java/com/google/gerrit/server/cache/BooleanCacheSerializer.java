@@ -0,0 +1,39 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.server.cache;
+
+import java.io.IOException;
+
+/** Serializes a {@link Boolean} as a single byte. */
+public class BooleanCacheSerializer implements CacheSerializer<Boolean> {
+  public static final BooleanCacheSerializer INSTANCE = new BooleanCacheSerializer();
+
+  private static final byte[] TRUE = {1};
+  private static final byte[] FALSE = {0};
+
+  @Override
+  public byte[] serialize(Boolean object) {
+    return object ? TRUE.clone() : FALSE.clone();
+  }
+
+  @Override
+  public Boolean deserialize(byte[] in) throws IOException {
+    if (in.length != 1 || (in[0] != 0 && in[0] != 1)) {
+      throw new IOException("Invalid serialized boolean");
+    }
+    return in[0] == 1;
+  }
+
+  private BooleanCacheSerializer() {}
+}
@@ -28,6 +28,20 @@ public interface CacheBinding<K, V> {
   /** Set the total on-disk limit of the cache */
   CacheBinding<K, V> diskLimit(long limit);
 
+  /**
+   * Set the version of the on-disk format of a persistent cache.
+   *
+   * <p>Entries stored on disk with a different version are ignored and pruned. Increment the version
+   * whenever the serialized form of the key or value changes incompatibly.
+   */
+  CacheBinding<K, V> version(int version);
+
+  /** Set the serializer used to store keys of a persistent cache on disk. */
+  CacheBinding<K, V> keySerializer(CacheSerializer<K> serializer);
+
+  /** Set the serializer used to store values of a persistent cache on disk. */
+  CacheBinding<K, V> valueSerializer(CacheSerializer<V> serializer);
+
   /** Set the time an element lives before being expired. */
   CacheBinding<K, V> expireAfterWrite(long duration, TimeUnit durationUnits);
 
@@ -47,6 +61,12 @@ public interface CacheBinding<K, V> {
 
   long diskLimit();
 
+  int version();
+
+  CacheSerializer<K> keySerializer();
+
+  CacheSerializer<V> valueSerializer();
+
   @Nullable
   Long expireAfterWrite(TimeUnit unit);
 
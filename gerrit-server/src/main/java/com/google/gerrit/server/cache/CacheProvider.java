@@ -36,6 +36,9 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V> {
   private boolean persist;
   private long maximumWeight;
   private long diskLimit;
+  private int version;
+  private CacheSerializer<K> keySerializer;
+  private CacheSerializer<V> valueSerializer;
   private Long expireAfterWrite;
   private Provider<CacheLoader<K, V>> loader;
   private Provider<Weigher<K, V>> weigher;
@@ -88,6 +91,31 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V> {
     return this;
   }
 
+  @Override
+  public CacheBinding<K, V> version(int v) {
+    Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
+    Preconditions.checkState(persist, "version supported for persistent caches only");
+    Preconditions.checkArgument(v >= 0, "version must be non-negative: %s", v);
+    version = v;
+    return this;
+  }
+
+  @Override
+  public CacheBinding<K, V> keySerializer(CacheSerializer<K> serializer) {
+    Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
+    Preconditions.checkState(persist, "keySerializer supported for persistent caches only");
+    keySerializer = Preconditions.checkNotNull(serializer);
+    return this;
+  }
+
+  @Override
+  public CacheBinding<K, V> valueSerializer(CacheSerializer<V> serializer) {
+    Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
+    Preconditions.checkState(persist, "valueSerializer supported for persistent caches only");
+    valueSerializer = Preconditions.checkNotNull(serializer);
+    return this;
+  }
+
   @Override
   public CacheBinding<K, V> expireAfterWrite(long duration, TimeUnit unit) {
     Preconditions.checkState(!frozen, "binding frozen, cannot be modified");
@@ -140,6 +168,29 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V> {
     return 128 << 20;
   }
 
+  @Override
+  public int version() {
+    return version;
+  }
+
+  @Override
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public CacheSerializer<K> keySerializer() {
+    if (keySerializer != null) {
+      return keySerializer;
+    }
+    return new JavaCacheSerializer();
+  }
+
+  @Override
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public CacheSerializer<V> valueSerializer() {
+    if (valueSerializer != null) {
+      return valueSerializer;
+    }
+    return new JavaCacheSerializer();
+  }
+
   @Override
   @Nullable
   public Long expireAfterWrite(TimeUnit unit) {
@@ -0,0 +1,28 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.server.cache;
+
+import java.io.IOException;
+
+/**
+ * Converts cache keys or values to and from the byte representation stored by a persistent cache.
+ *
+ * <p>Implementations must be thread-safe and must produce identical bytes for equal objects, as
+ * the serialized form of a key is used to look up entries on disk.
+ */
+public interface CacheSerializer<T> {
+  byte[] serialize(T object) throws IOException;
+
+  T deserialize(byte[] in) throws IOException;
+}
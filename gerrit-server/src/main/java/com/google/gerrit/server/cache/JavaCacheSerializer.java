@@ -0,0 +1,48 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.gerrit.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Serializer using Java serialization.
+ *
+ * <p>This is the default serializer of persistent caches, and produces the same bytes that were
+ * stored by earlier versions of the disk cache.
+ */
+public class JavaCacheSerializer<T extends Serializable> implements CacheSerializer<T> {
+  @Override
+  public byte[] serialize(T object) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+      out.writeObject(object);
+    }
+    return buf.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T deserialize(byte[] in) throws IOException {
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(in))) {
+      return (T) ois.readObject();
+    } catch (ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Cannot deserialize cache entry", e);
+    }
+  }
+}
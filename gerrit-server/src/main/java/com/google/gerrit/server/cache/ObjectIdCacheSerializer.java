@@ -0,0 +1,41 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+import java.io.IOException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/** Serializes an {@link ObjectId} as its raw 20 bytes. */
+public class ObjectIdCacheSerializer implements CacheSerializer<ObjectId> {
+  public static final ObjectIdCacheSerializer INSTANCE = new ObjectIdCacheSerializer();
+
+  @Override
+  public byte[] serialize(ObjectId object) {
+    byte[] out = new byte[Constants.OBJECT_ID_LENGTH];
+    object.copyRawTo(out, 0);
+    return out;
+  }
+
+  @Override
+  public ObjectId deserialize(byte[] in) throws IOException {
+    if (in.length != Constants.OBJECT_ID_LENGTH) {
+      throw new IOException("Invalid serialized ObjectId");
+    }
+    return ObjectId.fromRaw(in);
+  }
+
+  private ObjectIdCacheSerializer() {}
+}
@@ -0,0 +1,364 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.change;
+
+import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.CacheSerializer;
+import com.google.gitiles.blame.BlameCache;
+import com.google.gitiles.blame.Region;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Cache of the blame of files at given commits.
+ *
+ * <p>The blame of a file in a commit with a single parent is computed from the blame of the file in
+ * the parent and the diff between both versions of the file, the same way a full blame treats the
+ * last commit of the file. All patch sets on the same base and requests for the blame of the base
+ * share the blame of the parent, so only the first request for a base pays for a full blame.
+ */
+@Singleton
+public class BlameResultCache {
+  static final String CACHE_NAME = "blame";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        persist(CACHE_NAME, Key.class, Blame.class)
+            .version(1)
+            .keySerializer(Key.Serializer.INSTANCE)
+            .valueSerializer(Blame.Serializer.INSTANCE)
+            .maximumWeight(10 << 20)
+            .weigher(Weigher.class);
+        bind(BlameResultCache.class);
+      }
+    };
+  }
+
+  @AutoValue
+  public abstract static class Key implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static Key create(ObjectId commit, String path) {
+      return new AutoValue_BlameResultCache_Key(commit.copy(), path);
+    }
+
+    abstract ObjectId commit();
+
+    abstract String path();
+
+    /** Stores the raw commit ID followed by the UTF-8 path. */
+    static class Serializer implements CacheSerializer<Key> {
+      static final Serializer INSTANCE = new Serializer();
+
+      @Override
+      public byte[] serialize(Key key) {
+        byte[] path = key.path().getBytes(UTF_8);
+        byte[] out = new byte[Constants.OBJECT_ID_LENGTH + path.length];
+        key.commit().copyRawTo(out, 0);
+        System.arraycopy(path, 0, out, Constants.OBJECT_ID_LENGTH, path.length);
+        return out;
+      }
+
+      @Override
+      public Key deserialize(byte[] in) throws IOException {
+        if (in.length <= Constants.OBJECT_ID_LENGTH) {
+          throw new IOException("Invalid serialized blame key");
+        }
+        return create(
+            ObjectId.fromRaw(in, 0),
+            new String(
+                in, Constants.OBJECT_ID_LENGTH, in.length - Constants.OBJECT_ID_LENGTH, UTF_8));
+      }
+
+      private Serializer() {}
+    }
+  }
+
+  /** Consecutive lines of a file last modified by the same commit. */
+  @AutoValue
+  public abstract static class BlameRegion {
+    static BlameRegion create(ObjectId commit, String author, int count) {
+      return new AutoValue_BlameResultCache_BlameRegion(commit, author, count);
+    }
+
+    public abstract ObjectId commit();
+
+    /** Name of the author of the commit. */
+    public abstract String author();
+
+    public abstract int count();
+
+    boolean sameSource(BlameRegion o) {
+      return commit().equals(o.commit()) && author().equals(o.author());
+    }
+  }
+
+  @AutoValue
+  public abstract static class Blame implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static Blame create(List<BlameRegion> regions) {
+      return new AutoValue_BlameResultCache_Blame(ImmutableList.copyOf(regions));
+    }
+
+    /** Regions covering all lines of the file in order; empty if the file doesn't exist. */
+    public abstract ImmutableList<BlameRegion> regions();
+
+    /** Stores each region as its raw commit ID, author name and line count. */
+    static class Serializer implements CacheSerializer<Blame> {
+      static final Serializer INSTANCE = new Serializer();
+
+      @Override
+      public byte[] serialize(Blame blame) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt32(out, blame.regions().size());
+        byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+        for (BlameRegion r : blame.regions()) {
+          r.commit().copyRawTo(id, 0);
+          out.write(id);
+          writeString(out, r.author());
+          writeVarInt32(out, r.count());
+        }
+        return out.toByteArray();
+      }
+
+      @Override
+      public Blame deserialize(byte[] in) throws IOException {
+        InputStream is = new ByteArrayInputStream(in);
+        int n = readVarInt32(is);
+        ImmutableList.Builder<BlameRegion> regions = ImmutableList.builder();
+        byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+        for (int i = 0; i < n; i++) {
+          if (is.read(id) != id.length) {
+            throw new IOException("Truncated serialized blame");
+          }
+          regions.add(
+              BlameRegion.create(
+                  ObjectId.fromRaw(id), Strings.nullToEmpty(readString(is)), readVarInt32(is)));
+        }
+        if (is.read() != -1) {
+          throw new IOException("Trailing data in serialized blame");
+        }
+        return new AutoValue_BlameResultCache_Blame(regions.build());
+      }
+
+      private Serializer() {}
+    }
+  }
+
+  public static class Weigher implements com.google.common.cache.Weigher<Key, Blame> {
+    @Override
+    public int weigh(Key key, Blame blame) {
+      int size = 16 + 20 + 2 * key.path().length();
+      for (BlameRegion r : blame.regions()) {
+        // Authors are repeated, but each region holds its own copy when read from disk.
+        size += 16 + 20 + 4 + 2 * r.author().length();
+      }
+      return size;
+    }
+  }
+
+  private final Cache<Key, Blame> cache;
+  private final BlameCache blameCache;
+
+  @Inject
+  BlameResultCache(@Named(CACHE_NAME) Cache<Key, Blame> cache, BlameCache blameCache) {
+    this.cache = cache;
+    this.blameCache = blameCache;
+  }
+
+  /**
+   * Get the blame of a file.
+   *
+   * @param repo repository containing the commit.
+   * @param rw walk used to parse the commit and its parent.
+   * @param commitId commit to compute the blame at.
+   * @param path path of the file in the commit.
+   * @return regions covering all lines of the file; empty if the file doesn't exist.
+   * @throws IOException if the blame cannot be computed.
+   */
+  public List<BlameRegion> get(Repository repo, RevWalk rw, ObjectId commitId, String path)
+      throws IOException {
+    Key key = Key.create(commitId, path);
+    return get(key, () -> load(repo, rw, key)).regions();
+  }
+
+  private Blame get(Key key, Callable<Blame> loader) throws IOException {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private Blame load(Repository repo, RevWalk rw, Key key) throws IOException {
+    RevCommit commit = rw.parseCommit(key.commit());
+    if (commit.getParentCount() != 1) {
+      return fullBlame(repo, key);
+    }
+    RevCommit parent = rw.parseCommit(commit.getParent(0));
+    ObjectReader reader = rw.getObjectReader();
+    RawText newText = read(reader, commit, key.path());
+    RawText oldText = read(reader, parent, key.path());
+    if (newText == null || oldText == null) {
+      // Added, deleted or binary file, or not a regular file; new files may have been renamed,
+      // which only a full blame detects.
+      return fullBlame(repo, key);
+    }
+
+    Key parentKey = Key.create(parent, key.path());
+    // The parent is always computed in full, so that loading one commit never walks back through
+    // the history of the file one commit at a time.
+    Blame parentBlame = get(parentKey, () -> fullBlame(repo, parentKey));
+    if (parentBlame.regions().stream().mapToInt(BlameRegion::count).sum() != oldText.size()) {
+      return fullBlame(repo, key);
+    }
+    EditList edits = new HistogramDiff().diff(RawTextComparator.DEFAULT, oldText, newText);
+    return Blame.create(
+        applyEdits(
+            parentBlame.regions(),
+            edits,
+            newText.size(),
+            commit,
+            commit.getAuthorIdent().getName()));
+  }
+
+  private Blame fullBlame(Repository repo, Key key) throws IOException {
+    ImmutableList.Builder<BlameRegion> regions = ImmutableList.builder();
+    if (blameCache.findLastCommit(repo, key.commit(), key.path()) != null) {
+      for (Region r : blameCache.get(repo, key.commit(), key.path())) {
+        regions.add(
+            BlameRegion.create(
+                r.getSourceCommit().copy(), r.getSourceAuthor().getName(), r.getCount()));
+      }
+    }
+    return Blame.create(merge(regions.build()));
+  }
+
+  @Nullable
+  private static RawText read(ObjectReader reader, RevCommit commit, String path)
+      throws IOException {
+    try (TreeWalk tw = TreeWalk.forPath(reader, path, commit.getTree())) {
+      if (tw == null || (tw.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) {
+        return null;
+      }
+      byte[] content =
+          reader.open(tw.getObjectId(0), Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+      return RawText.isBinary(content) ? null : new RawText(content);
+    }
+  }
+
+  /**
+   * Compute the blame of a new version of a file from the blame of the old version.
+   *
+   * @param old regions of the old version.
+   * @param edits edits turning the old version into the new one.
+   * @param lines number of lines of the new version.
+   * @param commit commit introducing the new version.
+   * @param author name of the author of the commit.
+   * @return regions of the new version; lines inserted or replaced by an edit are attributed to
+   *     the commit, all others keep the attribution of the same line in the old version.
+   */
+  @VisibleForTesting
+  static List<BlameRegion> applyEdits(
+      List<BlameRegion> old, EditList edits, int lines, ObjectId commit, String author) {
+    BlameRegion[] oldLines = new BlameRegion[old.stream().mapToInt(BlameRegion::count).sum()];
+    int line = 0;
+    for (BlameRegion r : old) {
+      for (int i = 0; i < r.count(); i++) {
+        oldLines[line++] = r;
+      }
+    }
+
+    BlameRegion added = BlameRegion.create(commit.copy(), author, 1);
+    ImmutableList.Builder<BlameRegion> regions = ImmutableList.builder();
+    int a = 0;
+    int b = 0;
+    for (Edit e : edits) {
+      for (; b < e.getBeginB(); a++, b++) {
+        regions.add(oldLines[a]);
+      }
+      for (; b < e.getEndB(); b++) {
+        regions.add(added);
+      }
+      a = e.getEndA();
+    }
+    for (; b < lines; a++, b++) {
+      regions.add(oldLines[a]);
+    }
+    return merge(regions.build());
+  }
+
+  /** Merge adjacent regions with the same source, giving each its total line count. */
+  private static List<BlameRegion> merge(List<BlameRegion> regions) {
+    ImmutableList.Builder<BlameRegion> merged = ImmutableList.builder();
+    BlameRegion cur = null;
+    int count = 0;
+    for (BlameRegion r : regions) {
+      if (cur != null && cur.sameSource(r)) {
+        count += r.count();
+        continue;
+      }
+      if (cur != null) {
+        merged.add(BlameRegion.create(cur.commit(), cur.author(), count));
+      }
+      cur = r;
+      count = r.count();
+    }
+    if (cur != null) {
+      merged.add(BlameRegion.create(cur.commit(), cur.author(), count));
+    }
+    return merged.build();
+  }
+}
@@ -55,6 +55,9 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.LabelType;
 import com.google.gerrit.common.data.LabelTypes;
@@ -103,12 +106,14 @@ import com.google.gerrit.server.WebLinks;
 import com.google.gerrit.server.account.AccountLoader;
 import com.google.gerrit.server.api.accounts.AccountInfoComparator;
 import com.google.gerrit.server.api.accounts.GpgApiAdapter;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.MergeUtil;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.mail.Address;
 import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.notedb.NotesMigration;
 import com.google.gerrit.server.notedb.ReviewerStateInternal;
 import com.google.gerrit.server.patch.PatchListNotAvailableException;
 import com.google.gerrit.server.permissions.LabelPermission;
@@ -120,8 +125,12 @@ import com.google.gerrit.server.project.SubmitRuleOptions;
 import com.google.gerrit.server.query.QueryResult;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.ChangeData.ChangedLines;
+import com.google.gerrit.server.query.change.ChangeQueryProcessor.ChangeAttributeFactory;
 import com.google.gerrit.server.query.change.PluginDefinedAttributesFactory;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
 import com.google.gwtorm.server.OrmException;
+import com.google.gwtorm.server.SchemaFactory;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -139,6 +148,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -212,6 +223,12 @@ public class ChangeJson {
   private final ChangeKindCache changeKindCache;
   private final ChangeIndexCollection indexes;
   private final ApprovalsUtil approvalsUtil;
+  private final ListeningExecutorService executor;
+  private final int formatThreads;
+  private final NotesMigration migration;
+  private final DynamicMap<ChangeAttributeFactory> attributeFactories;
+  private final SchemaFactory<ReviewDb> schemaFactory;
+  private final ThreadLocalRequestContext local;
 
   private boolean lazyLoad = true;
   private AccountLoader accountLoader;
@@ -243,6 +260,12 @@ public class ChangeJson {
       ChangeKindCache changeKindCache,
       ChangeIndexCollection indexes,
       ApprovalsUtil approvalsUtil,
+      @ChangeJsonExecutor ListeningExecutorService executor,
+      @GerritServerConfig Config cfg,
+      NotesMigration migration,
+      DynamicMap<ChangeAttributeFactory> attributeFactories,
+      SchemaFactory<ReviewDb> schemaFactory,
+      ThreadLocalRequestContext local,
       @Assisted Iterable<ListChangesOption> options) {
     this.db = db;
     this.userProvider = user;
@@ -267,6 +290,12 @@ public class ChangeJson {
     this.changeKindCache = changeKindCache;
     this.indexes = indexes;
     this.approvalsUtil = approvalsUtil;
+    this.executor = executor;
+    this.formatThreads = cfg.getInt("change", null, "formatThreads", 1);
+    this.migration = migration;
+    this.attributeFactories = attributeFactories;
+    this.schemaFactory = schemaFactory;
+    this.local = local;
     this.options = Sets.immutableEnumSet(options);
   }
 
@@ -344,8 +373,22 @@ public class ChangeJson {
     accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
     ensureLoaded(FluentIterable.from(in).transformAndConcat(QueryResult::entities));
 
+    Map<Change.Id, ChangeData> distinct = new LinkedHashMap<>();
+    for (QueryResult<ChangeData> r : in) {
+      for (ChangeData cd : r.entities()) {
+        distinct.putIfAbsent(cd.getId(), cd);
+      }
+    }
+    List<ChangeData> all = new ArrayList<>(distinct.values());
+    List<ChangeInfo> formatted = formatAll(all, this::toChangeInfoOrNull);
+    Map<Change.Id, ChangeInfo> out = Maps.newHashMapWithExpectedSize(all.size());
+    for (int i = 0; i < all.size(); i++) {
+      if (formatted.get(i) != null) {
+        out.put(all.get(i).getId(), formatted.get(i));
+      }
+    }
+
     List<List<ChangeInfo>> res = Lists.newArrayListWithCapacity(in.size());
-    Map<Change.Id, ChangeInfo> out = new HashMap<>();
     for (QueryResult<ChangeData> r : in) {
       List<ChangeInfo> infos = toChangeInfo(out, r.entities());
       if (!infos.isEmpty() && r.more()) {
@@ -360,14 +403,70 @@ public class ChangeJson {
   public List<ChangeInfo> formatChangeDatas(Collection<ChangeData> in) throws OrmException {
     accountLoader = accountLoaderFactory.create(has(DETAILED_ACCOUNTS));
     ensureLoaded(in);
-    List<ChangeInfo> out = new ArrayList<>(in.size());
-    for (ChangeData cd : in) {
-      out.add(format(cd));
-    }
+    List<ChangeInfo> out =
+        formatAll(new ArrayList<>(in), cd -> format(cd, Optional.empty(), false));
     accountLoader.fill();
     return out;
   }
 
+  @FunctionalInterface
+  private interface Formatter {
+    @Nullable
+    ChangeInfo format(ChangeData cd) throws OrmException;
+  }
+
+  /**
+   * Formats the changes, returning the results in input order.
+   *
+   * <p>Changes read from NoteDb are formatted concurrently on the {@link ChangeJsonExecutor}. Each
+   * task runs in a request context of its own, for the user of the calling request and with its own
+   * database, so nothing bound to the request thread is used by the workers. Accounts are only
+   * collected in the shared {@link AccountLoader}, which the caller fills once all tasks are done.
+   */
+  private List<ChangeInfo> formatAll(List<ChangeData> changes, Formatter formatter)
+      throws OrmException {
+    if (!formatConcurrently(changes)) {
+      List<ChangeInfo> out = new ArrayList<>(changes.size());
+      for (ChangeData cd : changes) {
+        out.add(formatter.format(cd));
+      }
+      return out;
+    }
+
+    CurrentUser user = userProvider.get();
+    List<ListenableFuture<ChangeInfo>> futures = new ArrayList<>(changes.size());
+    for (ChangeData cd : changes) {
+      futures.add(
+          executor.submit(
+              () -> {
+                try (ManualRequestContext ctx =
+                    new ManualRequestContext(user, schemaFactory, local)) {
+                  return formatter.format(cd);
+                }
+              }));
+    }
+    try {
+      return Futures.allAsList(futures).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OrmException("Interrupted while formatting changes", e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), OrmException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new OrmException(e.getCause());
+    }
+  }
+
+  private boolean formatConcurrently(List<ChangeData> changes) {
+    // Each ChangeData keeps the database of the calling request, which must not be used by several
+    // threads; it is only left alone when changes are read from NoteDb. Plugin-defined attributes
+    // may depend on request-scoped state that is only available on the request thread.
+    return formatThreads > 1
+        && changes.size() > 1
+        && migration.readChanges()
+        && (pluginDefinedAttributesFactory == null || attributeFactories.plugins().isEmpty());
+  }
+
   private void ensureLoaded(Iterable<ChangeData> all) throws OrmException {
     if (lazyLoad) {
       ChangeData.ensureChangeLoaded(all);
@@ -395,29 +494,31 @@ public class ChangeJson {
     List<ChangeInfo> info = Lists.newArrayListWithCapacity(changes.size());
     for (ChangeData cd : changes) {
       ChangeInfo i = out.get(cd.getId());
-      if (i == null) {
-        try {
-          i = toChangeInfo(cd, Optional.empty());
-        } catch (PatchListNotAvailableException
-            | GpgException
-            | OrmException
-            | IOException
-            | PermissionBackendException
-            | RuntimeException e) {
-          if (has(CHECK)) {
-            i = checkOnly(cd);
-          } else {
-            log.warn("Omitting corrupt change " + cd.getId() + " from results", e);
-            continue;
-          }
-        }
-        out.put(cd.getId(), i);
+      if (i != null) {
+        info.add(i);
       }
-      info.add(i);
     }
     return info;
   }
 
+  @Nullable
+  private ChangeInfo toChangeInfoOrNull(ChangeData cd) {
+    try {
+      return toChangeInfo(cd, Optional.empty());
+    } catch (PatchListNotAvailableException
+        | GpgException
+        | OrmException
+        | IOException
+        | PermissionBackendException
+        | RuntimeException e) {
+      if (has(CHECK)) {
+        return checkOnly(cd);
+      }
+      log.warn("Omitting corrupt change " + cd.getId() + " from results", e);
+      return null;
+    }
+  }
+
   private ChangeInfo checkOnly(ChangeData cd) {
     ChangeControl ctl;
     try {
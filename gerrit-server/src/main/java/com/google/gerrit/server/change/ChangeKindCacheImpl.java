@@ -16,6 +16,7 @@ package com.google.gerrit.server.change;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
 
@@ -30,6 +31,8 @@ import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.CacheSerializer;
+import com.google.gerrit.server.cache.EnumCacheSerializer;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.InMemoryInserter;
@@ -51,6 +54,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
@@ -71,6 +75,9 @@ public class ChangeKindCacheImpl implements ChangeKindCache {
       protected void configure() {
         bind(ChangeKindCache.class).to(ChangeKindCacheImpl.class);
         persist(ID_CACHE, Key.class, ChangeKind.class)
+            .version(1)
+            .keySerializer(new Key.Serializer())
+            .valueSerializer(new EnumCacheSerializer<>(ChangeKind.class))
             .maximumWeight(2 << 20)
             .weigher(ChangeKindWeigher.class);
       }
@@ -182,6 +189,34 @@ public class ChangeKindCacheImpl implements ChangeKindCache {
       next = readNotNull(in);
       strategyName = in.readUTF();
     }
+
+    /** Stores both commit IDs in raw form followed by the UTF-8 strategy name. */
+    static class Serializer implements CacheSerializer<Key> {
+      @Override
+      public byte[] serialize(Key key) {
+        byte[] name = key.strategyName.getBytes(UTF_8);
+        byte[] out = new byte[2 * Constants.OBJECT_ID_LENGTH + name.length];
+        key.prior.copyRawTo(out, 0);
+        key.next.copyRawTo(out, Constants.OBJECT_ID_LENGTH);
+        System.arraycopy(name, 0, out, 2 * Constants.OBJECT_ID_LENGTH, name.length);
+        return out;
+      }
+
+      @Override
+      public Key deserialize(byte[] in) throws IOException {
+        if (in.length < 2 * Constants.OBJECT_ID_LENGTH) {
+          throw new IOException("Invalid serialized change kind key");
+        }
+        return new Key(
+            ObjectId.fromRaw(in, 0),
+            ObjectId.fromRaw(in, Constants.OBJECT_ID_LENGTH),
+            new String(
+                in,
+                2 * Constants.OBJECT_ID_LENGTH,
+                in.length - 2 * Constants.OBJECT_ID_LENGTH,
+                UTF_8));
+      }
+    }
   }
 
   private static class Loader implements Callable<ChangeKind> {
@@ -25,13 +25,12 @@ import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.change.BlameResultCache.BlameRegion;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.MergeUtil;
 import com.google.gerrit.server.patch.AutoMerger;
 import com.google.gerrit.server.project.InvalidChangeOperationException;
-import com.google.gitiles.blame.BlameCache;
-import com.google.gitiles.blame.Region;
 import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import java.io.IOException;
@@ -42,7 +41,6 @@ import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
-import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.merge.ThreeWayMergeStrategy;
@@ -53,7 +51,7 @@ import org.kohsuke.args4j.Option;
 public class GetBlame implements RestReadView<FileResource> {
 
   private final GitRepositoryManager repoManager;
-  private final BlameCache blameCache;
+  private final BlameResultCache blameCache;
   private final boolean allowBlame;
   private final ThreeWayMergeStrategy mergeStrategy;
   private final AutoMerger autoMerger;
@@ -70,7 +68,7 @@ public class GetBlame implements RestReadView<FileResource> {
   @Inject
   GetBlame(
       GitRepositoryManager repoManager,
-      BlameCache blameCache,
+      BlameResultCache blameCache,
       @GerritServerConfig Config cfg,
       AutoMerger autoMerger) {
     this.repoManager = repoManager;
@@ -139,17 +137,12 @@ public class GetBlame implements RestReadView<FileResource> {
     ListMultimap<BlameInfo, RangeInfo> ranges =
         MultimapBuilder.hashKeys().arrayListValues().build();
     List<BlameInfo> result = new ArrayList<>();
-    if (blameCache.findLastCommit(repository, id, path) == null) {
-      return result;
-    }
-
-    List<Region> blameRegions = blameCache.get(repository, id, path);
     int from = 1;
-    for (Region region : blameRegions) {
-      RevCommit commit = revWalk.parseCommit(region.getSourceCommit());
-      BlameInfo blameInfo = toBlameInfo(commit, region.getSourceAuthor());
-      ranges.put(blameInfo, new RangeInfo(from, from + region.getCount() - 1));
-      from += region.getCount();
+    for (BlameRegion region : blameCache.get(repository, revWalk, id, path)) {
+      RevCommit commit = revWalk.parseCommit(region.commit());
+      BlameInfo blameInfo = toBlameInfo(commit, region.author());
+      ranges.put(blameInfo, new RangeInfo(from, from + region.count() - 1));
+      from += region.count();
     }
 
     for (BlameInfo key : ranges.keySet()) {
@@ -159,9 +152,9 @@ public class GetBlame implements RestReadView<FileResource> {
     return result;
   }
 
-  private static BlameInfo toBlameInfo(RevCommit commit, PersonIdent sourceAuthor) {
+  private static BlameInfo toBlameInfo(RevCommit commit, String sourceAuthor) {
     BlameInfo blameInfo = new BlameInfo();
-    blameInfo.author = sourceAuthor.getName();
+    blameInfo.author = sourceAuthor;
     blameInfo.id = commit.getName();
     blameInfo.commitMsg = commit.getFullMessage();
     blameInfo.time = commit.getCommitTime();
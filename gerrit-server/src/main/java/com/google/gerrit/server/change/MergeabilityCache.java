@@ -16,6 +16,8 @@ package com.google.gerrit.server.change;
 
 import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.reviewdb.client.Branch;
+import java.util.Collection;
+import java.util.Map;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -34,6 +36,17 @@ public interface MergeabilityCache {
       throw new UnsupportedOperationException("Mergeability checking disabled");
     }
 
+    @Override
+    public Map<ObjectId, Boolean> getAll(
+        Collection<ObjectId> commits,
+        Ref intoRef,
+        SubmitType submitType,
+        String mergeStrategy,
+        Branch.NameKey dest,
+        Repository repo) {
+      throw new UnsupportedOperationException("Mergeability checking disabled");
+    }
+
     @Override
     public Boolean getIfPresent(
         ObjectId commit, Ref intoRef, SubmitType submitType, String mergeStrategy) {
@@ -49,5 +62,23 @@ public interface MergeabilityCache {
       Branch.NameKey dest,
       Repository repo);
 
+  /**
+   * Get mergeability of several commits into the same branch.
+   *
+   * <p>Cache misses are computed together, sharing a single walk and the set of already accepted
+   * commits of {@code repo}, which is considerably cheaper than calling {@link #get} for each
+   * commit. Concurrent requests for a commit that is being computed wait for the result rather
+   * than computing it again.
+   *
+   * @return mergeability of each of {@code commits}.
+   */
+  Map<ObjectId, Boolean> getAll(
+      Collection<ObjectId> commits,
+      Ref intoRef,
+      SubmitType submitType,
+      String mergeStrategy,
+      Branch.NameKey dest,
+      Repository repo);
+
   Boolean getIfPresent(ObjectId commit, Ref intoRef, SubmitType submitType, String mergeStrategy);
 }
@@ -18,6 +18,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.gerrit.server.ioutil.BasicSerialization.readString;
 import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.readNotNull;
 import static org.eclipse.jgit.lib.ObjectIdSerialization.writeNotNull;
 
@@ -25,13 +26,18 @@ import com.google.common.base.MoreObjects;
 import com.google.common.cache.Cache;
 import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.server.cache.BooleanCacheSerializer;
 import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.CacheSerializer;
 import com.google.gerrit.server.git.CodeReviewCommit;
 import com.google.gerrit.server.git.CodeReviewCommit.CodeReviewRevWalk;
+import com.google.gerrit.server.git.IntegrationException;
 import com.google.gerrit.server.git.strategy.SubmitDryRun;
+import com.google.gerrit.server.project.NoSuchProjectException;
 import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.Singleton;
@@ -41,9 +47,14 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -78,6 +89,9 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
       @Override
       protected void configure() {
         persist(CACHE_NAME, EntryKey.class, Boolean.class)
+            .version(1)
+            .keySerializer(new EntryKey.Serializer())
+            .valueSerializer(BooleanCacheSerializer.INSTANCE)
             .maximumWeight(1 << 20)
             .weigher(MergeabilityWeigher.class);
         bind(MergeabilityCache.class).to(MergeabilityCacheImpl.class);
@@ -168,6 +182,46 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
       }
       mergeStrategy = readString(in);
     }
+
+    /**
+     * Stores both commit IDs in raw form, followed by the submit type code and the UTF-8 merge
+     * strategy name.
+     */
+    static class Serializer implements CacheSerializer<EntryKey> {
+      private static final int TYPE_OFFSET = 2 * Constants.OBJECT_ID_LENGTH;
+
+      @Override
+      public byte[] serialize(EntryKey key) throws IOException {
+        Character c = SUBMIT_TYPES.get(key.submitType);
+        if (c == null) {
+          throw new IOException("Invalid submit type: " + key.submitType);
+        }
+        byte[] strategy = key.mergeStrategy.getBytes(UTF_8);
+        byte[] out = new byte[TYPE_OFFSET + 1 + strategy.length];
+        key.commit.copyRawTo(out, 0);
+        key.into.copyRawTo(out, Constants.OBJECT_ID_LENGTH);
+        out[TYPE_OFFSET] = (byte) c.charValue();
+        System.arraycopy(strategy, 0, out, TYPE_OFFSET + 1, strategy.length);
+        return out;
+      }
+
+      @Override
+      public EntryKey deserialize(byte[] in) throws IOException {
+        if (in.length <= TYPE_OFFSET) {
+          throw new IOException("Invalid serialized mergeability key");
+        }
+        char t = (char) in[TYPE_OFFSET];
+        SubmitType submitType = SUBMIT_TYPES.inverse().get(t);
+        if (submitType == null) {
+          throw new IOException("Invalid submit type code: " + t);
+        }
+        return new EntryKey(
+            ObjectId.fromRaw(in, 0),
+            ObjectId.fromRaw(in, Constants.OBJECT_ID_LENGTH),
+            submitType,
+            new String(in, TYPE_OFFSET + 1, in.length - TYPE_OFFSET - 1, UTF_8));
+      }
+    }
   }
 
   public static class MergeabilityWeigher implements Weigher<EntryKey, Boolean> {
@@ -198,23 +252,38 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
       String mergeStrategy,
       Branch.NameKey dest,
       Repository repo) {
-    ObjectId into = intoRef != null ? intoRef.getObjectId() : ObjectId.zeroId();
-    EntryKey key = new EntryKey(commit, into, submitType, mergeStrategy);
+    EntryKey key = new EntryKey(commit, toId(intoRef), submitType, mergeStrategy);
+    return get(
+        key,
+        () -> {
+          try (Loader loader = new Loader(repo, dest)) {
+            return loader.load(key);
+          }
+        });
+  }
+
+  @Override
+  public Map<ObjectId, Boolean> getAll(
+      Collection<ObjectId> commits,
+      Ref intoRef,
+      SubmitType submitType,
+      String mergeStrategy,
+      Branch.NameKey dest,
+      Repository repo) {
+    ObjectId into = toId(intoRef);
+    Map<ObjectId, Boolean> result = Maps.newHashMapWithExpectedSize(commits.size());
+    try (Loader loader = new Loader(repo, dest)) {
+      for (ObjectId commit : commits) {
+        EntryKey key = new EntryKey(commit, into, submitType, mergeStrategy);
+        result.put(commit, get(key, () -> loader.load(key)));
+      }
+    }
+    return result;
+  }
+
+  private boolean get(EntryKey key, Callable<Boolean> loader) {
     try {
-      return cache.get(
-          key,
-          () -> {
-            if (key.into.equals(ObjectId.zeroId())) {
-              return true; // Assume yes on new branch.
-            }
-            try (CodeReviewRevWalk rw = CodeReviewCommit.newRevWalk(repo)) {
-              Set<RevCommit> accepted = SubmitDryRun.getAlreadyAccepted(repo, rw);
-              accepted.add(rw.parseCommit(key.into));
-              accepted.addAll(Arrays.asList(rw.parseCommit(key.commit).getParents()));
-              return submitDryRun.run(
-                  key.submitType, repo, rw, dest, key.into, key.commit, accepted);
-            }
-          });
+      return cache.get(key, loader);
     } catch (ExecutionException | UncheckedExecutionException e) {
       log.error(
           String.format(
@@ -230,4 +299,45 @@ public class MergeabilityCacheImpl implements MergeabilityCache {
       ObjectId commit, Ref intoRef, SubmitType submitType, String mergeStrategy) {
     return cache.getIfPresent(new EntryKey(commit, toId(intoRef), submitType, mergeStrategy));
   }
+
+  /**
+   * Computes mergeability of cache misses into one branch.
+   *
+   * <p>The walk and the set of commits already accepted into the repository are created on the
+   * first miss and reused for all further keys, so a batch of mostly cached keys does not pay for
+   * scanning the refs.
+   */
+  private class Loader implements AutoCloseable {
+    private final Repository repo;
+    private final Branch.NameKey dest;
+    private CodeReviewRevWalk rw;
+    private Set<RevCommit> accepted;
+
+    private Loader(Repository repo, Branch.NameKey dest) {
+      this.repo = repo;
+      this.dest = dest;
+    }
+
+    private boolean load(EntryKey key)
+        throws IntegrationException, NoSuchProjectException, IOException {
+      if (key.into.equals(ObjectId.zeroId())) {
+        return true; // Assume yes on new branch.
+      }
+      if (rw == null) {
+        rw = CodeReviewCommit.newRevWalk(repo);
+        accepted = SubmitDryRun.getAlreadyAccepted(repo, rw);
+      }
+      Set<RevCommit> keyAccepted = new HashSet<>(accepted);
+      keyAccepted.add(rw.parseCommit(key.into));
+      keyAccepted.addAll(Arrays.asList(rw.parseCommit(key.commit).getParents()));
+      return submitDryRun.run(key.submitType, repo, rw, dest, key.into, key.commit, keyAccepted);
+    }
+
+    @Override
+    public void close() {
+      if (rw != null) {
+        rw.close();
+      }
+    }
+  }
 }
@@ -76,7 +76,7 @@ public class InMemoryInserter extends ObjectInserter {
 
   @Override
   public ObjectReader newReader() {
-    return new Reader();
+    return new Reader(reader, false);
   }
 
   @Override
@@ -100,9 +100,18 @@ public class InMemoryInserter extends ObjectInserter {
   }
 
   private class Reader extends ObjectReader {
+    private final ObjectReader reader;
+    private final boolean closeReader;
+
+    private Reader(ObjectReader reader, boolean closeReader) {
+      this.reader = reader;
+      this.closeReader = closeReader;
+    }
+
     @Override
     public ObjectReader newReader() {
-      return new Reader();
+      // Use a separate underlying reader so the new reader may be used from another thread.
+      return new Reader(reader.newReader(), true);
     }
 
     @Override
@@ -136,7 +145,9 @@ public class InMemoryInserter extends ObjectInserter {
 
     @Override
     public void close() {
-      // Do nothing; this class owns no open resources.
+      if (closeReader) {
+        reader.close();
+      }
     }
 
     @Override
@@ -148,7 +148,7 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
       } else if ((accountId = Account.Id.fromRef(name)) != null) {
         // Account ref is visible only to corresponding account.
         if (viewMetadata
-            || (accountId.equals(userId) && projectCtl.controlForRef(name).isVisible())) {
+            || (accountId.equals(userId) && projectCtl.isRefVisible(name))) {
           result.put(name, ref);
         }
       } else if (isTag(ref)) {
@@ -166,10 +166,10 @@ public class VisibleRefFilter extends AbstractAdvertiseRefsHook {
         if (viewMetadata) {
           result.put(name, ref);
         }
-      } else if (projectCtl.controlForRef(ref.getLeaf().getName()).isVisible()) {
-        // Use the leaf to lookup the control data. If the reference is
-        // symbolic we want the control around the final target. If its
-        // not symbolic then getLeaf() is a no-op returning ref itself.
+      } else if (projectCtl.isRefVisible(ref.getLeaf().getName())) {
+        // Use the leaf to check visibility. If the reference is symbolic
+        // we want the permissions of the final target. If its not
+        // symbolic then getLeaf() is a no-op returning ref itself.
         result.put(name, ref);
       }
     }
@@ -27,6 +27,7 @@ import static com.google.gerrit.server.git.receive.ReceiveConstants.SAME_CHANGE_
 import static com.google.gerrit.server.git.validators.CommitValidators.NEW_PATCHSET_PATTERN;
 import static com.google.gerrit.server.mail.MailUtil.getRecipientsFromFooters;
 import static java.util.Comparator.comparingInt;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static org.eclipse.jgit.lib.Constants.R_HEADS;
@@ -72,6 +73,7 @@ import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.metrics.Timer3;
 import com.google.gerrit.reviewdb.client.Account;
 import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
@@ -111,6 +113,8 @@ import com.google.gerrit.server.git.SubmoduleException;
 import com.google.gerrit.server.git.SubmoduleOp;
 import com.google.gerrit.server.git.TagCache;
 import com.google.gerrit.server.git.ValidationError;
+import com.google.gerrit.server.git.receive.ReceiveCommitsMetrics.Phase;
+import com.google.gerrit.server.git.receive.ReceiveCommitsMetrics.PushType;
 import com.google.gerrit.server.git.validators.CommitValidationException;
 import com.google.gerrit.server.git.validators.CommitValidationMessage;
 import com.google.gerrit.server.git.validators.CommitValidators;
@@ -309,6 +313,7 @@ class ReceiveCommits {
   private final Provider<InternalChangeQuery> queryProvider;
   private final Provider<MergeOp> mergeOpProvider;
   private final Provider<MergeOpRepoManager> ormProvider;
+  private final ReceiveCommitsMetrics metrics;
   private final ReceiveConfig receiveConfig;
   private final RefOperationValidators.Factory refValidatorsFactory;
   private final ReplaceOp.Factory replaceOpFactory;
@@ -392,6 +397,7 @@ class ReceiveCommits {
       Provider<InternalChangeQuery> queryProvider,
       Provider<MergeOp> mergeOpProvider,
       Provider<MergeOpRepoManager> ormProvider,
+      ReceiveCommitsMetrics metrics,
       ReceiveConfig receiveConfig,
       RefOperationValidators.Factory refValidatorsFactory,
       ReplaceOp.Factory replaceOpFactory,
@@ -422,6 +428,7 @@ class ReceiveCommits {
     this.initializers = initializers;
     this.mergeOpProvider = mergeOpProvider;
     this.mergedByPushOpFactory = mergedByPushOpFactory;
+    this.metrics = metrics;
     this.notesFactory = notesFactory;
     this.notesMigration = notesMigration;
     this.optionParserFactory = optionParserFactory;
@@ -522,6 +529,7 @@ class ReceiveCommits {
     closeProgress = progress.beginSubTask("closed", UNKNOWN);
     commandProgress = progress.beginSubTask("refs", UNKNOWN);
 
+    long parseStart = System.nanoTime();
     try {
       parseCommands(commands);
     } catch (PermissionBackendException err) {
@@ -532,11 +540,24 @@ class ReceiveCommits {
       }
       logError(String.format("Failed to process refs in %s", project.getName()), err);
     }
+    // The push type is only known once all commands are parsed.
+    PushType pushType = pushType();
+    metrics.phaseLatency.record(
+        Phase.PARSE_COMMANDS,
+        pushType,
+        project.getName(),
+        System.nanoTime() - parseStart,
+        NANOSECONDS);
+
     if (magicBranch != null && magicBranch.cmd.getResult() == NOT_ATTEMPTED) {
-      selectNewAndReplacedChangesFromMagicBranch();
+      try (Timer3.Context ctx = startPhase(Phase.SELECT_CHANGES, PushType.MAGIC_BRANCH)) {
+        selectNewAndReplacedChangesFromMagicBranch();
+      }
     }
     preparePatchSetsForReplace();
-    insertChangesAndPatchSets();
+    try (Timer3.Context ctx = startPhase(Phase.INSERT_CHANGES, pushType)) {
+      insertChangesAndPatchSets();
+    }
     newProgress.end();
     replaceProgress.end();
 
@@ -562,7 +583,9 @@ class ReceiveCommits {
           case CREATE:
           case UPDATE:
           case UPDATE_NONFASTFORWARD:
-            autoCloseChanges(c);
+            try (Timer3.Context ctx = startPhase(Phase.AUTO_CLOSE_CHANGES, PushType.DIRECT)) {
+              autoCloseChanges(c);
+            }
             branches.add(new Branch.NameKey(project.getNameKey(), c.getRefName()));
             break;
 
@@ -589,6 +612,33 @@ class ReceiveCommits {
     reportMessages();
   }
 
+  private PushType pushType() {
+    if (magicBranch != null) {
+      return PushType.MAGIC_BRANCH;
+    } else if (!actualCommands.isEmpty()
+        && actualCommands.stream().allMatch(c -> c.getType() == ReceiveCommand.Type.DELETE)) {
+      return PushType.DELETE;
+    }
+    return PushType.DIRECT;
+  }
+
+  private static PushType pushType(ReceiveCommand cmd) {
+    if (MagicBranch.isMagicBranch(cmd.getRefName())) {
+      return PushType.MAGIC_BRANCH;
+    } else if (cmd.getType() == ReceiveCommand.Type.DELETE) {
+      return PushType.DELETE;
+    }
+    return PushType.DIRECT;
+  }
+
+  private Timer3.Context startPhase(Phase phase, PushType type) {
+    return metrics.phaseLatency.start(phase, type, project.getName());
+  }
+
+  private void countWalked(Phase phase, PushType type, int commits) {
+    metrics.commitsWalked.incrementBy(phase, type, project.getName(), commits);
+  }
+
   private void reportMessages() {
     List<CreateRequest> created =
         newChanges.stream().filter(r -> r.change != null).collect(toList());
@@ -799,7 +849,9 @@ class ReceiveCommits {
       }
 
       if (MagicBranch.isMagicBranch(cmd.getRefName())) {
-        parseMagicBranch(cmd);
+        try (Timer3.Context ctx = startPhase(Phase.PARSE_MAGIC_BRANCH, PushType.MAGIC_BRANCH)) {
+          parseMagicBranch(cmd);
+        }
         continue;
       }
 
@@ -1772,12 +1824,13 @@ class ReceiveCommits {
               magicBranch.cmd,
               "the number of pushed changes in a batch exceeds the max limit " + maxBatchChanges);
           newChanges = Collections.emptyList();
+          countWalked(Phase.SELECT_CHANGES, PushType.MAGIC_BRANCH, total);
           return;
         }
 
         if (commitAlreadyTracked) {
           boolean changeExistsOnDestBranch = false;
-          for (ChangeData cd : pending.get(c).destChanges) {
+          for (ChangeData cd : pending.get(c).destChanges()) {
             if (cd.change().getDest().equals(magicBranch.dest)) {
               changeExistsOnDestBranch = true;
               break;
@@ -1794,6 +1847,7 @@ class ReceiveCommits {
           // Not a change the user can propose? Abort as early as possible.
           newChanges = Collections.emptyList();
           logDebug("Aborting early due to invalid commit");
+          countWalked(Phase.SELECT_CHANGES, PushType.MAGIC_BRANCH, total);
           return;
         }
 
@@ -1812,6 +1866,7 @@ class ReceiveCommits {
           continue;
         }
       }
+      countWalked(Phase.SELECT_CHANGES, PushType.MAGIC_BRANCH, total);
       logDebug(
           "Finished initial RevWalk with {} commits total: {} already"
               + " tracked, {} new changes with no Change-Id, and {} deferred"
@@ -1825,6 +1880,7 @@ class ReceiveCommits {
         rejectImplicitMerges(mergedParents);
       }
 
+      lookUpDestChanges(pending.values());
       for (Iterator<ChangeLookup> itr = pending.values().iterator(); itr.hasNext(); ) {
         ChangeLookup p = itr.next();
         if (p.changeKey == null) {
@@ -1838,7 +1894,7 @@ class ReceiveCommits {
           return;
         }
 
-        List<ChangeData> changes = p.destChanges;
+        List<ChangeData> changes = p.destChanges();
         if (changes.size() > 1) {
           logDebug(
               "Multiple changes in branch {} with Change-Id {}: {}",
@@ -2058,22 +2114,56 @@ class ReceiveCommits {
     return idStr.matches("^I[0-9a-fA-F]{40}$") && !idStr.matches("^I00*$");
   }
 
+  /**
+   * Resolves the Change-Ids of all pending lookups with as few index queries as possible.
+   *
+   * <p>Lookups for invalid Change-Ids are left to {@link ChangeLookup#destChanges()}, which matches
+   * them as prefixes.
+   */
+  private void lookUpDestChanges(Collection<ChangeLookup> lookups) throws OrmException {
+    Set<Change.Key> keys = new HashSet<>();
+    for (ChangeLookup p : lookups) {
+      if (p.destChanges == null && p.changeKey != null && isValidChangeId(p.changeKey.get())) {
+        keys.add(p.changeKey);
+      }
+    }
+    if (keys.isEmpty()) {
+      return;
+    }
+    ListMultimap<Change.Key, ChangeData> byKey =
+        queryProvider.get().byBranchKeys(magicBranch.dest, keys);
+    logDebug("Resolved {} Change-Ids to {} changes", keys.size(), byKey.size());
+    for (ChangeLookup p : lookups) {
+      if (p.destChanges == null && p.changeKey != null && keys.contains(p.changeKey)) {
+        p.destChanges = byKey.get(p.changeKey);
+      }
+    }
+  }
+
   private class ChangeLookup {
     final RevCommit commit;
     final Change.Key changeKey;
-    final List<ChangeData> destChanges;
+    private List<ChangeData> destChanges;
 
-    ChangeLookup(RevCommit c, Change.Key key) throws OrmException {
+    ChangeLookup(RevCommit c, Change.Key key) {
       commit = c;
       changeKey = key;
-      destChanges = queryProvider.get().byBranchKey(magicBranch.dest, key);
     }
 
-    ChangeLookup(RevCommit c) throws OrmException {
+    ChangeLookup(RevCommit c) {
       commit = c;
-      destChanges = queryProvider.get().byBranchCommit(magicBranch.dest, c.getName());
       changeKey = null;
     }
+
+    List<ChangeData> destChanges() throws OrmException {
+      if (destChanges == null) {
+        destChanges =
+            changeKey != null
+                ? queryProvider.get().byBranchKey(magicBranch.dest, changeKey)
+                : queryProvider.get().byBranchCommit(magicBranch.dest, commit.getName());
+      }
+      return destChanges;
+    }
   }
 
   private class CreateRequest {
@@ -2700,7 +2790,7 @@ class ReceiveCommits {
     RevWalk walk = rp.getRevWalk();
     walk.reset();
     walk.sort(RevSort.NONE);
-    try {
+    try (Timer3.Context ctx = startPhase(Phase.VALIDATE_NEW_COMMITS, pushType(cmd))) {
       RevObject parsedObject = walk.parseAny(cmd.getNewId());
       if (!(parsedObject instanceof RevCommit)) {
         return;
@@ -2742,6 +2832,7 @@ class ReceiveCommits {
         }
       }
       logDebug("Validated {} new commits", i);
+      countWalked(Phase.VALIDATE_NEW_COMMITS, pushType(cmd), i);
     } catch (IOException err) {
       cmd.setResult(REJECTED_MISSING_OBJECT);
       logError("Invalid pack upload; one or more objects weren't sent", err);
@@ -2759,22 +2850,25 @@ class ReceiveCommits {
     RevCommit c = rw.parseCommit(id);
     rw.parseBody(c);
 
+    boolean isMerged =
+        magicBranch != null
+            && cmd.getRefName().equals(magicBranch.cmd.getRefName())
+            && magicBranch.merged;
+    CommitValidators validators =
+        isMerged
+            ? commitValidatorsFactory.forMergedCommits(perm, ctl)
+            : commitValidatorsFactory.forReceiveCommits(perm, ctl, sshInfo, repo, rw);
     try (CommitReceivedEvent receiveEvent =
         new CommitReceivedEvent(cmd, project, ctl.getRefName(), rw.getObjectReader(), c, user)) {
-      boolean isMerged =
-          magicBranch != null
-              && cmd.getRefName().equals(magicBranch.cmd.getRefName())
-              && magicBranch.merged;
-      CommitValidators validators =
-          isMerged
-              ? commitValidatorsFactory.forMergedCommits(perm, ctl)
-              : commitValidatorsFactory.forReceiveCommits(perm, ctl, sshInfo, repo, rw);
       messages.addAll(validators.validate(receiveEvent));
     } catch (CommitValidationException e) {
       logDebug("Commit validation failed on {}", c.name());
       messages.addAll(e.getMessages());
       reject(cmd, e.getMessage());
       return false;
+    } finally {
+      // Validation stops at the first validator rejecting the commit.
+      metrics.validatorsInvoked.incrementBy(pushType(cmd), project.getName(), validators.invoked());
     }
     validCommits.add(c.copy());
     return true;
@@ -2814,8 +2908,10 @@ class ReceiveCommits {
 
       int existingPatchSets = 0;
       int newPatchSets = 0;
+      int walked = 0;
       COMMIT:
       for (RevCommit c; (c = rw.next()) != null; ) {
+        walked++;
         rw.parseBody(c);
 
         for (Ref ref : byCommit.get(c.copy())) {
@@ -2845,6 +2941,8 @@ class ReceiveCommits {
         }
       }
 
+      countWalked(Phase.AUTO_CLOSE_CHANGES, PushType.DIRECT, walked);
+
       for (ReplaceRequest req : replaceAndClose) {
         Change.Id id = req.notes.getChangeId();
         if (!req.validate(true)) {
@@ -17,6 +17,8 @@ package com.google.gerrit.server.git.receive;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.SendEmailExecutor;
 import com.google.gerrit.server.git.WorkQueue;
@@ -26,6 +28,7 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.Config;
@@ -55,12 +58,19 @@ public class ReceiveCommitsExecutorModule extends AbstractModule {
   @Singleton
   @SendEmailExecutor
   public ExecutorService createSendEmailExecutor(
-      @GerritServerConfig Config config, WorkQueue queues) {
+      @GerritServerConfig Config config, WorkQueue queues, MetricMaker metricMaker) {
     int poolSize = config.getInt("sendemail", null, "threadPoolSize", 1);
     if (poolSize == 0) {
       return MoreExecutors.newDirectExecutorService();
     }
-    return queues.createQueue(poolSize, "SendEmail");
+    ScheduledThreadPoolExecutor executor =
+        queues.createQueue(poolSize, "SendEmail", Thread.NORM_PRIORITY);
+    metricMaker.newCallbackMetric(
+        "email/send_queue_depth",
+        Integer.class,
+        new Description("Emails waiting to be sent").setGauge().setUnit("emails"),
+        () -> executor.getQueue().size());
+    return executor;
   }
 
   @Provides
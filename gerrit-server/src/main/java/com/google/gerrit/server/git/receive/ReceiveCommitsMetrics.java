@@ -0,0 +1,95 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git.receive;
+
+import com.google.gerrit.metrics.Counter2;
+import com.google.gerrit.metrics.Counter3;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer3;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+@Singleton
+class ReceiveCommitsMetrics {
+  /** Phase of processing the commands of a push in {@link ReceiveCommits}. */
+  enum Phase {
+    /** Parsing all commands; includes {@link #PARSE_MAGIC_BRANCH} and direct pushes' validation. */
+    PARSE_COMMANDS,
+    PARSE_MAGIC_BRANCH,
+    /** Walking the pushed commits and looking up the changes they create or replace. */
+    SELECT_CHANGES,
+    VALIDATE_NEW_COMMITS,
+    /** Executing the batch update that inserts changes and patch sets and updates refs. */
+    INSERT_CHANGES,
+    AUTO_CLOSE_CHANGES;
+  }
+
+  enum PushType {
+    /** Push for review to a magic branch, e.g. {@code refs/for/master}. */
+    MAGIC_BRANCH,
+    /** Push directly to a branch or other ref, bypassing review. */
+    DIRECT,
+    /** Push that only deletes refs. */
+    DELETE;
+  }
+
+  /** Latency of each phase by push type and project. */
+  final Timer3<Phase, PushType, String> phaseLatency;
+
+  /** Commits walked in each phase by push type and project. */
+  final Counter3<Phase, PushType, String> commitsWalked;
+
+  /** Commit validators invoked by push type and project. */
+  final Counter2<PushType, String> validatorsInvoked;
+
+  @Inject
+  ReceiveCommitsMetrics(MetricMaker metrics) {
+    Field<Phase> phase = Field.ofEnum(Phase.class, "phase");
+    Field<PushType> type = Field.ofEnum(PushType.class, "type");
+    Field<String> project = Field.ofString("project", "project name");
+
+    phaseLatency =
+        metrics.newTimer(
+            "receivecommits/phase_latency",
+            new Description("Latency of processing pushes by phase, push type and project")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            phase,
+            type,
+            project);
+
+    commitsWalked =
+        metrics.newCounter(
+            "receivecommits/commits_walked",
+            new Description("Commits walked processing pushes by phase, push type and project")
+                .setCumulative()
+                .setUnit("commits"),
+            phase,
+            type,
+            project);
+
+    validatorsInvoked =
+        metrics.newCounter(
+            "receivecommits/validators_invoked",
+            new Description("Commit validators run on pushed commits by push type and project")
+                .setCumulative()
+                .setUnit("validators"),
+            type,
+            project);
+  }
+}
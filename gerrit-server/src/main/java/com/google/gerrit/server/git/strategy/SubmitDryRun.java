@@ -119,23 +119,30 @@ public class SubmitDryRun {
             mergeUtilFactory.create(getProject(destBranch)),
             new MergeSorter(rw, alreadyAccepted, canMerge, ImmutableSet.of(toMergeCommit)));
 
-    switch (submitType) {
-      case CHERRY_PICK:
-        return CherryPick.dryRun(args, tipCommit, toMergeCommit);
-      case FAST_FORWARD_ONLY:
-        return FastForwardOnly.dryRun(args, tipCommit, toMergeCommit);
-      case MERGE_ALWAYS:
-        return MergeAlways.dryRun(args, tipCommit, toMergeCommit);
-      case MERGE_IF_NECESSARY:
-        return MergeIfNecessary.dryRun(args, tipCommit, toMergeCommit);
-      case REBASE_IF_NECESSARY:
-        return RebaseIfNecessary.dryRun(args, repo, tipCommit, toMergeCommit);
-      case REBASE_ALWAYS:
-        return RebaseAlways.dryRun(args, repo, tipCommit, toMergeCommit);
-      default:
-        String errorMsg = "No submit strategy for: " + submitType;
-        log.error(errorMsg);
-        throw new IntegrationException(errorMsg);
+    try {
+      switch (submitType) {
+        case CHERRY_PICK:
+          return CherryPick.dryRun(args, tipCommit, toMergeCommit);
+        case FAST_FORWARD_ONLY:
+          return FastForwardOnly.dryRun(args, tipCommit, toMergeCommit);
+        case MERGE_ALWAYS:
+          return MergeAlways.dryRun(args, tipCommit, toMergeCommit);
+        case MERGE_IF_NECESSARY:
+          return MergeIfNecessary.dryRun(args, tipCommit, toMergeCommit);
+        case REBASE_IF_NECESSARY:
+          return RebaseIfNecessary.dryRun(args, repo, tipCommit, toMergeCommit);
+        case REBASE_ALWAYS:
+          return RebaseAlways.dryRun(args, repo, tipCommit, toMergeCommit);
+        default:
+          String errorMsg = "No submit strategy for: " + submitType;
+          log.error(errorMsg);
+          throw new IntegrationException(errorMsg);
+      }
+    } finally {
+      // Leave the walk reusable for further dry runs; it only has a limited number of flags.
+      toMergeCommit.remove(canMerge);
+      toMergeCommit.setStatusCode(null);
+      rw.disposeFlag(canMerge);
     }
   }
 
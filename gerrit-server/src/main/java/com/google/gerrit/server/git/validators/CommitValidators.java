@@ -171,16 +171,26 @@ public class CommitValidators {
   }
 
   private final List<CommitValidationListener> validators;
+  private int invoked;
 
   CommitValidators(List<CommitValidationListener> validators) {
     this.validators = validators;
   }
 
+  /**
+   * @return number of validators {@link #validate} passed commits to, including one that rejected
+   *     a commit.
+   */
+  public int invoked() {
+    return invoked;
+  }
+
   public List<CommitValidationMessage> validate(CommitReceivedEvent receiveEvent)
       throws CommitValidationException {
     List<CommitValidationMessage> messages = new ArrayList<>();
     try {
       for (CommitValidationListener commitValidator : validators) {
+        invoked++;
         messages.addAll(commitValidator.onCommitReceived(receiveEvent));
       }
     } catch (CommitValidationException e) {
@@ -61,6 +61,30 @@ public interface Index<K, V> {
    */
   void delete(K key) throws IOException;
 
+  /**
+   * Prepare for writing a large number of documents, such as during a full reindex by a {@link
+   * SiteIndexer}.
+   *
+   * <p>Until {@link #endBulkUpdate()} is called, the index may buffer writes and need not make them
+   * visible to searchers.
+   *
+   * @throws IOException
+   */
+  default void beginBulkUpdate() throws IOException {}
+
+  /**
+   * Flush any writes buffered since {@link #beginBulkUpdate()} and make them visible to searchers.
+   *
+   * <p>Buffered writes that fail are not reported to the caller of {@link #replace(Object)} or
+   * {@link #delete(Object)} that buffered them, but counted and returned here.
+   *
+   * @return number of buffered documents that could not be written.
+   * @throws IOException
+   */
+  default int endBulkUpdate() throws IOException {
+    return 0;
+  }
+
   /**
    * Delete all documents from the index.
    *
@@ -99,7 +99,20 @@ public class OnlineReindexer<K, V, I extends Index<K, V>> {
         "Starting online reindex from schema version {} to {}",
         version(indexes.getSearchIndex()),
         version(index));
-    SiteIndexer.Result result = batchIndexer.indexAll(index);
+    SiteIndexer.Result result;
+    try {
+      int bulkFailed;
+      index.beginBulkUpdate();
+      try {
+        result = batchIndexer.indexAll(index);
+      } finally {
+        bulkFailed = index.endBulkUpdate();
+      }
+      result = result.withFailed(bulkFailed);
+    } catch (IOException e) {
+      log.error("Online reindex of schema version {} failed", version(index), e);
+      return;
+    }
     if (!result.success()) {
       log.error(
           "Online reindex of schema version {} failed. Successfully"
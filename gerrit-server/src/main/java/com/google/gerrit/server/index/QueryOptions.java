@@ -19,14 +19,25 @@ import static com.google.common.base.Preconditions.checkArgument;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Ints;
+import com.google.gerrit.common.Nullable;
 import java.util.Set;
 
 @AutoValue
 public abstract class QueryOptions {
   public static QueryOptions create(IndexConfig config, int start, int limit, Set<String> fields) {
+    return create(config, start, limit, fields, null);
+  }
+
+  public static QueryOptions create(
+      IndexConfig config,
+      int start,
+      int limit,
+      Set<String> fields,
+      @Nullable Object searchAfter) {
     checkArgument(start >= 0, "start must be nonnegative: %s", start);
     checkArgument(limit > 0, "limit must be positive: %s", limit);
-    return new AutoValue_QueryOptions(config, start, limit, ImmutableSet.copyOf(fields));
+    return new AutoValue_QueryOptions(
+        config, start, limit, ImmutableSet.copyOf(fields), searchAfter);
   }
 
   public QueryOptions convertForBackend() {
@@ -35,7 +46,7 @@ public abstract class QueryOptions {
     int backendLimit = config().maxLimit();
     int limit = Ints.saturatedCast((long) limit() + start());
     limit = Math.min(limit, backendLimit);
-    return create(config(), 0, limit, fields());
+    return create(config(), 0, limit, fields(), searchAfter());
   }
 
   public abstract IndexConfig config();
@@ -46,11 +57,24 @@ public abstract class QueryOptions {
 
   public abstract ImmutableSet<String> fields();
 
+  /**
+   * Index-specific position to resume the query from.
+   *
+   * <p>If set, results start strictly after this position in the index's sort order, and {@link
+   * #start()} is relative to it. Indexes that do not understand the value must reject the query.
+   */
+  @Nullable
+  public abstract Object searchAfter();
+
   public QueryOptions withLimit(int newLimit) {
-    return create(config(), start(), newLimit, fields());
+    return create(config(), start(), newLimit, fields(), searchAfter());
   }
 
   public QueryOptions withStart(int newStart) {
-    return create(config(), newStart, limit(), fields());
+    return create(config(), newStart, limit(), fields(), searchAfter());
+  }
+
+  public QueryOptions withSearchAfter(@Nullable Object newSearchAfter) {
+    return create(config(), start(), limit(), fields(), newSearchAfter);
   }
 }
@@ -40,12 +40,28 @@ public abstract class SiteIndexer<K, V, I extends Index<K, V>> {
     private final int failed;
 
     public Result(Stopwatch sw, boolean success, int done, int failed) {
-      this.elapsedNanos = sw.elapsed(TimeUnit.NANOSECONDS);
+      this(sw.elapsed(TimeUnit.NANOSECONDS), success, done, failed);
+    }
+
+    private Result(long elapsedNanos, boolean success, int done, int failed) {
+      this.elapsedNanos = elapsedNanos;
       this.success = success;
       this.done = done;
       this.failed = failed;
     }
 
+    /**
+     * @param n number of documents counted as done that were later found to have failed, e.g. by
+     *     {@link Index#endBulkUpdate()}.
+     * @return a copy of this result with {@code n} done documents counted as failed.
+     */
+    public Result withFailed(int n) {
+      if (n == 0) {
+        return this;
+      }
+      return new Result(elapsedNanos, false, Math.max(done - n, 0), failed + n);
+    }
+
     public boolean success() {
       return success;
     }
@@ -0,0 +1,71 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.io.BaseEncoding;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.query.QueryParseException;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gwtorm.server.OrmException;
+import java.nio.ByteBuffer;
+
+/**
+ * Position of a change in the default sort order of the change index.
+ *
+ * <p>Changes are sorted by last updated timestamp, then by numeric ID, both descending. Passing a
+ * cursor as {@link com.google.gerrit.server.index.QueryOptions#searchAfter()} resumes a query
+ * directly after the change it was created from, without the index having to collect and skip all
+ * earlier results.
+ */
+@AutoValue
+public abstract class ChangeCursor {
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+  private static final int LENGTH = Long.BYTES + Integer.BYTES;
+
+  public static ChangeCursor create(long updated, int id) {
+    return new AutoValue_ChangeCursor(updated, id);
+  }
+
+  public static ChangeCursor after(ChangeData cd) throws OrmException {
+    Change c = cd.change();
+    return create(c.getLastUpdatedOn().getTime(), c.getId().get());
+  }
+
+  public static ChangeCursor parse(String str) throws QueryParseException {
+    byte[] b;
+    try {
+      b = ENCODING.decode(str);
+    } catch (IllegalArgumentException e) {
+      throw new QueryParseException("Invalid cursor: " + str);
+    }
+    if (b.length != LENGTH) {
+      throw new QueryParseException("Invalid cursor: " + str);
+    }
+    ByteBuffer buf = ByteBuffer.wrap(b);
+    return create(buf.getLong(), buf.getInt());
+  }
+
+  /** @return last updated timestamp of the change, in milliseconds. */
+  public abstract long updated();
+
+  /** @return numeric ID of the change. */
+  public abstract int id();
+
+  /** @return opaque string form of this cursor, suitable for {@link #parse(String)}. */
+  public String encode() {
+    return ENCODING.encode(ByteBuffer.allocate(LENGTH).putLong(updated()).putInt(id()).array());
+  }
+}
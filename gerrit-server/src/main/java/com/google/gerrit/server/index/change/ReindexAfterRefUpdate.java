@@ -17,23 +17,36 @@ package com.google.gerrit.server.index.change;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.google.gerrit.server.query.change.ChangeData.asChanges;
 
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MultimapBuilder;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.common.data.SubmitTypeRecord;
+import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.reviewdb.client.Account;
 import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
 import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.change.MergeabilityCache;
 import com.google.gerrit.server.config.AllUsersName;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.MergeUtil;
 import com.google.gerrit.server.git.QueueProvider.QueueType;
 import com.google.gerrit.server.index.IndexExecutor;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.project.NoSuchChangeException;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.InternalChangeQuery;
 import com.google.gerrit.server.util.ManualRequestContext;
 import com.google.gerrit.server.util.OneOffRequestContext;
@@ -42,16 +55,24 @@ import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
   private static final Logger log = LoggerFactory.getLogger(ReindexAfterRefUpdate.class);
 
+  private static final int MERGEABILITY_BATCH_SIZE = 100;
+
   private final OneOffRequestContext requestContext;
   private final Provider<InternalChangeQuery> queryProvider;
   private final ChangeIndexer.Factory indexerFactory;
@@ -59,6 +80,11 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
   private final ChangeNotes.Factory notesFactory;
   private final AllUsersName allUsersName;
   private final AccountCache accountCache;
+  private final GitRepositoryManager repoManager;
+  private final ProjectCache projectCache;
+  private final MergeUtil.Factory mergeUtilFactory;
+  private final ChangeData.Factory changeDataFactory;
+  private final MergeabilityCache mergeabilityCache;
   private final ListeningExecutorService executor;
   private final boolean enabled;
 
@@ -72,6 +98,11 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
       ChangeNotes.Factory notesFactory,
       AllUsersName allUsersName,
       AccountCache accountCache,
+      GitRepositoryManager repoManager,
+      ProjectCache projectCache,
+      MergeUtil.Factory mergeUtilFactory,
+      ChangeData.Factory changeDataFactory,
+      MergeabilityCache mergeabilityCache,
       @IndexExecutor(QueueType.BATCH) ListeningExecutorService executor) {
     this.requestContext = requestContext;
     this.queryProvider = queryProvider;
@@ -80,6 +111,11 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
     this.notesFactory = notesFactory;
     this.allUsersName = allUsersName;
     this.accountCache = accountCache;
+    this.repoManager = repoManager;
+    this.projectCache = projectCache;
+    this.mergeUtilFactory = mergeUtilFactory;
+    this.changeDataFactory = changeDataFactory;
+    this.mergeabilityCache = mergeabilityCache;
     this.executor = executor;
     this.enabled = cfg.getBoolean("index", null, "reindexAfterRefUpdate", true);
   }
@@ -108,10 +144,15 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
         new FutureCallback<List<Change>>() {
           @Override
           public void onSuccess(List<Change> changes) {
-            for (Change c : changes) {
-              // Don't retry indefinitely; if this fails changes may be stale.
+            if (event.getRefName().equals(RefNames.REFS_CONFIG)) {
+              // Changes of all branches, which don't need their mergeability recomputed.
+              reindex(event, changes);
+              return;
+            }
+            for (List<Change> batch : Lists.partition(changes, MERGEABILITY_BATCH_SIZE)) {
               @SuppressWarnings("unused")
-              Future<?> possiblyIgnoredError = executor.submit(new Index(event, c.getId()));
+              Future<?> possiblyIgnoredError =
+                  executor.submit(new ComputeMergeability(event, batch));
             }
           }
 
@@ -123,6 +164,20 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
         directExecutor());
   }
 
+  private void reindex(Event event, List<Change> changes) {
+    reindex(event, changes, Collections.emptyMap());
+  }
+
+  private void reindex(
+      Event event, List<Change> changes, Map<Change.Id, EvaluatedSubmitType> submitTypes) {
+    for (Change c : changes) {
+      // Don't retry indefinitely; if this fails changes may be stale.
+      @SuppressWarnings("unused")
+      Future<?> possiblyIgnoredError =
+          executor.submit(new Index(event, c.getId(), submitTypes.get(c.getId())));
+    }
+  }
+
   private abstract class Task<V> implements Callable<V> {
     protected Event event;
 
@@ -167,12 +222,106 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
     }
   }
 
+  /**
+   * Computes mergeability of a batch of changes into the updated branch before reindexing them.
+   *
+   * <p>All cache misses of the batch share one walk over the repository, so they are much cheaper
+   * than computing them one by one while indexing. Changes being viewed meanwhile don't wait for
+   * the batch: their mergeability is computed on demand, and only requests for a commit that is
+   * already being computed block until it is done.
+   *
+   * <p>The submit type of each change is evaluated once and handed to its {@link Index} task, which
+   * reuses it unless a new patch set was uploaded in the meantime.
+   */
+  private class ComputeMergeability extends Task<Void> {
+    private final List<Change> changes;
+
+    ComputeMergeability(Event event, List<Change> changes) {
+      super(event);
+      this.changes = changes;
+    }
+
+    @Override
+    protected Void impl(RequestContext ctx) throws IOException {
+      Map<Change.Id, EvaluatedSubmitType> submitTypes = new HashMap<>();
+      try {
+        compute(ctx.getReviewDbProvider().get(), submitTypes);
+      } finally {
+        reindex(event, changes, submitTypes);
+      }
+      return null;
+    }
+
+    private void compute(ReviewDb db, Map<Change.Id, EvaluatedSubmitType> submitTypes)
+        throws IOException {
+      Project.NameKey project = new Project.NameKey(event.getProjectName());
+      ProjectState projectState = projectCache.checkedGet(project);
+      if (projectState == null) {
+        return;
+      }
+      String mergeStrategy = mergeUtilFactory.create(projectState).mergeStrategyName();
+
+      ListMultimap<SubmitType, ObjectId> commits =
+          MultimapBuilder.enumKeys(SubmitType.class).arrayListValues().build();
+      for (Change c : changes) {
+        if (c.isWorkInProgress()) {
+          continue;
+        }
+        ChangeData cd = changeDataFactory.create(db, c);
+        try {
+          PatchSet ps = cd.currentPatchSet();
+          SubmitTypeRecord str = cd.submitTypeRecord();
+          if (ps != null) {
+            submitTypes.put(c.getId(), new EvaluatedSubmitType(ps.getId(), str));
+            if (str.isOk()) {
+              commits.put(str.type, ObjectId.fromString(ps.getRevision().get()));
+            }
+          }
+        } catch (OrmException e) {
+          // Mergeability is computed again when indexing the change, if it can be loaded at all.
+          log.warn("Cannot compute mergeability of change " + c.getId(), e);
+        }
+      }
+
+      try (Repository repo = repoManager.openRepository(project)) {
+        Ref ref = repo.getRefDatabase().exactRef(event.getRefName());
+        Branch.NameKey dest = new Branch.NameKey(project, event.getRefName());
+        for (SubmitType type : commits.keySet()) {
+          mergeabilityCache.getAll(commits.get(type), ref, type, mergeStrategy, dest, repo);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Compute mergeability of "
+          + changes.size()
+          + " changes after "
+          + event.getRefName()
+          + " update of project "
+          + event.getProjectName();
+    }
+  }
+
+  /** Submit type of a patch set, as evaluated by {@link ComputeMergeability}. */
+  private static class EvaluatedSubmitType {
+    final PatchSet.Id psId;
+    final SubmitTypeRecord record;
+
+    EvaluatedSubmitType(PatchSet.Id psId, SubmitTypeRecord record) {
+      this.psId = psId;
+      this.record = record;
+    }
+  }
+
   private class Index extends Task<Void> {
     private final Change.Id id;
+    @Nullable private final EvaluatedSubmitType submitType;
 
-    Index(Event event, Change.Id id) {
+    Index(Event event, Change.Id id, @Nullable EvaluatedSubmitType submitType) {
       super(event);
       this.id = id;
+      this.submitType = submitType;
     }
 
     @Override
@@ -180,11 +329,14 @@ public class ReindexAfterRefUpdate implements GitReferenceUpdatedListener {
       // Reload change, as some time may have passed since GetChanges.
       ReviewDb db = ctx.getReviewDbProvider().get();
       try {
-        Change c =
-            notesFactory
-                .createChecked(db, new Project.NameKey(event.getProjectName()), id)
-                .getChange();
-        indexerFactory.create(executor, indexes).index(db, c);
+        ChangeNotes notes =
+            notesFactory.createChecked(db, new Project.NameKey(event.getProjectName()), id);
+        ChangeData cd = changeDataFactory.create(db, notes);
+        if (submitType != null && submitType.psId.equals(notes.getChange().currentPatchSetId())) {
+          // Don't evaluate the submit rules again to look up the cached mergeability.
+          cd.setSubmitTypeRecord(submitType.record);
+        }
+        indexerFactory.create(executor, indexes).index(cd);
       } catch (NoSuchChangeException e) {
         indexerFactory.create(executor, indexes).delete(id);
       }
@@ -22,11 +22,17 @@ import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.TimeUtil;
 import com.google.gerrit.common.Version;
 import com.google.gerrit.common.errors.EmailException;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.server.config.ConfigUtil;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.mail.Address;
 import com.google.gerrit.server.mail.Encryption;
-import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.BufferedWriter;
@@ -34,11 +40,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
@@ -49,21 +59,51 @@ import org.apache.commons.net.smtp.SMTPReply;
 import org.apache.james.mime4j.codec.QuotedPrintableOutputStream;
 import org.eclipse.jgit.lib.Config;
 
-/** Sends email via a nearby SMTP server. */
+/**
+ * Sends email via a nearby SMTP server.
+ *
+ * <p>Connections are kept open after a message was sent and reused for later messages, so that a
+ * burst of notifications does not pay for a new connection, TLS handshake and authentication per
+ * message. Idle connections are not reaped in the background; expired ones are closed lazily when
+ * the next message is sent, or on {@link #stop()}.
+ */
 @Singleton
-public class SmtpEmailSender implements EmailSender {
+public class SmtpEmailSender implements EmailSender, LifecycleListener {
   /** The socket's connect timeout (0 = infinite timeout) */
   private static final int DEFAULT_CONNECT_TIMEOUT = 0;
 
-  public static class Module extends AbstractModule {
+  /** How long an unused connection may be reused. */
+  private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+  public static class Module extends LifecycleModule {
     @Override
     protected void configure() {
       bind(EmailSender.class).to(SmtpEmailSender.class);
+      listener().to(SmtpEmailSender.class);
+    }
+  }
+
+  private static class Connection {
+    final SMTPClient client;
+    int messages;
+    long lastUsed;
+
+    Connection(SMTPClient client) {
+      this.client = client;
     }
   }
 
   private final boolean enabled;
   private final int connectTimeout;
+  private final int connectionPoolSize;
+  private final long idleTimeout;
+  private final int maxMessagesPerConnection;
+
+  // Idle connections, most recently used first.
+  private final Deque<Connection> idle = new ArrayDeque<>();
+
+  private final Timer0 sendLatency;
+  private final Counter0 connectionsOpened;
 
   private String smtpHost;
   private int smtpPort;
@@ -76,7 +116,7 @@ public class SmtpEmailSender implements EmailSender {
   private int expiryDays;
 
   @Inject
-  SmtpEmailSender(@GerritServerConfig Config cfg) {
+  SmtpEmailSender(@GerritServerConfig Config cfg, MetricMaker metricMaker) {
     enabled = cfg.getBoolean("sendemail", null, "enable", true);
     connectTimeout =
         Ints.checkedCast(
@@ -120,6 +160,54 @@ public class SmtpEmailSender implements EmailSender {
     allowrcpt = Collections.unmodifiableSet(rcpt);
     importance = cfg.getString("sendemail", null, "importance");
     expiryDays = cfg.getInt("sendemail", null, "expiryDays", 0);
+
+    connectionPoolSize =
+        cfg.getInt(
+            "sendemail",
+            null,
+            "connectionPoolSize",
+            Math.max(cfg.getInt("sendemail", null, "threadPoolSize", 1), 1));
+    idleTimeout =
+        ConfigUtil.getTimeUnit(
+            cfg, "sendemail", null, "idleTimeout", DEFAULT_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    maxMessagesPerConnection = cfg.getInt("sendemail", null, "maxMessagesPerConnection", 100);
+
+    sendLatency =
+        metricMaker.newTimer(
+            "email/smtp/send_latency",
+            new Description("Latency for sending a message to the SMTP server")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+    connectionsOpened =
+        metricMaker.newCounter(
+            "email/smtp/connections_opened",
+            new Description("Connections opened to the SMTP server")
+                .setRate()
+                .setUnit("connections"));
+    metricMaker.newCallbackMetric(
+        "email/smtp/idle_connections",
+        Integer.class,
+        new Description("Open connections to the SMTP server waiting for a message")
+            .setGauge()
+            .setUnit("connections"),
+        () -> {
+          synchronized (idle) {
+            return idle.size();
+          }
+        });
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    synchronized (idle) {
+      for (Connection c : idle) {
+        close(c);
+      }
+      idle.clear();
+    }
   }
 
   @Override
@@ -172,8 +260,10 @@ public class SmtpEmailSender implements EmailSender {
     }
 
     StringBuffer rejected = new StringBuffer();
-    try {
-      final SMTPClient client = open();
+    try (Timer0.Context ctx = sendLatency.start()) {
+      Connection conn = borrow();
+      SMTPClient client = conn.client;
+      boolean reusable = false;
       try {
         if (!client.setSender(from.getEmail())) {
           throw new EmailException(
@@ -221,12 +311,16 @@ public class SmtpEmailSender implements EmailSender {
               "Server " + smtpHost + " rejected message body: " + client.getReplyString());
         }
 
-        client.logout();
-        if (rejected.length() > 0) {
-          throw new EmailException(rejected.toString());
-        }
+        reusable = true;
       } finally {
-        client.disconnect();
+        if (reusable) {
+          release(conn);
+        } else {
+          disconnect(client);
+        }
+      }
+      if (rejected.length() > 0) {
+        throw new EmailException(rejected.toString());
       }
     } catch (IOException e) {
       throw new EmailException("Cannot send outgoing email", e);
@@ -358,6 +452,72 @@ public class SmtpEmailSender implements EmailSender {
     }
   }
 
+  /** Returns an idle connection that is still usable, or opens a new one. */
+  private Connection borrow() throws EmailException {
+    while (true) {
+      Connection c;
+      synchronized (idle) {
+        c = idle.pollFirst();
+      }
+      if (c == null) {
+        connectionsOpened.increment();
+        return new Connection(open());
+      }
+      if (TimeUtil.nowMs() - c.lastUsed > idleTimeout) {
+        close(c);
+        continue;
+      }
+      try {
+        // RSET clears any state of the previous transaction and checks the server did not drop
+        // the connection while it was idle.
+        if (c.client.reset()) {
+          return c;
+        }
+      } catch (IOException e) {
+        // Stale connection, try the next one.
+      }
+      disconnect(c.client);
+    }
+  }
+
+  private void release(Connection c) {
+    c.messages++;
+    long now = TimeUtil.nowMs();
+    c.lastUsed = now;
+    List<Connection> toClose = new ArrayList<>();
+    synchronized (idle) {
+      if (c.messages < maxMessagesPerConnection && idle.size() < connectionPoolSize) {
+        idle.offerFirst(c);
+      } else {
+        toClose.add(c);
+      }
+      // Least recently used connections are at the end; close those that expired.
+      while (!idle.isEmpty() && now - idle.peekLast().lastUsed > idleTimeout) {
+        toClose.add(idle.pollLast());
+      }
+    }
+    for (Connection old : toClose) {
+      close(old);
+    }
+  }
+
+  private static void close(Connection c) {
+    try {
+      c.client.logout();
+    } catch (IOException e) {
+      // Ignored
+    }
+    disconnect(c.client);
+  }
+
+  private static void disconnect(SMTPClient client) {
+    try {
+      client.disconnect();
+    } catch (IOException e) {
+      // Ignored
+    }
+  }
+
   private SMTPClient open() throws EmailException {
     final AuthSMTPClient client = new AuthSMTPClient(UTF_8.name());
 
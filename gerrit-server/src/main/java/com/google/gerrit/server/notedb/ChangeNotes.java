@@ -23,18 +23,24 @@ import static java.util.Comparator.comparing;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.metrics.Timer1;
@@ -70,13 +76,17 @@ import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.slf4j.Logger;
@@ -104,17 +114,24 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
 
   @Singleton
   public static class Factory {
+    private static final int SCAN_BATCH_SIZE = 100;
+
     private final Args args;
     private final Provider<InternalChangeQuery> queryProvider;
     private final ProjectCache projectCache;
+    private final ListeningExecutorService scanExecutor;
 
     @VisibleForTesting
     @Inject
     public Factory(
-        Args args, Provider<InternalChangeQuery> queryProvider, ProjectCache projectCache) {
+        Args args,
+        Provider<InternalChangeQuery> queryProvider,
+        ProjectCache projectCache,
+        @ChangeNotesScanExecutor ListeningExecutorService scanExecutor) {
       this.args = args;
       this.queryProvider = queryProvider;
       this.projectCache = projectCache;
+      this.scanExecutor = scanExecutor;
     }
 
     public ChangeNotes createChecked(ReviewDb db, Change c) throws OrmException {
@@ -337,9 +354,20 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
       ScanResult sr = scanChangeIds(repo);
       List<ChangeNotes> changeNotes = new ArrayList<>(sr.fromPatchSetRefs().size());
 
+      // ReviewDb is read on this thread only, in batches. Like in scanDb, changes missing from
+      // ReviewDb are filtered out by the batch get call, so look for them afterwards.
+      Map<Change.Id, Change> dbChanges = new HashMap<>();
+      for (List<Change.Id> batch : Iterables.partition(sr.all(), 30)) {
+        for (Change change : ReviewDbUtil.unwrapDb(db).changes().get(batch)) {
+          dbChanges.put(change.getId(), change);
+        }
+      }
+
+      // The scanned meta refs are used for all changes, instead of reading each ref again.
+      RefCache refs = refName -> Optional.ofNullable(sr.metaRefs().get(refName));
       PrimaryStorage defaultStorage = args.migration.changePrimaryStorage();
       for (Change.Id id : sr.all()) {
-        Change change = readOneReviewDbChange(db, id);
+        Change change = dbChanges.get(id);
         if (change == null) {
           if (defaultStorage == PrimaryStorage.REVIEW_DB) {
             // If changes should exist in ReviewDb, it's worth warning about a meta ref with no
@@ -361,17 +389,62 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
           continue;
         }
         log.debug("adding change {} found in project {}", id, project);
-        changeNotes.add(new ChangeNotes(args, change).load());
+        changeNotes.add(new ChangeNotes(args, change, true, true, refs));
       }
+      loadAll(repo, project, changeNotes);
       return changeNotes;
     }
 
+    private void loadAll(Repository repo, Project.NameKey project, List<ChangeNotes> notes)
+        throws OrmException {
+      // Rebuilding a change requires the ReviewDb of the current request, so changes that may be
+      // rebuilt are always loaded on this thread.
+      List<ChangeNotes> local = new ArrayList<>();
+      List<ChangeNotes> parallel = new ArrayList<>();
+      for (ChangeNotes cn : notes) {
+        (cn.autoRebuild ? local : parallel).add(cn);
+      }
+
+      List<ListenableFuture<?>> futures = new ArrayList<>();
+      for (List<ChangeNotes> batch : Lists.partition(parallel, SCAN_BATCH_SIZE)) {
+        futures.add(
+            scanExecutor.submit(
+                () -> {
+                  loadBatch(repo, batch);
+                  return null;
+                }));
+      }
+      for (List<ChangeNotes> batch : Lists.partition(local, SCAN_BATCH_SIZE)) {
+        loadBatch(repo, batch);
+      }
+
+      try {
+        Futures.allAsList(futures).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new OrmException("Interrupted while loading changes in " + project, e);
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), OrmException.class);
+        throw new OrmException("Failed to load changes in " + project, e.getCause());
+      }
+    }
+
+    private static void loadBatch(Repository repo, List<ChangeNotes> batch) throws OrmException {
+      try (ObjectReader reader = repo.newObjectReader()) {
+        for (ChangeNotes cn : batch) {
+          cn.load(reader);
+        }
+      }
+    }
+
     @AutoValue
     abstract static class ScanResult {
       abstract ImmutableSet<Change.Id> fromPatchSetRefs();
 
       abstract ImmutableSet<Change.Id> fromMetaRefs();
 
+      abstract ImmutableMap<String, ObjectId> metaRefs();
+
       SetView<Change.Id> all() {
         return Sets.union(fromPatchSetRefs(), fromMetaRefs());
       }
@@ -380,19 +453,30 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
     private static ScanResult scanChangeIds(Repository repo) throws IOException {
       ImmutableSet.Builder<Change.Id> fromPs = ImmutableSet.builder();
       ImmutableSet.Builder<Change.Id> fromMeta = ImmutableSet.builder();
+      ImmutableMap.Builder<String, ObjectId> metaRefs = ImmutableMap.builder();
       for (Ref r : repo.getRefDatabase().getRefs(RefNames.REFS_CHANGES).values()) {
         Change.Id id = Change.Id.fromRef(r.getName());
-        if (id != null) {
-          (r.getName().endsWith(RefNames.META_SUFFIX) ? fromMeta : fromPs).add(id);
+        if (id == null) {
+          continue;
+        }
+        if (r.getName().endsWith(RefNames.META_SUFFIX)) {
+          fromMeta.add(id);
+          metaRefs.put(r.getName(), r.getObjectId());
+        } else {
+          fromPs.add(id);
         }
       }
-      return new AutoValue_ChangeNotes_Factory_ScanResult(fromPs.build(), fromMeta.build());
+      return new AutoValue_ChangeNotes_Factory_ScanResult(
+          fromPs.build(), fromMeta.build(), metaRefs.build());
     }
   }
 
   private final boolean shouldExist;
   private final RefCache refs;
 
+  // Reader shared with other changes loaded by the same scan; only set while loading.
+  private ObjectReader sharedReader;
+
   private Change change;
   private ChangeNotesState state;
 
@@ -423,6 +507,16 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
     this.refs = refs;
   }
 
+  /** Load using the given reader, so that a batch of changes can share its caches. */
+  private ChangeNotes load(ObjectReader reader) throws OrmException {
+    sharedReader = reader;
+    try {
+      return load();
+    } finally {
+      sharedReader = null;
+    }
+  }
+
   public Change getChange() {
     return change;
   }
@@ -667,6 +761,14 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
     return refs != null ? refs.get(getRefName()).orElse(null) : super.readRef(repo);
   }
 
+  @Override
+  protected LoadHandle openHandle(Repository repo, ObjectId id) {
+    if (sharedReader != null) {
+      return LoadHandle.create(ChangeNotesCommit.newRevWalk(sharedReader), id);
+    }
+    return super.openHandle(repo, id);
+  }
+
   @Override
   protected LoadHandle openHandle(Repository repo) throws NoSuchChangeException, IOException {
     if (autoRebuild) {
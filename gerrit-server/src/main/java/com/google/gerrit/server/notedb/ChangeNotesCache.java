@@ -14,17 +14,22 @@
 
 package com.google.gerrit.server.notedb;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.collect.Table;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.ChangeMessage;
+import com.google.gerrit.reviewdb.client.Comment;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
 import com.google.gerrit.server.ReviewerByEmailSet;
 import com.google.gerrit.server.ReviewerSet;
 import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cache.CacheSerializer;
 import com.google.gerrit.server.notedb.AbstractChangeNotes.Args;
 import com.google.gerrit.server.notedb.ChangeNotesCommit.ChangeNotesRevWalk;
 import com.google.inject.Inject;
@@ -32,13 +37,17 @@ import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
 
 @Singleton
 public class ChangeNotesCache {
@@ -49,7 +58,10 @@ public class ChangeNotesCache {
       @Override
       protected void configure() {
         bind(ChangeNotesCache.class);
-        cache(CACHE_NAME, Key.class, ChangeNotesState.class)
+        persist(CACHE_NAME, Key.class, ChangeNotesState.class)
+            .version(1)
+            .keySerializer(Key.Serializer.INSTANCE)
+            .valueSerializer(ChangeNotesState.Serializer.INSTANCE)
             .weigher(Weigher.class)
             .maximumWeight(10 << 20);
       }
@@ -57,12 +69,45 @@ public class ChangeNotesCache {
   }
 
   @AutoValue
-  public abstract static class Key {
+  public abstract static class Key implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     abstract Project.NameKey project();
 
     abstract Change.Id changeId();
 
     abstract ObjectId id();
+
+    /** Stores the raw meta ID, followed by the change number and the UTF-8 project name. */
+    static class Serializer implements CacheSerializer<Key> {
+      static final Serializer INSTANCE = new Serializer();
+
+      private static final int CHANGE_OFFSET = Constants.OBJECT_ID_LENGTH;
+      private static final int PROJECT_OFFSET = CHANGE_OFFSET + 4;
+
+      @Override
+      public byte[] serialize(Key key) {
+        byte[] project = key.project().get().getBytes(UTF_8);
+        byte[] out = new byte[PROJECT_OFFSET + project.length];
+        key.id().copyRawTo(out, 0);
+        NB.encodeInt32(out, CHANGE_OFFSET, key.changeId().get());
+        System.arraycopy(project, 0, out, PROJECT_OFFSET, project.length);
+        return out;
+      }
+
+      @Override
+      public Key deserialize(byte[] in) throws IOException {
+        if (in.length <= PROJECT_OFFSET) {
+          throw new IOException("Invalid serialized change notes key");
+        }
+        return new AutoValue_ChangeNotesCache_Key(
+            new Project.NameKey(new String(in, PROJECT_OFFSET, in.length - PROJECT_OFFSET, UTF_8)),
+            new Change.Id(NB.decodeInt32(in, CHANGE_OFFSET)),
+            ObjectId.fromRaw(in, 0));
+      }
+
+      private Serializer() {}
+    }
   }
 
   public static class Weigher implements com.google.common.cache.Weigher<Key, ChangeNotesState> {
@@ -81,8 +126,9 @@ public class ChangeNotesCache {
     @Override
     public int weigh(Key key, ChangeNotesState state) {
       // Take all columns and all collection sizes into account, but use
-      // estimated average element sizes rather than iterating over collections.
-      // Numbers are largely hand-wavy based on
+      // estimated average element sizes rather than iterating over collections,
+      // except for the text of change messages and comments, which makes up most
+      // of the size of a change under review. Numbers are largely hand-wavy based on
       // http://stackoverflow.com/questions/258120/what-is-the-memory-consumption-of-an-object-in-java
       return P
           + O
@@ -114,6 +160,8 @@ public class ChangeNotesCache {
           + P
           + list(state.patchSets(), patchSet())
           + P
+          + list(state.approvals(), approval())
+          + P
           + reviewerSet(state.reviewers(), 2) // REVIEWER or CC
           + P
           + reviewerSet(state.reviewersByEmail(), 2) // REVIEWER or CC
@@ -128,12 +176,14 @@ public class ChangeNotesCache {
           + P
           + list(state.submitRecords(), P + list(2, str(4) + P + K) + P)
           + P
-          + list(state.allChangeMessages(), changeMessage())
-          // Just key overhead for map, already counted messages in previous.
+          + changeMessages(state.allChangeMessages())
+          // Just key and pointer overhead for map, already counted messages in previous.
           + P
           + map(state.changeMessagesByPatchSet().asMap(), patchSetId())
+          + P * state.changeMessagesByPatchSet().size()
           + P
-          + map(state.publishedComments().asMap(), comment())
+          + map(state.publishedComments().asMap(), str(40)) // revId
+          + comments(state.publishedComments().values())
           + T // readOnlyUntil
           + 1 // isPrivate
           + 1 // workInProgress
@@ -242,7 +292,15 @@ public class ChangeNotesCache {
           + P; // realAccountId
     }
 
-    private static int changeMessage() {
+    private static int changeMessages(List<ChangeMessage> messages) {
+      int size = list(messages.size(), 0);
+      for (ChangeMessage m : messages) {
+        size += changeMessage(m);
+      }
+      return size;
+    }
+
+    private static int changeMessage(ChangeMessage m) {
       int key = K + str(20);
       return O
           + P
@@ -251,14 +309,22 @@ public class ChangeNotesCache {
           + K // author
           + P
           + T // writtenON
-          + str(64) // message
+          + str(m.getMessage())
           + P
           + patchSetId()
           + P
           + P; // realAuthor
     }
 
-    private static int comment() {
+    private static int comments(Collection<Comment> comments) {
+      int size = 0;
+      for (Comment c : comments) {
+        size += P + comment(c);
+      }
+      return size;
+    }
+
+    private static int comment(Comment c) {
       int key = P + str(20) + P + str(32) + 4;
       int ident = O + 4;
       return O
@@ -272,7 +338,7 @@ public class ChangeNotesCache {
           + P
           + T // writtenOn
           + 2 // side
-          + str(32) // message
+          + str(c.message)
           + str(10) // parentUuid
           + (P + O + 4 + 4 + 4 + 4) / 2 // range on 50% of comments
           + P // tag
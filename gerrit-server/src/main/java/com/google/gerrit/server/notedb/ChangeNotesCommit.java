@@ -47,6 +47,11 @@ public class ChangeNotesCommit extends RevCommit {
     return new ChangeNotesRevWalk(repo);
   }
 
+  /** @return walk reading objects with the given reader, which is not closed with the walk. */
+  public static ChangeNotesRevWalk newRevWalk(ObjectReader reader) {
+    return new ChangeNotesRevWalk(reader);
+  }
+
   public static ChangeNotesRevWalk newStagedRevWalk(
       Repository repo, Iterable<InsertedObject> stagedObjs) {
     final InMemoryInserter ins = new InMemoryInserter(repo);
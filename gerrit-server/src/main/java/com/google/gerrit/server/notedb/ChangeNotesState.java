@@ -16,13 +16,20 @@ package com.google.gerrit.server.notedb;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readFixInt64;
+import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeFixInt64;
+import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.reviewdb.client.Account;
@@ -30,6 +37,7 @@ import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
 import com.google.gerrit.reviewdb.client.ChangeMessage;
 import com.google.gerrit.reviewdb.client.Comment;
+import com.google.gerrit.reviewdb.client.LabelId;
 import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.PatchSetApproval;
 import com.google.gerrit.reviewdb.client.Project;
@@ -37,13 +45,25 @@ import com.google.gerrit.reviewdb.client.RevId;
 import com.google.gerrit.server.ReviewerByEmailSet;
 import com.google.gerrit.server.ReviewerSet;
 import com.google.gerrit.server.ReviewerStatusUpdate;
+import com.google.gerrit.server.cache.CacheSerializer;
+import com.google.gerrit.server.ioutil.BasicSerialization;
+import com.google.gerrit.server.mail.Address;
 import com.google.gerrit.server.notedb.NoteDbChangeState.PrimaryStorage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSerialization;
 
 /**
  * Immutable state associated with a change meta ref at a given commit.
@@ -55,7 +75,10 @@ import org.eclipse.jgit.lib.ObjectId;
  * as per-draft information, so that class is not cached directly.
  */
 @AutoValue
-public abstract class ChangeNotesState {
+public abstract class ChangeNotesState implements Serializable {
+  // Only for the bound of persistent caches; stored using the compact Serializer instead.
+  private static final long serialVersionUID = 1L;
+
   static ChangeNotesState empty(Change change) {
     return new AutoValue_ChangeNotesState(
         null,
@@ -338,4 +361,539 @@ public abstract class ChangeNotesState {
       change.clearCurrentPatchSet();
     }
   }
+
+  /**
+   * Compact binary form of the state, stored by the persistent tier of {@link ChangeNotesCache}.
+   *
+   * <p>Patch set IDs are stored as numbers relative to the change. Change messages that are also
+   * listed by patch set are written only once and referenced by their position.
+   */
+  static class Serializer implements CacheSerializer<ChangeNotesState> {
+    static final Serializer INSTANCE = new Serializer();
+
+    @Override
+    public byte[] serialize(ChangeNotesState state) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ObjectIdSerialization.writeNullable(out, state.metaId());
+      writeVarInt32(out, state.changeId().get());
+      ChangeColumns c = state.columns();
+      writeBoolean(out, c != null);
+      if (c != null) {
+        writeString(out, c.changeKey().get());
+        writeTimestamp(out, c.createdOn());
+        writeTimestamp(out, c.lastUpdatedOn());
+        writeVarInt32(out, c.owner().get());
+        writeString(out, c.branch());
+        writeNullableInt(out, c.currentPatchSetId() != null ? c.currentPatchSetId().get() : null);
+        writeString(out, c.subject());
+        writeString(out, c.topic());
+        writeString(out, c.originalSubject());
+        writeString(out, c.submissionId());
+        writeNullableInt(out, c.assignee() != null ? c.assignee().get() : null);
+        writeString(out, c.status() != null ? c.status().name() : null);
+        writeNullableBoolean(out, c.isPrivate());
+        writeNullableBoolean(out, c.isWorkInProgress());
+        writeNullableBoolean(out, c.hasReviewStarted());
+        writeNullableInt(out, c.revertOf() != null ? c.revertOf().get() : null);
+      }
+
+      writeVarInt32(out, state.pastAssignees().size());
+      for (Account.Id id : state.pastAssignees()) {
+        writeVarInt32(out, id.get());
+      }
+      writeVarInt32(out, state.hashtags().size());
+      for (String hashtag : state.hashtags()) {
+        writeString(out, hashtag);
+      }
+      writeVarInt32(out, state.patchSets().size());
+      for (Map.Entry<PatchSet.Id, PatchSet> e : state.patchSets()) {
+        writePatchSet(out, e.getValue());
+      }
+      writeVarInt32(out, state.approvals().size());
+      for (Map.Entry<PatchSet.Id, PatchSetApproval> e : state.approvals()) {
+        writeApproval(out, e.getValue());
+      }
+      writeReviewers(out, state.reviewers());
+      writeReviewers(out, state.reviewersByEmail());
+      writeReviewers(out, state.pendingReviewers());
+      writeReviewers(out, state.pendingReviewersByEmail());
+      writeVarInt32(out, state.allPastReviewers().size());
+      for (Account.Id id : state.allPastReviewers()) {
+        writeVarInt32(out, id.get());
+      }
+      writeVarInt32(out, state.reviewerUpdates().size());
+      for (ReviewerStatusUpdate u : state.reviewerUpdates()) {
+        writeTimestamp(out, u.date());
+        writeVarInt32(out, u.updatedBy().get());
+        writeVarInt32(out, u.reviewer().get());
+        writeString(out, u.state().name());
+      }
+      writeVarInt32(out, state.submitRecords().size());
+      for (SubmitRecord r : state.submitRecords()) {
+        writeSubmitRecord(out, r);
+      }
+
+      Map<ChangeMessage, Integer> messageIndex = new IdentityHashMap<>();
+      writeVarInt32(out, state.allChangeMessages().size());
+      for (ChangeMessage m : state.allChangeMessages()) {
+        messageIndex.put(m, messageIndex.size());
+        writeChangeMessage(out, m);
+      }
+      writeVarInt32(out, state.changeMessagesByPatchSet().size());
+      for (Map.Entry<PatchSet.Id, ChangeMessage> e : state.changeMessagesByPatchSet().entries()) {
+        writeVarInt32(out, e.getKey().get());
+        Integer i = messageIndex.get(e.getValue());
+        writeNullableInt(out, i);
+        if (i == null) {
+          writeChangeMessage(out, e.getValue());
+        }
+      }
+
+      writeVarInt32(out, state.publishedComments().size());
+      for (Map.Entry<RevId, Comment> e : state.publishedComments().entries()) {
+        writeString(out, e.getKey().get());
+        writeComment(out, e.getValue());
+      }
+
+      writeNullableTimestamp(out, state.readOnlyUntil());
+      writeNullableBoolean(out, state.isPrivate());
+      writeNullableBoolean(out, state.isWorkInProgress());
+      writeNullableBoolean(out, state.hasReviewStarted());
+      writeNullableInt(out, state.revertOf() != null ? state.revertOf().get() : null);
+      return out.toByteArray();
+    }
+
+    @Override
+    public ChangeNotesState deserialize(byte[] bytes) throws IOException {
+      InputStream in = new ByteArrayInputStream(bytes);
+      ObjectId metaId = ObjectIdSerialization.readNullable(in);
+      Change.Id changeId = new Change.Id(readVarInt32(in));
+      ChangeColumns columns = null;
+      if (readBoolean(in)) {
+        columns =
+            new AutoValue_ChangeNotesState_ChangeColumns(
+                new Change.Key(readString(in)),
+                readTimestamp(in),
+                readTimestamp(in),
+                new Account.Id(readVarInt32(in)),
+                readString(in),
+                psId(changeId, readNullableInt(in)),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                accountId(readNullableInt(in)),
+                readEnum(in, Change.Status.class),
+                readNullableBoolean(in),
+                readNullableBoolean(in),
+                readNullableBoolean(in),
+                changeId(readNullableInt(in)));
+      }
+
+      ImmutableSet.Builder<Account.Id> pastAssignees = ImmutableSet.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        pastAssignees.add(new Account.Id(readVarInt32(in)));
+      }
+      ImmutableSet.Builder<String> hashtags = ImmutableSet.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        hashtags.add(readString(in));
+      }
+      ImmutableList.Builder<Map.Entry<PatchSet.Id, PatchSet>> patchSets = ImmutableList.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        PatchSet ps = readPatchSet(in, changeId);
+        patchSets.add(Maps.immutableEntry(ps.getId(), ps));
+      }
+      ImmutableList.Builder<Map.Entry<PatchSet.Id, PatchSetApproval>> approvals =
+          ImmutableList.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        PatchSetApproval psa = readApproval(in, changeId);
+        approvals.add(Maps.immutableEntry(psa.getPatchSetId(), psa));
+      }
+      ReviewerSet reviewers = ReviewerSet.fromTable(readReviewerTable(in, Account.Id.class));
+      ReviewerByEmailSet reviewersByEmail =
+          ReviewerByEmailSet.fromTable(readReviewerTable(in, Address.class));
+      ReviewerSet pendingReviewers = ReviewerSet.fromTable(readReviewerTable(in, Account.Id.class));
+      ReviewerByEmailSet pendingReviewersByEmail =
+          ReviewerByEmailSet.fromTable(readReviewerTable(in, Address.class));
+      ImmutableList.Builder<Account.Id> allPastReviewers = ImmutableList.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        allPastReviewers.add(new Account.Id(readVarInt32(in)));
+      }
+      ImmutableList.Builder<ReviewerStatusUpdate> reviewerUpdates = ImmutableList.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        reviewerUpdates.add(
+            ReviewerStatusUpdate.create(
+                readTimestamp(in),
+                new Account.Id(readVarInt32(in)),
+                new Account.Id(readVarInt32(in)),
+                readEnum(in, ReviewerStateInternal.class)));
+      }
+      ImmutableList.Builder<SubmitRecord> submitRecords = ImmutableList.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        submitRecords.add(readSubmitRecord(in));
+      }
+
+      List<ChangeMessage> allChangeMessages = new ArrayList<>();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        allChangeMessages.add(readChangeMessage(in, changeId));
+      }
+      ImmutableListMultimap.Builder<PatchSet.Id, ChangeMessage> changeMessagesByPatchSet =
+          ImmutableListMultimap.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        PatchSet.Id psId = new PatchSet.Id(changeId, readVarInt32(in));
+        Integer i = readNullableInt(in);
+        if (i != null && (i < 0 || i >= allChangeMessages.size())) {
+          throw new IOException("Invalid change message index: " + i);
+        }
+        changeMessagesByPatchSet.put(
+            psId, i != null ? allChangeMessages.get(i) : readChangeMessage(in, changeId));
+      }
+
+      ImmutableListMultimap.Builder<RevId, Comment> publishedComments =
+          ImmutableListMultimap.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        publishedComments.put(new RevId(readString(in)), readComment(in));
+      }
+
+      Timestamp readOnlyUntil = readNullableTimestamp(in);
+      Boolean isPrivate = readNullableBoolean(in);
+      Boolean isWorkInProgress = readNullableBoolean(in);
+      Boolean hasReviewStarted = readNullableBoolean(in);
+      Change.Id revertOf = changeId(readNullableInt(in));
+      if (in.read() != -1) {
+        throw new IOException("Trailing data in serialized change notes state");
+      }
+      return new AutoValue_ChangeNotesState(
+          metaId,
+          changeId,
+          columns,
+          pastAssignees.build(),
+          hashtags.build(),
+          patchSets.build(),
+          approvals.build(),
+          reviewers,
+          reviewersByEmail,
+          pendingReviewers,
+          pendingReviewersByEmail,
+          allPastReviewers.build(),
+          reviewerUpdates.build(),
+          submitRecords.build(),
+          ImmutableList.copyOf(allChangeMessages),
+          changeMessagesByPatchSet.build(),
+          publishedComments.build(),
+          readOnlyUntil,
+          isPrivate,
+          isWorkInProgress,
+          hasReviewStarted,
+          revertOf);
+    }
+
+    private static void writePatchSet(OutputStream out, PatchSet ps) throws IOException {
+      writeVarInt32(out, ps.getId().get());
+      writeString(out, ps.getRevision() != null ? ps.getRevision().get() : null);
+      writeNullableInt(out, ps.getUploader() != null ? ps.getUploader().get() : null);
+      writeNullableTimestamp(out, ps.getCreatedOn());
+      writeBoolean(out, ps.isDraft());
+      List<String> groups = ps.getGroups();
+      writeVarInt32(out, groups.size());
+      for (String g : groups) {
+        writeString(out, g);
+      }
+      writeString(out, ps.getPushCertificate());
+      writeString(out, ps.getDescription());
+    }
+
+    private static PatchSet readPatchSet(InputStream in, Change.Id changeId) throws IOException {
+      PatchSet ps = new PatchSet(new PatchSet.Id(changeId, readVarInt32(in)));
+      String rev = readString(in);
+      ps.setRevision(rev != null ? new RevId(rev) : null);
+      ps.setUploader(accountId(readNullableInt(in)));
+      ps.setCreatedOn(readNullableTimestamp(in));
+      ps.setDraft(readBoolean(in));
+      int n = readVarInt32(in);
+      if (n > 0) {
+        List<String> groups = new ArrayList<>(n);
+        for (; n > 0; n--) {
+          groups.add(readString(in));
+        }
+        ps.setGroups(groups);
+      }
+      ps.setPushCertificate(readString(in));
+      ps.setDescription(readString(in));
+      return ps;
+    }
+
+    private static void writeApproval(OutputStream out, PatchSetApproval psa) throws IOException {
+      writeVarInt32(out, psa.getPatchSetId().get());
+      writeVarInt32(out, psa.getAccountId().get());
+      writeString(out, psa.getLabel());
+      writeVarInt32(out, psa.getValue());
+      writeTimestamp(out, psa.getGranted());
+      writeString(out, psa.getTag());
+      writeVarInt32(out, psa.getRealAccountId().get());
+      writeBoolean(out, psa.isPostSubmit());
+    }
+
+    private static PatchSetApproval readApproval(InputStream in, Change.Id changeId)
+        throws IOException {
+      PatchSetApproval.Key key =
+          new PatchSetApproval.Key(
+              new PatchSet.Id(changeId, readVarInt32(in)),
+              new Account.Id(readVarInt32(in)),
+              new LabelId(readString(in)));
+      PatchSetApproval psa = new PatchSetApproval(key, (short) readVarInt32(in), readTimestamp(in));
+      psa.setTag(readString(in));
+      psa.setRealAccountId(new Account.Id(readVarInt32(in)));
+      psa.setPostSubmit(readBoolean(in));
+      return psa;
+    }
+
+    private static void writeReviewers(OutputStream out, ReviewerSet reviewers) throws IOException {
+      writeVarInt32(out, reviewers.asTable().size());
+      for (Table.Cell<ReviewerStateInternal, Account.Id, Timestamp> cell :
+          reviewers.asTable().cellSet()) {
+        writeString(out, cell.getRowKey().name());
+        writeVarInt32(out, cell.getColumnKey().get());
+        writeTimestamp(out, cell.getValue());
+      }
+    }
+
+    private static void writeReviewers(OutputStream out, ReviewerByEmailSet reviewers)
+        throws IOException {
+      writeVarInt32(out, reviewers.asTable().size());
+      for (Table.Cell<ReviewerStateInternal, Address, Timestamp> cell :
+          reviewers.asTable().cellSet()) {
+        writeString(out, cell.getRowKey().name());
+        writeString(out, cell.getColumnKey().getName());
+        writeString(out, cell.getColumnKey().getEmail());
+        writeTimestamp(out, cell.getValue());
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> Table<ReviewerStateInternal, C, Timestamp> readReviewerTable(
+        InputStream in, Class<C> columnType) throws IOException {
+      ImmutableTable.Builder<ReviewerStateInternal, C, Timestamp> table = ImmutableTable.builder();
+      for (int n = readVarInt32(in); n > 0; n--) {
+        ReviewerStateInternal state = readEnum(in, ReviewerStateInternal.class);
+        Object column =
+            columnType == Address.class
+                ? new Address(readString(in), readString(in))
+                : new Account.Id(readVarInt32(in));
+        table.put(state, (C) column, readTimestamp(in));
+      }
+      return table.build();
+    }
+
+    private static void writeSubmitRecord(OutputStream out, SubmitRecord r) throws IOException {
+      writeString(out, r.status != null ? r.status.name() : null);
+      writeString(out, r.errorMessage);
+      writeNullableInt(out, r.labels != null ? r.labels.size() : null);
+      if (r.labels != null) {
+        for (SubmitRecord.Label l : r.labels) {
+          writeString(out, l.label);
+          writeString(out, l.status != null ? l.status.name() : null);
+          writeNullableInt(out, l.appliedBy != null ? l.appliedBy.get() : null);
+        }
+      }
+    }
+
+    private static SubmitRecord readSubmitRecord(InputStream in) throws IOException {
+      SubmitRecord r = new SubmitRecord();
+      r.status = readEnum(in, SubmitRecord.Status.class);
+      r.errorMessage = readString(in);
+      Integer n = readNullableInt(in);
+      if (n != null) {
+        r.labels = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          SubmitRecord.Label l = new SubmitRecord.Label();
+          l.label = readString(in);
+          l.status = readEnum(in, SubmitRecord.Label.Status.class);
+          l.appliedBy = accountId(readNullableInt(in));
+          r.labels.add(l);
+        }
+      }
+      return r;
+    }
+
+    private static void writeChangeMessage(OutputStream out, ChangeMessage m) throws IOException {
+      writeString(out, m.getKey().get());
+      writeNullableInt(out, m.getAuthor() != null ? m.getAuthor().get() : null);
+      writeTimestamp(out, m.getWrittenOn());
+      writeNullableInt(out, m.getPatchSetId() != null ? m.getPatchSetId().get() : null);
+      writeString(out, m.getMessage());
+      writeString(out, m.getTag());
+      writeNullableInt(out, m.getRealAuthor() != null ? m.getRealAuthor().get() : null);
+    }
+
+    private static ChangeMessage readChangeMessage(InputStream in, Change.Id changeId)
+        throws IOException {
+      ChangeMessage.Key key = new ChangeMessage.Key(changeId, readString(in));
+      Account.Id author = accountId(readNullableInt(in));
+      Timestamp writtenOn = readTimestamp(in);
+      ChangeMessage m =
+          new ChangeMessage(key, author, writtenOn, psId(changeId, readNullableInt(in)));
+      m.setMessage(readString(in));
+      m.setTag(readString(in));
+      m.setRealAuthor(accountId(readNullableInt(in)));
+      return m;
+    }
+
+    private static void writeComment(OutputStream out, Comment c) throws IOException {
+      writeString(out, c.key.uuid);
+      writeString(out, c.key.filename);
+      writeVarInt32(out, c.key.patchSetId);
+      writeVarInt32(out, c.lineNbr);
+      writeVarInt32(out, c.author.getId().get());
+      writeVarInt32(out, c.getRealAuthor().getId().get());
+      writeTimestamp(out, c.writtenOn);
+      writeVarInt32(out, c.side);
+      writeString(out, c.message);
+      writeString(out, c.parentUuid);
+      writeBoolean(out, c.range != null);
+      if (c.range != null) {
+        writeVarInt32(out, c.range.startLine);
+        writeVarInt32(out, c.range.startChar);
+        writeVarInt32(out, c.range.endLine);
+        writeVarInt32(out, c.range.endChar);
+      }
+      writeString(out, c.tag);
+      writeString(out, c.revId);
+      writeString(out, c.serverId);
+      writeBoolean(out, c.unresolved);
+    }
+
+    private static Comment readComment(InputStream in) throws IOException {
+      Comment.Key key = new Comment.Key(readString(in), readString(in), readVarInt32(in));
+      int lineNbr = readVarInt32(in);
+      Account.Id author = new Account.Id(readVarInt32(in));
+      Account.Id realAuthor = new Account.Id(readVarInt32(in));
+      Timestamp writtenOn = readTimestamp(in);
+      short side = (short) readVarInt32(in);
+      String message = readString(in);
+      String parentUuid = readString(in);
+      Comment.Range range = null;
+      if (readBoolean(in)) {
+        range =
+            new Comment.Range(
+                readVarInt32(in), readVarInt32(in), readVarInt32(in), readVarInt32(in));
+      }
+      String tag = readString(in);
+      String revId = readString(in);
+      String serverId = readString(in);
+      Comment c = new Comment(key, author, writtenOn, side, message, serverId, readBoolean(in));
+      c.lineNbr = lineNbr;
+      c.setRealAuthor(realAuthor);
+      c.parentUuid = parentUuid;
+      c.range = range;
+      c.tag = tag;
+      c.revId = revId;
+      return c;
+    }
+
+    // Strings are prefixed by a flag distinguishing null from empty, which BasicSerialization
+    // doesn't, and not limited to 64 KiB like DataOutput#writeUTF.
+
+    private static void writeString(OutputStream out, @Nullable String s) throws IOException {
+      writeBoolean(out, s != null);
+      if (s != null) {
+        BasicSerialization.writeString(out, s);
+      }
+    }
+
+    @Nullable
+    private static String readString(InputStream in) throws IOException {
+      return readBoolean(in) ? Strings.nullToEmpty(BasicSerialization.readString(in)) : null;
+    }
+
+    private static void writeBoolean(OutputStream out, boolean b) throws IOException {
+      out.write(b ? 1 : 0);
+    }
+
+    private static boolean readBoolean(InputStream in) throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      return b != 0;
+    }
+
+    private static void writeNullableBoolean(OutputStream out, @Nullable Boolean b)
+        throws IOException {
+      out.write(b == null ? 2 : b ? 1 : 0);
+    }
+
+    @Nullable
+    private static Boolean readNullableBoolean(InputStream in) throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      return b == 2 ? null : b != 0;
+    }
+
+    private static void writeNullableInt(OutputStream out, @Nullable Integer i) throws IOException {
+      writeBoolean(out, i != null);
+      if (i != null) {
+        writeVarInt32(out, i);
+      }
+    }
+
+    @Nullable
+    private static Integer readNullableInt(InputStream in) throws IOException {
+      return readBoolean(in) ? readVarInt32(in) : null;
+    }
+
+    private static void writeTimestamp(OutputStream out, Timestamp ts) throws IOException {
+      writeFixInt64(out, ts.getTime());
+    }
+
+    private static Timestamp readTimestamp(InputStream in) throws IOException {
+      return new Timestamp(readFixInt64(in));
+    }
+
+    private static void writeNullableTimestamp(OutputStream out, @Nullable Timestamp ts)
+        throws IOException {
+      writeBoolean(out, ts != null);
+      if (ts != null) {
+        writeTimestamp(out, ts);
+      }
+    }
+
+    @Nullable
+    private static Timestamp readNullableTimestamp(InputStream in) throws IOException {
+      return readBoolean(in) ? readTimestamp(in) : null;
+    }
+
+    @Nullable
+    private static <E extends Enum<E>> E readEnum(InputStream in, Class<E> type)
+        throws IOException {
+      String name = readString(in);
+      if (name == null) {
+        return null;
+      }
+      try {
+        return Enum.valueOf(type, name);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Invalid " + type.getSimpleName() + ": " + name, e);
+      }
+    }
+
+    @Nullable
+    private static PatchSet.Id psId(Change.Id changeId, @Nullable Integer id) {
+      return id != null ? new PatchSet.Id(changeId, id) : null;
+    }
+
+    @Nullable
+    private static Account.Id accountId(@Nullable Integer id) {
+      return id != null ? new Account.Id(id) : null;
+    }
+
+    @Nullable
+    private static Change.Id changeId(@Nullable Integer id) {
+      return id != null ? new Change.Id(id) : null;
+    }
+
+    private Serializer() {}
+  }
 }
@@ -32,6 +32,7 @@ import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.Runnables;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.reviewdb.client.Project;
@@ -43,7 +44,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -55,6 +60,8 @@ import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.ReceiveCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Class for managing an incrementing sequence backed by a git repository.
@@ -65,13 +72,74 @@ import org.eclipse.jgit.transport.ReceiveCommand;
  * processes can increment the counter by a larger number and hand out numbers from that range in
  * memory until they run out. This means concurrent processes will hand out somewhat non-monotonic
  * numbers.
+ *
+ * <p>Within a process, numbers are claimed from the current range with an atomic increment; only
+ * callers finding the range exhausted serialize on updating the ref. Optionally the next range is
+ * acquired in the background once half of the current one was handed out, so that callers rarely
+ * have to wait for a ref update at all.
  */
 public class RepoSequence {
+  private static final Logger log = LoggerFactory.getLogger(RepoSequence.class);
+
   @FunctionalInterface
   public interface Seed {
     int get() throws OrmException;
   }
 
+  /** Receives events about how numbers are acquired, e.g. to record them as metrics. */
+  public interface Monitor {
+    /**
+     * Called after a range of numbers was acquired by updating the ref.
+     *
+     * @param elapsedNanos time spent updating the ref, including retries.
+     * @param prefetch whether the range was acquired in the background.
+     */
+    void acquired(long elapsedNanos, boolean prefetch);
+
+    /** Called when a caller had to wait for another caller acquiring a new range. */
+    void contended();
+  }
+
+  @VisibleForTesting
+  static final Monitor NO_MONITOR =
+      new Monitor() {
+        @Override
+        public void acquired(long elapsedNanos, boolean prefetch) {}
+
+        @Override
+        public void contended() {}
+      };
+
+  /** Range of numbers acquired from the ref, handed out in memory. */
+  private static class Batch {
+    final int limit;
+    final int prefetchAt;
+    final AtomicInteger next;
+
+    Batch(int start, int limit) {
+      this.limit = limit;
+      this.prefetchAt = start + (limit - start) / 2;
+      this.next = new AtomicInteger(start);
+    }
+
+    /**
+     * Claims up to {@code count} numbers of this batch.
+     *
+     * @return whether the claimed numbers include {@link #prefetchAt}.
+     */
+    boolean take(int count, List<Integer> ids) {
+      int start = next.getAndAdd(count);
+      if (start >= limit) {
+        return false;
+      }
+      int end = Math.min(start + count, limit);
+      for (int i = start; i < end; i++) {
+        ids.add(i);
+      }
+      return start <= prefetchAt && prefetchAt < end;
+    }
+  }
+
   @VisibleForTesting
   static RetryerBuilder<RefUpdate.Result> retryerBuilder() {
     return RetryerBuilder.<RefUpdate.Result>newBuilder()
@@ -92,14 +160,16 @@ public class RepoSequence {
   private final int batchSize;
   private final Runnable afterReadRef;
   private final Retryer<RefUpdate.Result> retryer;
+  @Nullable private final Executor prefetchExecutor;
+  private final Monitor monitor;
 
-  // Protects all non-final fields.
-  private final Lock counterLock;
+  // Held while replacing an exhausted batch; numbers are claimed from the current batch without it.
+  private final Lock refillLock;
 
-  private int limit;
-  private int counter;
+  private volatile Batch batch = new Batch(0, 0);
+  private final AtomicReference<ListenableFutureTask<Batch>> prefetched = new AtomicReference<>();
 
-  @VisibleForTesting int acquireCount;
+  @VisibleForTesting volatile int acquireCount;
 
   public RepoSequence(
       GitRepositoryManager repoManager,
@@ -107,7 +177,32 @@ public class RepoSequence {
       String name,
       Seed seed,
       int batchSize) {
-    this(repoManager, projectName, name, seed, batchSize, Runnables.doNothing(), RETRYER);
+    this(repoManager, projectName, name, seed, batchSize, null, NO_MONITOR);
+  }
+
+  /**
+   * @param prefetchExecutor executor to acquire the next range of numbers on in the background, or
+   *     null to only acquire numbers when the current range is exhausted.
+   * @param monitor receives events about acquiring numbers.
+   */
+  public RepoSequence(
+      GitRepositoryManager repoManager,
+      Project.NameKey projectName,
+      String name,
+      Seed seed,
+      int batchSize,
+      @Nullable Executor prefetchExecutor,
+      Monitor monitor) {
+    this(
+        repoManager,
+        projectName,
+        name,
+        seed,
+        batchSize,
+        Runnables.doNothing(),
+        RETRYER,
+        prefetchExecutor,
+        monitor);
   }
 
   @VisibleForTesting
@@ -119,6 +214,29 @@ public class RepoSequence {
       int batchSize,
       Runnable afterReadRef,
       Retryer<RefUpdate.Result> retryer) {
+    this(
+        repoManager,
+        projectName,
+        name,
+        seed,
+        batchSize,
+        afterReadRef,
+        retryer,
+        null,
+        NO_MONITOR);
+  }
+
+  @VisibleForTesting
+  RepoSequence(
+      GitRepositoryManager repoManager,
+      Project.NameKey projectName,
+      String name,
+      Seed seed,
+      int batchSize,
+      Runnable afterReadRef,
+      Retryer<RefUpdate.Result> retryer,
+      @Nullable Executor prefetchExecutor,
+      Monitor monitor) {
     this.repoManager = checkNotNull(repoManager, "repoManager");
     this.projectName = checkNotNull(projectName, "projectName");
 
@@ -136,20 +254,14 @@ public class RepoSequence {
     this.batchSize = batchSize;
     this.afterReadRef = checkNotNull(afterReadRef, "afterReadRef");
     this.retryer = checkNotNull(retryer, "retryer");
+    this.prefetchExecutor = prefetchExecutor;
+    this.monitor = checkNotNull(monitor, "monitor");
 
-    counterLock = new ReentrantLock(true);
+    refillLock = new ReentrantLock();
   }
 
   public int next() throws OrmException {
-    counterLock.lock();
-    try {
-      if (counter >= limit) {
-        acquire(batchSize);
-      }
-      return counter++;
-    } finally {
-      counterLock.unlock();
-    }
+    return next(1).get(0);
   }
 
   public ImmutableList<Integer> next(int count) throws OrmException {
@@ -157,22 +269,70 @@ public class RepoSequence {
       return ImmutableList.of();
     }
     checkArgument(count > 0, "count is negative: %s", count);
-    counterLock.lock();
+    List<Integer> ids = new ArrayList<>(count);
+    Batch b = batch;
+    while (true) {
+      if (b.take(count - ids.size(), ids)) {
+        prefetch();
+      }
+      if (ids.size() == count) {
+        return ImmutableList.copyOf(ids);
+      }
+      b = refill(b, count - ids.size());
+    }
+  }
+
+  /**
+   * Replaces the exhausted batch with a new one, unless another caller already did.
+   *
+   * @param exhausted batch the caller found exhausted.
+   * @param needed number of IDs the caller still needs.
+   * @return the current batch.
+   */
+  private Batch refill(Batch exhausted, int needed) throws OrmException {
+    if (!refillLock.tryLock()) {
+      monitor.contended();
+      refillLock.lock();
+    }
     try {
-      List<Integer> ids = new ArrayList<>(count);
-      while (counter < limit) {
-        ids.add(counter++);
-        if (ids.size() == count) {
-          return ImmutableList.copyOf(ids);
+      if (batch != exhausted) {
+        return batch;
+      }
+      Batch b = null;
+      ListenableFutureTask<Batch> task = prefetched.getAndSet(null);
+      if (task != null) {
+        try {
+          b = task.get();
+        } catch (ExecutionException e) {
+          log.warn("Failed to prefetch " + refName + ", acquiring synchronously", e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new OrmException("Interrupted while acquiring " + refName, e);
         }
       }
-      acquire(Math.max(count - ids.size(), batchSize));
-      while (ids.size() < count) {
-        ids.add(counter++);
+      if (b == null) {
+        b = acquire(Math.max(needed, batchSize), false);
       }
-      return ImmutableList.copyOf(ids);
+      batch = b;
+      acquireCount++;
+      return b;
     } finally {
-      counterLock.unlock();
+      refillLock.unlock();
+    }
+  }
+
+  private void prefetch() {
+    if (prefetchExecutor == null) {
+      return;
+    }
+    ListenableFutureTask<Batch> task =
+        ListenableFutureTask.create(() -> acquire(batchSize, true));
+    if (prefetched.compareAndSet(null, task)) {
+      try {
+        prefetchExecutor.execute(task);
+      } catch (RejectedExecutionException e) {
+        prefetched.compareAndSet(task, null);
+      }
     }
   }
 
@@ -180,28 +340,33 @@ public class RepoSequence {
   public void set(int val) throws OrmException {
     // Don't bother spinning. This is only for tests, and a test that calls set
     // concurrently with other writes is doing it wrong.
-    counterLock.lock();
+    refillLock.lock();
     try {
       try (Repository repo = repoManager.openRepository(projectName);
           RevWalk rw = new RevWalk(repo)) {
         checkResult(store(repo, rw, null, val));
-        counter = limit;
+        batch = new Batch(0, 0);
+        // A range prefetched before the reset would not continue from the new value.
+        ListenableFutureTask<Batch> task = prefetched.getAndSet(null);
+        if (task != null) {
+          task.cancel(false);
+        }
       } catch (IOException e) {
         throw new OrmException(e);
       }
     } finally {
-      counterLock.unlock();
+      refillLock.unlock();
     }
   }
 
-  private void acquire(int count) throws OrmException {
+  private Batch acquire(int count, boolean prefetch) throws OrmException {
+    long start = System.nanoTime();
     try (Repository repo = repoManager.openRepository(projectName);
         RevWalk rw = new RevWalk(repo)) {
       TryAcquire attempt = new TryAcquire(repo, rw, count);
       checkResult(retryer.call(attempt));
-      counter = attempt.next;
-      limit = counter + count;
-      acquireCount++;
+      monitor.acquired(System.nanoTime() - start, prefetch);
+      return new Batch(attempt.next, attempt.next + count);
     } catch (ExecutionException | RetryException e) {
       if (e.getCause() != null) {
         Throwables.throwIfInstanceOf(e.getCause(), OrmException.class);
@@ -14,14 +14,20 @@
 
 package com.google.gerrit.server.patch;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.WorkQueue;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import org.eclipse.jgit.lib.Config;
 
-/** Module providing the {@link DiffExecutor}. */
+/**
+ * Module providing the {@link DiffExecutor}.
+ *
+ * <p>Like {@code ReceiveCommitsExecutorModule}, this module is intended to be installed only in
+ * top-level injectors like in {@code Daemon}.
+ */
 public class DiffExecutorModule extends AbstractModule {
 
   @Override
@@ -30,8 +36,13 @@ public class DiffExecutorModule extends AbstractModule {
   @Provides
   @Singleton
   @DiffExecutor
-  public ExecutorService createDiffExecutor() {
-    return Executors.newCachedThreadPool(
-        new ThreadFactoryBuilder().setNameFormat("Diff-%d").setDaemon(true).build());
+  public ExecutorService createDiffExecutor(@GerritServerConfig Config config, WorkQueue queues) {
+    int poolSize =
+        config.getInt(
+            "cache",
+            PatchListCacheImpl.FILE_NAME,
+            "threads",
+            2 * Runtime.getRuntime().availableProcessors());
+    return queues.createQueue(Math.max(poolSize, 1), "Diff");
   }
 }
@@ -19,10 +19,15 @@ import static com.google.gerrit.server.ioutil.BasicSerialization.readVarInt32;
 import static com.google.gerrit.server.ioutil.BasicSerialization.writeString;
 import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 
+import com.google.gerrit.server.cache.CacheSerializer;
 import com.google.gerrit.server.query.change.ChangeData.ChangedLines;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
@@ -52,6 +57,14 @@ public class DiffSummary implements Serializable {
   }
 
   private void writeObject(ObjectOutputStream output) throws IOException {
+    writeTo(output);
+  }
+
+  private void readObject(ObjectInputStream input) throws IOException {
+    readFrom(input);
+  }
+
+  private void writeTo(OutputStream output) throws IOException {
     writeVarInt32(output, insertions);
     writeVarInt32(output, deletions);
     writeVarInt32(output, paths.length);
@@ -62,7 +75,7 @@ public class DiffSummary implements Serializable {
     }
   }
 
-  private void readObject(ObjectInputStream input) throws IOException {
+  private void readFrom(InputStream input) throws IOException {
     insertions = readVarInt32(input);
     deletions = readVarInt32(input);
     paths = new String[readVarInt32(input)];
@@ -72,4 +85,21 @@ public class DiffSummary implements Serializable {
       }
     }
   }
+
+  /** Compact serializer for the {@code diff_summary} cache. */
+  static class Serializer implements CacheSerializer<DiffSummary> {
+    @Override
+    public byte[] serialize(DiffSummary summary) throws IOException {
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      summary.writeTo(buf);
+      return buf.toByteArray();
+    }
+
+    @Override
+    public DiffSummary deserialize(byte[] in) throws IOException {
+      DiffSummary summary = new DiffSummary(null, 0, 0);
+      summary.readFrom(new ByteArrayInputStream(in));
+      return summary;
+    }
+  }
 }
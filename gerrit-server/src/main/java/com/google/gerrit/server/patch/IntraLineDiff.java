@@ -21,6 +21,9 @@ import static com.google.gerrit.server.ioutil.BasicSerialization.writeVarInt32;
 
 import com.google.common.collect.ImmutableList;
 import com.google.gerrit.reviewdb.client.CodedEnum;
+import com.google.gerrit.server.cache.CacheSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -79,6 +82,14 @@ public class IntraLineDiff implements Serializable {
   }
 
   private void writeObject(ObjectOutputStream out) throws IOException {
+    writeTo(out);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException {
+    readFrom(in);
+  }
+
+  private void writeTo(OutputStream out) throws IOException {
     writeEnum(out, status);
     writeVarInt32(out, edits.size());
     for (Edit e : edits) {
@@ -96,7 +107,7 @@ public class IntraLineDiff implements Serializable {
     }
   }
 
-  private void readObject(ObjectInputStream in) throws IOException {
+  private void readFrom(InputStream in) throws IOException {
     status = readEnum(in, Status.values());
     int editCount = readVarInt32(in);
     Edit[] editArray = new Edit[editCount];
@@ -115,6 +126,23 @@ public class IntraLineDiff implements Serializable {
     edits = ImmutableList.copyOf(editArray);
   }
 
+  /** Compact serializer for the {@code diff_intraline} cache. */
+  static class Serializer implements CacheSerializer<IntraLineDiff> {
+    @Override
+    public byte[] serialize(IntraLineDiff diff) throws IOException {
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      diff.writeTo(buf);
+      return buf.toByteArray();
+    }
+
+    @Override
+    public IntraLineDiff deserialize(byte[] in) throws IOException {
+      IntraLineDiff diff = new IntraLineDiff(Status.DISABLED);
+      diff.readFrom(new ByteArrayInputStream(in));
+      return diff;
+    }
+  }
+
   private static ImmutableList<Edit> deepCopyEdits(List<Edit> edits) {
     return edits.stream().map(IntraLineDiff::copy).collect(ImmutableList.toImmutableList());
   }
@@ -27,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.reviewdb.client.Patch;
 import com.google.gerrit.reviewdb.client.PatchSet;
+import com.google.gerrit.server.cache.CacheSerializer;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -173,7 +174,15 @@ public class PatchList implements Serializable {
   }
 
   private void writeObject(ObjectOutputStream output) throws IOException {
-    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    writeBytes(output, toCompressedBytes());
+  }
+
+  private void readObject(ObjectInputStream input) throws IOException {
+    readCompressedBytes(readBytes(input));
+  }
+
+  private byte[] toCompressedBytes() throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
     try (DeflaterOutputStream out = new DeflaterOutputStream(buf)) {
       writeCanBeNull(out, oldId);
       writeNotNull(out, newId);
@@ -186,11 +195,11 @@ public class PatchList implements Serializable {
         p.writeTo(out);
       }
     }
-    writeBytes(output, buf.toByteArray());
+    return buf.toByteArray();
   }
 
-  private void readObject(ObjectInputStream input) throws IOException {
-    final ByteArrayInputStream buf = new ByteArrayInputStream(readBytes(input));
+  private void readCompressedBytes(byte[] data) throws IOException {
+    ByteArrayInputStream buf = new ByteArrayInputStream(data);
     try (InflaterInputStream in = new InflaterInputStream(buf)) {
       oldId = readCanBeNull(in);
       newId = readNotNull(in);
@@ -206,4 +215,26 @@ public class PatchList implements Serializable {
       patches = all;
     }
   }
+
+  /**
+   * Compact serializer for the {@code diff} and {@code diff_file} caches.
+   *
+   * <p>Uses the same deflated form as Java serialization, without the object stream overhead.
+   */
+  static class Serializer implements CacheSerializer<PatchList> {
+    @Override
+    public byte[] serialize(PatchList pl) throws IOException {
+      return pl.toCompressedBytes();
+    }
+
+    @Override
+    public PatchList deserialize(byte[] in) throws IOException {
+      if (in.length == 0) {
+        throw new IOException("Empty serialized PatchList");
+      }
+      PatchList pl = new PatchList();
+      pl.readCompressedBytes(in);
+      return pl;
+    }
+  }
 }
@@ -25,6 +25,23 @@ public interface PatchListCache {
 
   PatchList get(Change change, PatchSet patchSet) throws PatchListNotAvailableException;
 
+  /**
+   * Get a {@link PatchList} whose only file entry is {@code fileName}.
+   *
+   * <p>If the full list for {@code key} is already cached it is returned as is; otherwise only the
+   * edits of {@code fileName} are computed, which is much cheaper for commits touching many files.
+   * Callers must only use the returned list to look up {@code fileName}, the commit message and
+   * the merge list.
+   *
+   * @param key key of the full patch list.
+   * @param project project containing the commits.
+   * @param fileName name of the file in the new revision, or in the old one if it was deleted.
+   * @return patch list containing at least the entry of {@code fileName}.
+   * @throws PatchListNotAvailableException if the diff cannot be computed.
+   */
+  PatchList getFile(PatchListKey key, Project.NameKey project, String fileName)
+      throws PatchListNotAvailableException;
+
   ObjectId getOldId(Change change, PatchSet patchSet, Integer parentNum)
       throws PatchListNotAvailableException;
 
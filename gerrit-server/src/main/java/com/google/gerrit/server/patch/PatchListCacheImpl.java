@@ -40,6 +40,9 @@ public class PatchListCacheImpl implements PatchListCache {
   static final String FILE_NAME = "diff";
   static final String INTRA_NAME = "diff_intraline";
   static final String DIFF_SUMMARY = "diff_summary";
+  static final String SINGLE_FILE_NAME = "diff_file";
+  static final String LARGE_OBJECT_NAME = "diff_large_object";
+  static final String SINGLE_FILE_LARGE_OBJECT_NAME = "diff_file_large_object";
 
   public static Module module() {
     return new CacheModule() {
@@ -47,16 +50,33 @@ public class PatchListCacheImpl implements PatchListCache {
       protected void configure() {
         factory(PatchListLoader.Factory.class);
         persist(FILE_NAME, PatchListKey.class, PatchList.class)
+            .version(2)
+            .valueSerializer(new PatchList.Serializer())
             .maximumWeight(10 << 20)
             .weigher(PatchListWeigher.class);
 
+        persist(SINGLE_FILE_NAME, PatchListFileKey.class, PatchList.class)
+            .version(2)
+            .valueSerializer(new PatchList.Serializer())
+            .maximumWeight(10 << 20)
+            .weigher(PatchListFileWeigher.class);
+
+        // Diffs that failed with a LargeObjectException are only remembered in memory, so they are
+        // computed again after a restart, e.g. with a raised core.streamFileThreshold.
+        cache(LARGE_OBJECT_NAME, PatchListKey.class, Boolean.class);
+        cache(SINGLE_FILE_LARGE_OBJECT_NAME, PatchListFileKey.class, Boolean.class);
+
         factory(IntraLineLoader.Factory.class);
         persist(INTRA_NAME, IntraLineDiffKey.class, IntraLineDiff.class)
+            .version(1)
+            .valueSerializer(new IntraLineDiff.Serializer())
             .maximumWeight(10 << 20)
             .weigher(IntraLineWeigher.class);
 
         factory(DiffSummaryLoader.Factory.class);
         persist(DIFF_SUMMARY, DiffSummaryKey.class, DiffSummary.class)
+            .version(1)
+            .valueSerializer(new DiffSummary.Serializer())
             .maximumWeight(10 << 20)
             .weigher(DiffSummaryWeigher.class)
             .diskLimit(1 << 30);
@@ -68,6 +88,9 @@ public class PatchListCacheImpl implements PatchListCache {
   }
 
   private final Cache<PatchListKey, PatchList> fileCache;
+  private final Cache<PatchListFileKey, PatchList> singleFileCache;
+  private final Cache<PatchListKey, Boolean> largeObjects;
+  private final Cache<PatchListFileKey, Boolean> singleFileLargeObjects;
   private final Cache<IntraLineDiffKey, IntraLineDiff> intraCache;
   private final Cache<DiffSummaryKey, DiffSummary> diffSummaryCache;
   private final PatchListLoader.Factory fileLoaderFactory;
@@ -78,6 +101,9 @@ public class PatchListCacheImpl implements PatchListCache {
   @Inject
   PatchListCacheImpl(
       @Named(FILE_NAME) Cache<PatchListKey, PatchList> fileCache,
+      @Named(SINGLE_FILE_NAME) Cache<PatchListFileKey, PatchList> singleFileCache,
+      @Named(LARGE_OBJECT_NAME) Cache<PatchListKey, Boolean> largeObjects,
+      @Named(SINGLE_FILE_LARGE_OBJECT_NAME) Cache<PatchListFileKey, Boolean> singleFileLargeObjects,
       @Named(INTRA_NAME) Cache<IntraLineDiffKey, IntraLineDiff> intraCache,
       @Named(DIFF_SUMMARY) Cache<DiffSummaryKey, DiffSummary> diffSummaryCache,
       PatchListLoader.Factory fileLoaderFactory,
@@ -85,6 +111,9 @@ public class PatchListCacheImpl implements PatchListCache {
       DiffSummaryLoader.Factory diffSummaryLoaderFactory,
       @GerritServerConfig Config cfg) {
     this.fileCache = fileCache;
+    this.singleFileCache = singleFileCache;
+    this.largeObjects = largeObjects;
+    this.singleFileLargeObjects = singleFileLargeObjects;
     this.intraCache = intraCache;
     this.diffSummaryCache = diffSummaryCache;
     this.fileLoaderFactory = fileLoaderFactory;
@@ -99,12 +128,12 @@ public class PatchListCacheImpl implements PatchListCache {
   @Override
   public PatchList get(PatchListKey key, Project.NameKey project)
       throws PatchListNotAvailableException {
+    if (largeObjects.getIfPresent(key) != null) {
+      throw new PatchListNotAvailableException(
+          "Error computing " + key + ". Previous attempt failed with LargeObjectException");
+    }
     try {
       PatchList pl = fileCache.get(key, fileLoaderFactory.create(key, project));
-      if (pl instanceof LargeObjectTombstone) {
-        throw new PatchListNotAvailableException(
-            "Error computing " + key + ". Previous attempt failed with LargeObjectException");
-      }
       if (key.getAlgorithm() == PatchListKey.Algorithm.OPTIMIZED_DIFF) {
         diffSummaryCache.put(DiffSummaryKey.fromPatchListKey(key), toDiffSummary(pl));
       }
@@ -116,7 +145,7 @@ public class PatchListCacheImpl implements PatchListCache {
       if (e.getCause() instanceof LargeObjectException) {
         // Cache negative result so we don't need to redo expensive computations that would yield
         // the same result.
-        fileCache.put(key, new LargeObjectTombstone());
+        largeObjects.put(key, true);
         PatchListLoader.log.warn("Error computing " + key, e);
         throw new PatchListNotAvailableException(e);
       }
@@ -124,6 +153,34 @@ public class PatchListCacheImpl implements PatchListCache {
     }
   }
 
+  @Override
+  public PatchList getFile(PatchListKey key, Project.NameKey project, String fileName)
+      throws PatchListNotAvailableException {
+    PatchList pl = fileCache.getIfPresent(key);
+    if (pl != null) {
+      return pl;
+    }
+
+    PatchListFileKey fileKey = PatchListFileKey.create(key, fileName);
+    if (singleFileLargeObjects.getIfPresent(fileKey) != null) {
+      throw new PatchListNotAvailableException(
+          "Error computing " + fileKey + ". Previous attempt failed with LargeObjectException");
+    }
+    try {
+      return singleFileCache.get(fileKey, fileLoaderFactory.create(key, project, fileName));
+    } catch (ExecutionException e) {
+      PatchListLoader.log.warn("Error computing " + fileKey, e);
+      throw new PatchListNotAvailableException(e);
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof LargeObjectException) {
+        singleFileLargeObjects.put(fileKey, true);
+        PatchListLoader.log.warn("Error computing " + fileKey, e);
+        throw new PatchListNotAvailableException(e);
+      }
+      throw e;
+    }
+  }
+
   @Override
   public PatchList get(Change change, PatchSet patchSet) throws PatchListNotAvailableException {
     return get(change, patchSet, null);
@@ -188,11 +245,4 @@ public class PatchListCacheImpl implements PatchListCache {
       throw e;
     }
   }
-
-  /** Used to cache negative results in {@code fileCache}. */
-  private class LargeObjectTombstone extends PatchList {
-    private static final long serialVersionUID = 1L;
-
-    private LargeObjectTombstone() {}
-  }
 }
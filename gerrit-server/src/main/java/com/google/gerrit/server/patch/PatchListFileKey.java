@@ -0,0 +1,32 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import com.google.auto.value.AutoValue;
+import java.io.Serializable;
+
+/** Key of a {@link PatchList} restricted to a single file of the diff described by a key. */
+@AutoValue
+public abstract class PatchListFileKey implements Serializable {
+  public static final long serialVersionUID = 1L;
+
+  public static PatchListFileKey create(PatchListKey patchListKey, String fileName) {
+    return new AutoValue_PatchListFileKey(patchListKey, fileName);
+  }
+
+  public abstract PatchListKey getPatchListKey();
+
+  public abstract String getFileName();
+}
@@ -0,0 +1,30 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import com.google.common.cache.Weigher;
+
+/** Approximates memory usage for a single file PatchList in bytes of memory used. */
+public class PatchListFileWeigher implements Weigher<PatchListFileKey, PatchList> {
+  private final PatchListWeigher patchListWeigher = new PatchListWeigher();
+
+  @Override
+  public int weigh(PatchListFileKey key, PatchList value) {
+    return 16
+        + 2 * 8
+        + 2 * key.getFileName().length() // Size of PatchListFileKey, 64 bit JVM
+        + patchListWeigher.weigh(key.getPatchListKey(), value);
+  }
+}
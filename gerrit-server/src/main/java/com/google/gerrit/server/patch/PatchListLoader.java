@@ -17,6 +17,7 @@ package com.google.gerrit.server.patch;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
 
@@ -24,8 +25,16 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.reviewdb.client.Patch;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.ConfigUtil;
@@ -35,7 +44,9 @@ import com.google.gerrit.server.git.InMemoryInserter;
 import com.google.gerrit.server.git.MergeUtil;
 import com.google.gerrit.server.patch.EditTransformer.ContextAwareEdit;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -79,6 +90,40 @@ public class PatchListLoader implements Callable<PatchList> {
 
   public interface Factory {
     PatchListLoader create(PatchListKey key, Project.NameKey project);
+
+    PatchListLoader create(PatchListKey key, Project.NameKey project, String fileName);
+  }
+
+  /** Why the diff of a file timed out. */
+  enum TimeoutCause {
+    /** The diff ran for longer than the timeout. */
+    RUNNING,
+
+    /** The diff waited in the executor's queue for the whole timeout and never started. */
+    QUEUED
+  }
+
+  @Singleton
+  static class Metrics {
+    final Timer0 fileDiffLatency;
+    final Counter1<TimeoutCause> fileDiffTimeouts;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      fileDiffLatency =
+          metricMaker.newTimer(
+              "diff/file_latency",
+              new Description("Latency for computing the diff of a single file")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS));
+      fileDiffTimeouts =
+          metricMaker.newCounter(
+              "diff/file_timeout_count",
+              new Description("Files whose diff timed out and fell back to a simpler algorithm")
+                  .setRate()
+                  .setUnit("timeouts"),
+              Field.ofEnum(TimeoutCause.class, "cause"));
+    }
   }
 
   private final GitRepositoryManager repoManager;
@@ -86,27 +131,51 @@ public class PatchListLoader implements Callable<PatchList> {
   private final ThreeWayMergeStrategy mergeStrategy;
   private final ExecutorService diffExecutor;
   private final AutoMerger autoMerger;
+  private final Metrics metrics;
   private final PatchListKey key;
   private final Project.NameKey project;
+  @Nullable private final String fileName;
   private final long timeoutMillis;
+  private final int parallelism;
   private final boolean save;
 
-  @Inject
+  @AssistedInject
   PatchListLoader(
       GitRepositoryManager mgr,
       PatchListCache plc,
       @GerritServerConfig Config cfg,
       @DiffExecutor ExecutorService de,
       AutoMerger am,
+      Metrics metrics,
       @Assisted PatchListKey k,
       @Assisted Project.NameKey p) {
+    this(mgr, plc, cfg, de, am, metrics, k, p, null);
+  }
+
+  /**
+   * Creates a loader which only computes the edits of {@code fileName}, along with the magic
+   * commit message and merge list entries. The resulting {@link PatchList} contains no other files.
+   */
+  @AssistedInject
+  PatchListLoader(
+      GitRepositoryManager mgr,
+      PatchListCache plc,
+      @GerritServerConfig Config cfg,
+      @DiffExecutor ExecutorService de,
+      AutoMerger am,
+      Metrics metrics,
+      @Assisted PatchListKey k,
+      @Assisted Project.NameKey p,
+      @Assisted @Nullable String fileName) {
     repoManager = mgr;
     patchListCache = plc;
     mergeStrategy = MergeUtil.getMergeStrategy(cfg);
     diffExecutor = de;
     autoMerger = am;
+    this.metrics = metrics;
     key = k;
     project = p;
+    this.fileName = fileName;
     timeoutMillis =
         ConfigUtil.getTimeUnit(
             cfg,
@@ -115,6 +184,14 @@ public class PatchListLoader implements Callable<PatchList> {
             "timeout",
             TimeUnit.MILLISECONDS.convert(5, TimeUnit.SECONDS),
             TimeUnit.MILLISECONDS);
+    parallelism =
+        Math.max(
+            cfg.getInt(
+                "cache",
+                PatchListCacheImpl.FILE_NAME,
+                "parallelism",
+                Runtime.getRuntime().availableProcessors()),
+            1);
     save = AutoMerger.cacheAutomerge(cfg);
   }
 
@@ -201,11 +278,18 @@ public class PatchListLoader implements Callable<PatchList> {
           key.getAlgorithm() == PatchListKey.Algorithm.OPTIMIZED_DIFF
               ? getEditsDueToRebasePerFilePath(aCommit, b)
               : ImmutableMultimap.of();
-      for (DiffEntry diffEntry : diffEntries) {
+      if (fileName != null) {
+        diffEntries =
+            diffEntries.stream().filter(e -> fileName.equals(pathOf(e))).collect(toList());
+      }
+      List<FileHeader> fileHeaders = toFileHeaders(repo, reader, df, cmp, diffEntries);
+      for (int i = 0; i < diffEntries.size(); i++) {
+        DiffEntry diffEntry = diffEntries.get(i);
         Set<ContextAwareEdit> editsDueToRebase =
             getEditsDueToRebase(editsDueToRebasePerFilePath, diffEntry);
         Optional<PatchListEntry> patchListEntry =
-            getPatchListEntry(reader, df, diffEntry, aTree, bTree, editsDueToRebase);
+            getPatchListEntry(
+                reader, fileHeaders.get(i), diffEntry, aTree, bTree, editsDueToRebase);
         patchListEntry.ifPresent(entries::add);
       }
       return new PatchList(
@@ -289,22 +373,24 @@ public class PatchListLoader implements Callable<PatchList> {
       return ImmutableSet.of();
     }
 
-    String filePath = diffEntry.getNewPath();
+    return ImmutableSet.copyOf(editsDueToRebasePerFilePath.get(pathOf(diffEntry)));
+  }
+
+  private static String pathOf(DiffEntry diffEntry) {
     if (diffEntry.getChangeType() == ChangeType.DELETE) {
-      filePath = diffEntry.getOldPath();
+      return diffEntry.getOldPath();
     }
-    return ImmutableSet.copyOf(editsDueToRebasePerFilePath.get(filePath));
+    return diffEntry.getNewPath();
   }
 
   private Optional<PatchListEntry> getPatchListEntry(
       ObjectReader objectReader,
-      DiffFormatter diffFormatter,
+      FileHeader fileHeader,
       DiffEntry diffEntry,
       RevTree treeA,
       RevTree treeB,
       Set<ContextAwareEdit> editsDueToRebase)
       throws IOException {
-    FileHeader fileHeader = toFileHeader(key, diffFormatter, diffEntry);
     long oldSize = getFileSize(objectReader, diffEntry.getOldMode(), diffEntry.getOldPath(), treeA);
     long newSize = getFileSize(objectReader, diffEntry.getNewMode(), diffEntry.getNewPath(), treeB);
     Set<Edit> contentEditsDueToRebase = getContentEdits(editsDueToRebase);
@@ -355,19 +441,98 @@ public class PatchListLoader implements Callable<PatchList> {
     return t == FileMode.TYPE_FILE || t == FileMode.TYPE_SYMLINK;
   }
 
-  private FileHeader toFileHeader(
-      PatchListKey key, DiffFormatter diffFormatter, DiffEntry diffEntry) throws IOException {
+  /**
+   * Computes the file headers of {@code diffEntries}, in the same order.
+   *
+   * <p>Files are diffed concurrently on the {@link DiffExecutor}, at most {@code parallelism} at a
+   * time, each with its own reader. A file whose diff does not complete within the timeout falls
+   * back to a simpler algorithm without affecting the other files.
+   */
+  private List<FileHeader> toFileHeaders(
+      Repository repo,
+      ObjectReader reader,
+      DiffFormatter diffFormatter,
+      RawTextComparator cmp,
+      List<DiffEntry> diffEntries)
+      throws IOException {
+    List<FileHeader> fileHeaders = new ArrayList<>(diffEntries.size());
+    for (List<DiffEntry> batch : Lists.partition(diffEntries, parallelism)) {
+      List<FileDiff> diffs = new ArrayList<>(batch.size());
+      try {
+        for (DiffEntry diffEntry : batch) {
+          FileDiff diff = new FileDiff(repo, reader, cmp, diffEntry);
+          diff.result = diffExecutor.submit(diff);
+          diffs.add(diff);
+        }
+        for (FileDiff diff : diffs) {
+          fileHeaders.add(getFileHeader(diff, diffFormatter));
+        }
+      } finally {
+        diffs.forEach(d -> d.result.cancel(true));
+      }
+    }
+    return fileHeaders;
+  }
+
+  /** Diff of a single file, computed on the {@link DiffExecutor}. */
+  private class FileDiff implements Callable<FileHeader> {
+    private final Repository repo;
+    private final ObjectReader reader;
+    private final RawTextComparator cmp;
+    private final DiffEntry diffEntry;
+    private final long submitted = System.nanoTime();
+    private volatile boolean running;
+    private volatile long started;
+    private Future<FileHeader> result;
+
+    FileDiff(Repository repo, ObjectReader reader, RawTextComparator cmp, DiffEntry diffEntry) {
+      this.repo = repo;
+      this.reader = reader;
+      this.cmp = cmp;
+      this.diffEntry = diffEntry;
+    }
 
-    Future<FileHeader> result =
-        diffExecutor.submit(
-            () -> {
-              synchronized (diffEntry) {
-                return diffFormatter.toFileHeader(diffEntry);
-              }
-            });
+    @Override
+    public FileHeader call() throws IOException {
+      started = System.nanoTime();
+      running = true;
+      try (ObjectReader fileReader = reader.newReader();
+          DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+        diffFormatter.setReader(fileReader, repo.getConfig());
+        diffFormatter.setDiffComparator(cmp);
+        return diffFormatter.toFileHeader(diffEntry);
+      } finally {
+        metrics.fileDiffLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+      }
+    }
 
+    /**
+     * Waits for the result until the timeout has passed since the diff started running.
+     *
+     * <p>A diff that waits in the executor's queue for the whole timeout, because all threads are
+     * busy with other diffs, times out as well.
+     */
+    FileHeader get() throws InterruptedException, ExecutionException, TimeoutException {
+      long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      while (true) {
+        boolean wasRunning = running;
+        long from = wasRunning ? started : submitted;
+        try {
+          return result.get(Math.max(from + timeout - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          if (wasRunning || !running) {
+            throw e;
+          }
+          // The diff started while waiting for it; give it the full timeout.
+        }
+      }
+    }
+  }
+
+  private FileHeader getFileHeader(FileDiff diff, DiffFormatter diffFormatter) throws IOException {
+    DiffEntry diffEntry = diff.diffEntry;
     try {
-      return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+      return diff.get();
     } catch (InterruptedException | TimeoutException e) {
       log.warn(
           timeoutMillis
@@ -382,10 +547,10 @@ public class PatchListLoader implements Callable<PatchList> {
               + diffEntry.getOldId().name()
               + ".."
               + diffEntry.getNewId().name());
-      result.cancel(true);
-      synchronized (diffEntry) {
-        return toFileHeaderWithoutMyersDiff(diffFormatter, diffEntry);
-      }
+      metrics.fileDiffTimeouts.increment(
+          diff.running ? TimeoutCause.RUNNING : TimeoutCause.QUEUED);
+      diff.result.cancel(true);
+      return toFileHeaderWithoutMyersDiff(diffFormatter, diffEntry);
     } catch (ExecutionException e) {
       // If there was an error computing the result, carry it
       // up to the caller so the cache knows this key is invalid.
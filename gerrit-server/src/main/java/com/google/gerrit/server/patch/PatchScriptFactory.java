@@ -205,7 +205,7 @@ public class PatchScriptFactory implements Callable<PatchScript> {
       }
 
       try {
-        final PatchList list = listFor(keyFor(diffPrefs.ignoreWhitespace));
+        final PatchList list = listFor(keyFor(diffPrefs.ignoreWhitespace), fileName);
         final PatchScriptBuilder b = newBuilder(list, git);
         final PatchListEntry content = list.get(fileName);
 
@@ -240,8 +240,9 @@ public class PatchScriptFactory implements Callable<PatchScript> {
     return PatchListKey.againstParentNum(parentNum + 1, bId, whitespace);
   }
 
-  private PatchList listFor(PatchListKey key) throws PatchListNotAvailableException {
-    return patchListCache.get(key, project);
+  private PatchList listFor(PatchListKey key, String fileName)
+      throws PatchListNotAvailableException {
+    return patchListCache.getFile(key, project, fileName);
   }
 
   private PatchScriptBuilder newBuilder(PatchList list, Repository git) {
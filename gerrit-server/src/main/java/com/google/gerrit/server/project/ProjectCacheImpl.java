@@ -20,16 +20,25 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.reviewdb.client.AccountGroup;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.cache.CacheModule;
 import com.google.gerrit.server.config.AllProjectsName;
 import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.ProjectConfig;
 import com.google.inject.Inject;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.internal.UniqueAnnotations;
@@ -45,6 +54,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,16 +83,35 @@ public class ProjectCacheImpl implements ProjectCache {
         bind(LifecycleListener.class)
             .annotatedWith(UniqueAnnotations.create())
             .to(ProjectCacheWarmer.class);
+        bind(LifecycleListener.class)
+            .annotatedWith(UniqueAnnotations.create())
+            .to(ProjectCacheRefresher.class);
+        DynamicSet.bind(binder(), GitReferenceUpdatedListener.class)
+            .to(ProjectCacheRefresher.class);
       }
     };
   }
 
+  /** How a cached project was found to be out of date. */
+  enum StaleSource {
+    /** Compared with the refs/meta/config branch when accessed. */
+    ACCESS,
+
+    /** Notified of an update of the refs/meta/config branch. */
+    EVENT,
+
+    /** Compared with the refs/meta/config branch by the periodic check. */
+    SWEEP
+  }
+
   private final AllProjectsName allProjectsName;
   private final AllUsersName allUsersName;
   private final LoadingCache<String, ProjectState> byName;
   private final LoadingCache<ListKey, SortedSet<Project.NameKey>> list;
   private final Lock listLock;
-  private final ProjectCacheClock clock;
+  private final boolean checkOnAccess;
+  private final Counter1<StaleSource> staleDetections;
+  private final Provider<VisibleProjectsCache> visibleProjects;
 
   @Inject
   ProjectCacheImpl(
@@ -89,13 +119,23 @@ public class ProjectCacheImpl implements ProjectCache {
       final AllUsersName allUsersName,
       @Named(CACHE_NAME) LoadingCache<String, ProjectState> byName,
       @Named(CACHE_LIST) LoadingCache<ListKey, SortedSet<Project.NameKey>> list,
-      ProjectCacheClock clock) {
+      @GerritServerConfig Config serverConfig,
+      MetricMaker metricMaker,
+      Provider<VisibleProjectsCache> visibleProjects) {
     this.allProjectsName = allProjectsName;
     this.allUsersName = allUsersName;
     this.byName = byName;
     this.list = list;
     this.listLock = new ReentrantLock(true /* fair */);
-    this.clock = clock;
+    this.checkOnAccess = ProjectCacheRefresher.checkFrequency(serverConfig) == 0;
+    this.staleDetections =
+        metricMaker.newCounter(
+            "caches/projects/stale_detections",
+            new Description("Cached projects found to be out of date with refs/meta/config")
+                .setRate()
+                .setUnit("projects"),
+            Field.ofEnum(StaleSource.class, "source"));
+    this.visibleProjects = visibleProjects;
   }
 
   @Override
@@ -135,8 +175,8 @@ public class ProjectCacheImpl implements ProjectCache {
     }
     try {
       ProjectState state = byName.get(projectName.get());
-      if (state != null && state.needsRefresh(clock.read())) {
-        byName.invalidate(projectName.get());
+      if (state != null && checkOnAccess && state.isRevisionOutOfDate()) {
+        evictStale(projectName, StaleSource.ACCESS);
         state = byName.get(projectName.get());
       }
       return state;
@@ -154,6 +194,7 @@ public class ProjectCacheImpl implements ProjectCache {
   public void evict(Project p) {
     if (p != null) {
       byName.invalidate(p.getNameKey().get());
+      visibleProjects.get().evictAll();
     }
   }
 
@@ -162,9 +203,38 @@ public class ProjectCacheImpl implements ProjectCache {
   public void evict(Project.NameKey p) {
     if (p != null) {
       byName.invalidate(p.get());
+      visibleProjects.get().evictAll();
     }
   }
 
+  /**
+   * Evict a project if its cached configuration is not at the given revision.
+   *
+   * @param projectName project whose refs/meta/config branch was updated.
+   * @param revision new revision of the branch, null if it was deleted.
+   */
+  void onConfigUpdated(Project.NameKey projectName, @Nullable ObjectId revision) {
+    ProjectState state = byName.getIfPresent(projectName.get());
+    if (state != null && !Objects.equals(state.getConfig().getRevision(), revision)) {
+      evictStale(projectName, StaleSource.EVENT);
+    }
+  }
+
+  /** Evict all cached projects whose refs/meta/config branch moved. */
+  void evictStale() {
+    for (ProjectState state : byName.asMap().values()) {
+      if (state.isRevisionOutOfDate()) {
+        evictStale(state.getProject().getNameKey(), StaleSource.SWEEP);
+      }
+    }
+  }
+
+  private void evictStale(Project.NameKey projectName, StaleSource source) {
+    staleDetections.increment(source);
+    byName.invalidate(projectName.get());
+    visibleProjects.get().evictAll();
+  }
+
   @Override
   public void remove(Project p) {
     listLock.lock();
@@ -192,6 +262,7 @@ public class ProjectCacheImpl implements ProjectCache {
     } finally {
       listLock.unlock();
     }
+    visibleProjects.get().evictAll();
   }
 
   @Override
@@ -274,26 +345,21 @@ public class ProjectCacheImpl implements ProjectCache {
   static class Loader extends CacheLoader<String, ProjectState> {
     private final ProjectState.Factory projectStateFactory;
     private final GitRepositoryManager mgr;
-    private final ProjectCacheClock clock;
 
     @Inject
-    Loader(ProjectState.Factory psf, GitRepositoryManager g, ProjectCacheClock clock) {
+    Loader(ProjectState.Factory psf, GitRepositoryManager g) {
       projectStateFactory = psf;
       mgr = g;
-      this.clock = clock;
     }
 
     @Override
     public ProjectState load(String projectName) throws Exception {
-      long now = clock.read();
       Project.NameKey key = new Project.NameKey(projectName);
       try (Repository git = mgr.openRepository(key)) {
         ProjectConfig cfg = new ProjectConfig(key);
         cfg.load(git);
 
-        ProjectState state = projectStateFactory.create(cfg);
-        state.initLastCheck(now);
-        return state;
+        return projectStateFactory.create(cfg);
       }
     }
   }
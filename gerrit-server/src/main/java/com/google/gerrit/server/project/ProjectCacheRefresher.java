@@ -0,0 +1,113 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.reviewdb.client.RefNames;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps {@link ProjectCacheImpl} up to date with the refs/meta/config branches.
+ *
+ * <p>Projects are evicted when their refs/meta/config branch is updated through the server. Edits
+ * made directly to the repositories are found by periodically comparing all cached projects with
+ * their branches, every {@code cache.projects.checkFrequency}.
+ */
+@Singleton
+public class ProjectCacheRefresher implements GitReferenceUpdatedListener, LifecycleListener {
+  private static final Logger log = LoggerFactory.getLogger(ProjectCacheRefresher.class);
+
+  /**
+   * @return how often cached projects should be compared with their refs/meta/config branch in
+   *     milliseconds; 0 to compare on every access, {@link Long#MAX_VALUE} to never compare.
+   */
+  static long checkFrequency(Config serverConfig) {
+    String freq = serverConfig.getString("cache", "projects", "checkFrequency");
+    if (freq != null && ("disabled".equalsIgnoreCase(freq) || "off".equalsIgnoreCase(freq))) {
+      return Long.MAX_VALUE;
+    }
+    long millis =
+        TimeUnit.MILLISECONDS.convert(
+            ConfigUtil.getTimeUnit(
+                serverConfig, "cache", "projects", "checkFrequency", 5, TimeUnit.MINUTES),
+            TimeUnit.MINUTES);
+    return millis > 10 ? millis : 0;
+  }
+
+  private final ProjectCacheImpl projectCache;
+  private final long checkFrequencyMillis;
+  private ScheduledExecutorService executor;
+
+  @Inject
+  ProjectCacheRefresher(@GerritServerConfig Config serverConfig, ProjectCacheImpl projectCache) {
+    this.projectCache = projectCache;
+    this.checkFrequencyMillis = checkFrequency(serverConfig);
+  }
+
+  @Override
+  public void onGitReferenceUpdated(Event event) {
+    if (RefNames.REFS_CONFIG.equals(event.getRefName())) {
+      projectCache.onConfigUpdated(
+          new Project.NameKey(event.getProjectName()),
+          event.isDelete() ? null : ObjectId.fromString(event.getNewObjectId()));
+    }
+  }
+
+  @Override
+  public void start() {
+    if (checkFrequencyMillis == 0 || checkFrequencyMillis == Long.MAX_VALUE) {
+      return;
+    }
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("ProjectCacheRefresher-%d")
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .build());
+    executor.scheduleWithFixedDelay(
+        this::sweep, checkFrequencyMillis, checkFrequencyMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void sweep() {
+    try {
+      projectCache.evictStale();
+    } catch (RuntimeException e) {
+      // Keep the task scheduled.
+      log.error("Cannot check cached projects for updates", e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+}
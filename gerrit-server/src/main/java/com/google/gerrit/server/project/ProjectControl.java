@@ -145,6 +145,8 @@ public class ProjectControl {
   private List<SectionMatcher> localSections;
   private LabelTypes labelTypes;
   private Map<String, RefControl> refControls;
+  private SectionTrie sectionTrie;
+  private Map<Object, Boolean> visibleBySections;
   private Boolean declaredOwner;
 
   @Inject
@@ -206,6 +208,32 @@ public class ProjectControl {
     return ctl;
   }
 
+  /**
+   * Can this user see the given reference?
+   *
+   * <p>Same as {@code controlForRef(refName).isVisible()}, but references governed by the same
+   * access sections share a single permission evaluation. Use this to check many references, e.g.
+   * to filter the references advertised to a client.
+   *
+   * @param refName name of a reference; must not be a reference pattern.
+   */
+  public boolean isRefVisible(String refName) {
+    if (sectionTrie == null) {
+      sectionTrie = state.getSectionTrie();
+      visibleBySections = new HashMap<>();
+    }
+    Object key = sectionTrie.classify(refName);
+    if (key == null) {
+      return controlForRef(refName).isVisible();
+    }
+    Boolean visible = visibleBySections.get(key);
+    if (visible == null) {
+      visible = controlForRef(refName).isVisible();
+      visibleBySections.put(key, visible);
+    }
+    return visible;
+  }
+
   public CurrentUser getUser() {
     return user;
   }
@@ -97,12 +97,12 @@ public class ProjectState {
   /** Prolog rule state. */
   private volatile PrologMachineCopy rulesMachine;
 
-  /** Last system time the configuration's revision was examined. */
-  private volatile long lastCheckGeneration;
-
   /** Local access sections, wrapped in SectionMatchers for faster evaluation. */
   private volatile List<SectionMatcher> localAccessSections;
 
+  /** All access sections of the hierarchy, indexed by reference name. */
+  private volatile SectionTrie sectionTrie;
+
   /** Theme information loaded from site_path/themes. */
   private volatile ThemeInfo theme;
 
@@ -159,22 +159,8 @@ public class ProjectState {
     }
   }
 
-  void initLastCheck(long generation) {
-    lastCheckGeneration = generation;
-  }
-
-  boolean needsRefresh(long generation) {
-    if (generation <= 0) {
-      return isRevisionOutOfDate();
-    }
-    if (lastCheckGeneration != generation) {
-      lastCheckGeneration = generation;
-      return isRevisionOutOfDate();
-    }
-    return false;
-  }
-
-  private boolean isRevisionOutOfDate() {
+  /** @return whether the refs/meta/config branch moved away from the cached revision. */
+  boolean isRevisionOutOfDate() {
     try (Repository git = gitMgr.openRepository(getProject().getNameKey())) {
       Ref ref = git.getRefDatabase().exactRef(RefNames.REFS_CONFIG);
       if (ref == null || ref.getObjectId() == null) {
@@ -289,6 +275,25 @@ public class ProjectState {
     return all;
   }
 
+  /**
+   * Get the sections of {@link #getAllSections()} indexed by reference name.
+   *
+   * <p>The index is rebuilt only after the access sections of this project or one of its parents
+   * changed.
+   */
+  SectionTrie getSectionTrie() {
+    List<List<SectionMatcher>> sources = new ArrayList<>();
+    for (ProjectState s : tree()) {
+      sources.add(s.getLocalAccessSections());
+    }
+    SectionTrie trie = sectionTrie;
+    if (trie == null || !trie.isBuiltFrom(sources)) {
+      trie = SectionTrie.build(sources);
+      sectionTrie = trie;
+    }
+    return trie;
+  }
+
   /**
    * @return all {@link AccountGroup}'s to which the owner privilege for 'refs/*' is assigned for
    *     this project (the local owners), if there are no local owners the local owners of the
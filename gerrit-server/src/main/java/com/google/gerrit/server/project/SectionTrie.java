@@ -0,0 +1,137 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import static com.google.gerrit.server.project.RefPattern.isRE;
+
+import com.google.gerrit.common.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the access sections of a project hierarchy by reference name.
+ *
+ * <p>Prefix sections ("refs/heads/*") are arranged in a trie of reference name components. A
+ * reference that matches no exact, regular expression or parameterized section is governed by the
+ * prefix sections along its path through the trie, which are identified by the deepest node on
+ * that path holding a section. All references ending on the same node are therefore governed by
+ * the same sections, sorted in the same order, and share every permission decision.
+ */
+final class SectionTrie {
+  private static class Node {
+    final Map<String, Node> children = new HashMap<>();
+    boolean hasSections;
+  }
+
+  static SectionTrie build(List<List<SectionMatcher>> sources) {
+    SectionTrie trie = new SectionTrie(sources);
+    for (List<SectionMatcher> matchers : sources) {
+      for (SectionMatcher sm : matchers) {
+        trie.add(sm);
+      }
+    }
+    return trie;
+  }
+
+  private final List<List<SectionMatcher>> sources;
+  private final Node root = new Node();
+  private final Set<String> exact = new HashSet<>();
+  private final List<SectionMatcher> regexps = new ArrayList<>();
+  private final List<RefPatternMatcher.ExpandParameters> parameterized = new ArrayList<>();
+
+  private SectionTrie(List<List<SectionMatcher>> sources) {
+    this.sources = sources;
+  }
+
+  private void add(SectionMatcher sm) {
+    String name = sm.section.getName();
+    if (sm.matcher instanceof RefPatternMatcher.ExpandParameters) {
+      parameterized.add((RefPatternMatcher.ExpandParameters) sm.matcher);
+    } else if (isRE(name)) {
+      regexps.add(sm);
+    } else if (name.endsWith("/*")) {
+      Node node = root;
+      int start = 0;
+      for (int end = name.indexOf('/'); end >= 0; end = name.indexOf('/', start)) {
+        node = node.children.computeIfAbsent(name.substring(start, end), k -> new Node());
+        start = end + 1;
+      }
+      node.hasSections = true;
+    } else {
+      exact.add(name);
+    }
+  }
+
+  /**
+   * @return whether this trie was built from the given local sections of a project hierarchy. The
+   *     lists are compared by identity, as {@link ProjectState} replaces them on every change.
+   */
+  boolean isBuiltFrom(List<List<SectionMatcher>> other) {
+    if (sources.size() != other.size()) {
+      return false;
+    }
+    for (int i = 0; i < sources.size(); i++) {
+      if (sources.get(i) != other.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Classify a reference by the sections that apply to it.
+   *
+   * @param ref name of a reference; must not be a reference pattern.
+   * @return key shared by all references governed by the same sections, or null if the reference
+   *     matches a section that may give it permissions of its own and must be evaluated alone.
+   */
+  @Nullable
+  Object classify(String ref) {
+    if (exact.contains(ref)) {
+      return null;
+    }
+    for (SectionMatcher sm : regexps) {
+      if (sm.match(ref, null)) {
+        return null;
+      }
+    }
+    for (RefPatternMatcher.ExpandParameters p : parameterized) {
+      // Same approximation as in PermissionCollection: a ref matching the prefix of a
+      // parameterized section is likely user specific.
+      if (p.matchPrefix(ref)) {
+        return null;
+      }
+    }
+
+    Node node = root;
+    Node key = root;
+    int start = 0;
+    for (int end = ref.indexOf('/'); end >= 0; end = ref.indexOf('/', start)) {
+      node = node.children.get(ref.substring(start, end));
+      if (node == null) {
+        break;
+      }
+      if (node.hasSections) {
+        key = node;
+      }
+      start = end + 1;
+    }
+    return key;
+  }
+}
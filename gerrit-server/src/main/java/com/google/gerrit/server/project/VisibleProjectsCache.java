@@ -0,0 +1,138 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.project;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.AccountGroup;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.index.IndexConfig;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.ProjectPermission;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the projects each account can access, so change queries can be restricted to them.
+ *
+ * <p>All entries are dropped when a project is evicted from the {@link ProjectCache}, i.e. when its
+ * access rights change, and when projects are created or deleted. An account's entry is recomputed
+ * when the groups the account is known to be a member of differ from the ones it was computed for.
+ */
+@Singleton
+public class VisibleProjectsCache {
+  private static final String CACHE_NAME = "visible_projects";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, Account.Id.class, Entry.class);
+        bind(VisibleProjectsCache.class);
+      }
+    };
+  }
+
+  private final Cache<Account.Id, Entry> byAccount;
+  private final PermissionBackend permissionBackend;
+  private final ProjectCache projectCache;
+  private final IndexConfig indexConfig;
+  private final AtomicLong generation = new AtomicLong();
+
+  @Inject
+  VisibleProjectsCache(
+      @Named(CACHE_NAME) Cache<Account.Id, Entry> byAccount,
+      PermissionBackend permissionBackend,
+      ProjectCache projectCache,
+      IndexConfig indexConfig) {
+    this.byAccount = byAccount;
+    this.permissionBackend = permissionBackend;
+    this.projectCache = projectCache;
+    this.indexConfig = indexConfig;
+  }
+
+  /**
+   * Returns the projects the user can access.
+   *
+   * <p>Only the results of identified users are cached.
+   *
+   * @param user the user.
+   * @return the projects the user can access, or an empty list if the user can access all projects
+   *     or more than fit into an index query.
+   */
+  public ImmutableList<Project.NameKey> get(CurrentUser user) {
+    if (!user.isIdentifiedUser()) {
+      return compute(user);
+    }
+    ImmutableSet<AccountGroup.UUID> groups =
+        ImmutableSet.copyOf(user.getEffectiveGroups().getKnownGroups());
+    Entry e = byAccount.getIfPresent(user.getAccountId());
+    if (e == null || !e.groups.equals(groups)) {
+      long gen = generation.get();
+      e = new Entry(groups, compute(user));
+      synchronized (this) {
+        // Do not cache a result computed from access rights evicted in the meantime.
+        if (generation.get() == gen) {
+          byAccount.put(user.getAccountId(), e);
+        }
+      }
+    }
+    return e.projects;
+  }
+
+  /** Drops all entries, as access rights or the set of projects changed. */
+  synchronized void evictAll() {
+    generation.incrementAndGet();
+    byAccount.invalidateAll();
+  }
+
+  private ImmutableList<Project.NameKey> compute(CurrentUser user) {
+    // One term of the index query is left for the rest of the query.
+    int max = indexConfig.maxTerms() - 1;
+    SortedSet<Project.NameKey> all = projectCache.all();
+    PermissionBackend.WithUser perm = permissionBackend.user(user);
+    List<Project.NameKey> visible = new ArrayList<>();
+    for (Project.NameKey p : all) {
+      if (perm.project(p).testOrFalse(ProjectPermission.ACCESS)) {
+        if (visible.size() == max) {
+          // Too many projects to filter by, there is no need to check the remaining ones.
+          return ImmutableList.of();
+        }
+        visible.add(p);
+      }
+    }
+    return visible.size() < all.size() ? ImmutableList.copyOf(visible) : ImmutableList.of();
+  }
+
+  static class Entry {
+    final ImmutableSet<AccountGroup.UUID> groups;
+    final ImmutableList<Project.NameKey> projects;
+
+    Entry(ImmutableSet<AccountGroup.UUID> groups, ImmutableList<Project.NameKey> projects) {
+      this.groups = groups;
+      this.projects = projects;
+    }
+  }
+}
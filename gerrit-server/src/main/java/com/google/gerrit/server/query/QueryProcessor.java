@@ -18,6 +18,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Ordering;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.GlobalCapability;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Field;
@@ -75,6 +76,7 @@ public abstract class QueryProcessor<T> {
   private boolean enforceVisibility = true;
   private int limitFromCaller;
   private Set<String> requestedFields;
+  private Object searchAfter;
 
   protected QueryProcessor(
       Provider<CurrentUser> userProvider,
@@ -100,6 +102,18 @@ public abstract class QueryProcessor<T> {
     return this;
   }
 
+  /**
+   * Resume the query after the given index-specific position.
+   *
+   * @param after position returned by a previous query, or null to start from the beginning. The
+   *     start offset is relative to this position.
+   * @return this.
+   */
+  public QueryProcessor<T> setSearchAfter(@Nullable Object after) {
+    searchAfter = after;
+    return this;
+  }
+
   public QueryProcessor<T> enforceVisibility(boolean enforce) {
     enforceVisibility = enforce;
     return this;
@@ -173,8 +187,10 @@ public abstract class QueryProcessor<T> {
       // Always bump limit by 1, even if this results in exceeding the permitted
       // max for this user. The only way to see if there are more entities is to
       // ask for one more result from the query.
-      QueryOptions opts = createOptions(indexConfig, start, limit + 1, getRequestedFields());
-      Predicate<T> pred = rewriter.rewrite(q, opts);
+      QueryOptions opts =
+          createOptions(indexConfig, start, limit + 1, getRequestedFields())
+              .withSearchAfter(searchAfter);
+      Predicate<T> pred = rewriter.rewrite(enforceVisibility ? restrictToVisible(q) : q, opts);
       if (enforceVisibility) {
         pred = enforceVisibility(pred);
       }
@@ -221,6 +237,18 @@ public abstract class QueryProcessor<T> {
    */
   protected abstract Predicate<T> enforceVisibility(Predicate<T> pred);
 
+  /**
+   * Invoked before the query is rewritten. Subclasses may narrow the query to entities the calling
+   * user can possibly see, so that the index skips the others instead of returning results that
+   * {@link #enforceVisibility(Predicate)} discards.
+   *
+   * @param q the query
+   * @return the narrowed query, or {@code q} itself.
+   */
+  protected Predicate<T> restrictToVisible(Predicate<T> q) {
+    return q;
+  }
+
   private Set<String> getRequestedFields() {
     if (requestedFields != null) {
       return requestedFields;
@@ -248,8 +276,21 @@ public abstract class QueryProcessor<T> {
   }
 
   private int getEffectiveLimit(Predicate<T> p) {
-    List<Integer> possibleLimits = new ArrayList<>(4);
-    possibleLimits.add(getBackendSupportedLimit());
+    return Math.min(getBackendSupportedLimit(), getTotalLimit(p));
+  }
+
+  /**
+   * Get the maximum number of results a query may return over all pages.
+   *
+   * <p>Unlike the limit of a single call to {@link #query(Predicate)}, this is not bounded by the
+   * maximum page size supported by the index.
+   *
+   * @param p the query.
+   * @return the smallest of the limits set by the caller, by the query and by the user's query
+   *     limit capability.
+   */
+  public int getTotalLimit(Predicate<T> p) {
+    List<Integer> possibleLimits = new ArrayList<>(3);
     possibleLimits.add(getPermittedLimit());
     if (limitFromCaller > 0) {
       possibleLimits.add(limitFromCaller);
@@ -1029,6 +1029,10 @@ public class ChangeData {
     return submitTypeRecord;
   }
 
+  public void setSubmitTypeRecord(SubmitTypeRecord submitTypeRecord) {
+    this.submitTypeRecord = submitTypeRecord;
+  }
+
   public void setMergeable(Boolean mergeable) {
     this.mergeable = mergeable;
   }
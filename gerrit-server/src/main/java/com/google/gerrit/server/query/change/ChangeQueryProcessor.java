@@ -19,6 +19,7 @@ import static com.google.gerrit.server.query.change.ChangeQueryBuilder.FIELD_LIM
 
 import com.google.gerrit.extensions.common.PluginDefinedInfo;
 import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.account.AccountLimits;
@@ -32,6 +33,9 @@ import com.google.gerrit.server.index.change.IndexedChangeQuery;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.project.ChangeControl;
+import com.google.gerrit.server.project.VisibleProjectsCache;
+import com.google.gerrit.server.query.AndPredicate;
+import com.google.gerrit.server.query.OrPredicate;
 import com.google.gerrit.server.query.Predicate;
 import com.google.gerrit.server.query.QueryProcessor;
 import com.google.inject.Inject;
@@ -52,11 +56,13 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
     PluginDefinedInfo create(ChangeData a, ChangeQueryProcessor qp, String plugin);
   }
 
+  private final IndexConfig indexConfig;
   private final Provider<ReviewDb> db;
   private final ChangeControl.GenericFactory changeControlFactory;
   private final ChangeNotes.Factory notesFactory;
   private final DynamicMap<ChangeAttributeFactory> attributeFactories;
   private final PermissionBackend permissionBackend;
+  private final VisibleProjectsCache visibleProjectsCache;
 
   static {
     // It is assumed that basic rewrites do not touch visibleto predicates.
@@ -77,7 +83,8 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
       ChangeControl.GenericFactory changeControlFactory,
       ChangeNotes.Factory notesFactory,
       DynamicMap<ChangeAttributeFactory> attributeFactories,
-      PermissionBackend permissionBackend) {
+      PermissionBackend permissionBackend,
+      VisibleProjectsCache visibleProjectsCache) {
     super(
         userProvider,
         limitsFactory,
@@ -87,11 +94,13 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
         indexes,
         rewriter,
         FIELD_LIMIT);
+    this.indexConfig = indexConfig;
     this.db = db;
     this.changeControlFactory = changeControlFactory;
     this.notesFactory = notesFactory;
     this.attributeFactories = attributeFactories;
     this.permissionBackend = permissionBackend;
+    this.visibleProjectsCache = visibleProjectsCache;
   }
 
   @Override
@@ -138,4 +147,58 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
             db, notesFactory, changeControlFactory, userProvider.get(), permissionBackend),
         start);
   }
+
+  /**
+   * Restricts the query to the projects the user can access, if there are few enough of them to
+   * fit into the index query.
+   *
+   * <p>Users who can see only some projects would otherwise have the index return changes of all
+   * projects, most of which {@link ChangeIsVisibleToPredicate} discards, restarting the query until
+   * enough visible changes are found. Ref and change level visibility is still checked by {@link
+   * #enforceVisibility(Predicate)}, so projects still listed after their access was revoked never
+   * reveal changes.
+   */
+  @Override
+  protected Predicate<ChangeData> restrictToVisible(Predicate<ChangeData> q) {
+    if (isLimitedToProjectOrChange(q)) {
+      return q;
+    }
+    List<Project.NameKey> visible = visibleProjectsCache.get(userProvider.get());
+    if (visible.isEmpty() || countTerms(q) + visible.size() > indexConfig.maxTerms()) {
+      return q;
+    }
+    List<Predicate<ChangeData>> projects = new ArrayList<>(visible.size());
+    for (Project.NameKey p : visible) {
+      projects.add(new ProjectPredicate(p.get()));
+    }
+    return Predicate.and(q, Predicate.or(projects));
+  }
+
+  /** Whether the query only matches changes of the named projects or the given changes. */
+  private static boolean isLimitedToProjectOrChange(Predicate<ChangeData> p) {
+    if (p instanceof ProjectPredicate
+        || p instanceof LegacyChangeIdPredicate
+        || p instanceof ChangeIdPredicate) {
+      return true;
+    }
+    if (p instanceof AndPredicate) {
+      return p.getChildren().stream().anyMatch(ChangeQueryProcessor::isLimitedToProjectOrChange);
+    }
+    if (p instanceof OrPredicate) {
+      return p.getChildren().stream().allMatch(ChangeQueryProcessor::isLimitedToProjectOrChange);
+    }
+    return false;
+  }
+
+  private static int countTerms(Predicate<?> p) {
+    int n = p.getChildCount();
+    if (n == 0) {
+      return 1;
+    }
+    int terms = 0;
+    for (int i = 0; i < n; i++) {
+      terms += countTerms(p.getChild(i));
+    }
+    return terms;
+  }
 }
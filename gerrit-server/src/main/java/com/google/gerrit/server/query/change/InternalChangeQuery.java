@@ -22,7 +22,10 @@ import static com.google.gerrit.server.query.change.ChangeStatusPredicate.open;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.Sets;
 import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
@@ -130,6 +133,37 @@ public class InternalChangeQuery extends InternalQuery<ChangeData> {
     return query(and(ref(branch), project(branch.getParentKey()), change(key)));
   }
 
+  /**
+   * Look up changes on a branch by several Change-Ids at once.
+   *
+   * <p>Unlike {@link #byBranchKey(Branch.NameKey, Change.Key)}, keys must be complete Change-Ids,
+   * as results are matched to keys exactly.
+   *
+   * @param branch branch the changes are destined to.
+   * @param keys complete Change-Ids to look up.
+   * @return changes on {@code branch} by Change-Id; keys without changes are absent.
+   * @throws OrmException if the index could not be queried.
+   */
+  public ListMultimap<Change.Key, ChangeData> byBranchKeys(
+      Branch.NameKey branch, Collection<Change.Key> keys) throws OrmException {
+    ListMultimap<Change.Key, ChangeData> result =
+        MultimapBuilder.hashKeys(keys.size()).arrayListValues(1).build();
+    // Account for all Change-Id predicates plus ref and project.
+    for (List<Change.Key> batch : Iterables.partition(keys, indexConfig.maxTerms() - 2)) {
+      List<Predicate<ChangeData>> preds = new ArrayList<>(batch.size());
+      for (Change.Key key : batch) {
+        preds.add(change(key));
+      }
+      for (ChangeData cd : query(and(ref(branch), project(branch.getParentKey()), or(preds)))) {
+        Change c = cd.change();
+        if (c != null) {
+          result.put(c.getKey(), cd);
+        }
+      }
+    }
+    return result;
+  }
+
   public List<ChangeData> byProject(Project.NameKey project) throws OrmException {
     return query(project(project));
   }
@@ -26,14 +26,18 @@ import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.account.AccountCache;
 import com.google.gerrit.server.account.Accounts;
 import com.google.gerrit.server.account.Emails;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.TrackingFooters;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.data.PatchSetAttribute;
 import com.google.gerrit.server.data.QueryStatsAttribute;
 import com.google.gerrit.server.events.EventFactory;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.index.IndexModule.IndexType;
+import com.google.gerrit.server.index.change.ChangeCursor;
 import com.google.gerrit.server.project.ChangeControl;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
+import com.google.gerrit.server.query.Predicate;
 import com.google.gerrit.server.query.QueryParseException;
 import com.google.gerrit.server.query.QueryResult;
 import com.google.gson.Gson;
@@ -51,6 +55,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
@@ -59,10 +64,19 @@ import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Change query implementation that outputs to a stream in the style of an SSH command. */
+/**
+ * Change query implementation that outputs to a stream in the style of an SSH command.
+ *
+ * <p>Results are read from the index one page at a time and written out as they are formatted, so
+ * only the changes of the current page are held in memory, no matter how many results the query
+ * returns.
+ */
 public class OutputStreamQuery {
   private static final Logger log = LoggerFactory.getLogger(OutputStreamQuery.class);
 
+  /** Number of changes read from the index at a time. */
+  private static final int PAGE_SIZE = 100;
+
   private static final DateTimeFormatter dtf = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss zzz");
 
   public enum OutputFormat {
@@ -80,8 +94,11 @@ public class OutputStreamQuery {
   private final EventFactory eventFactory;
   private final TrackingFooters trackingFooters;
   private final CurrentUser user;
+  private final boolean cursorPaging;
 
   private OutputFormat outputFormat = OutputFormat.TEXT;
+  private int start;
+  private boolean flushEachChange;
   private boolean includePatchSets;
   private boolean includeCurrentPatchSet;
   private boolean includeApprovals;
@@ -106,7 +123,8 @@ public class OutputStreamQuery {
       ChangeQueryProcessor queryProcessor,
       EventFactory eventFactory,
       TrackingFooters trackingFooters,
-      CurrentUser user) {
+      CurrentUser user,
+      @GerritServerConfig Config cfg) {
     this.db = db;
     this.accountCache = accountCache;
     this.accounts = accounts;
@@ -117,6 +135,8 @@ public class OutputStreamQuery {
     this.eventFactory = eventFactory;
     this.trackingFooters = trackingFooters;
     this.user = user;
+    // Only the Lucene index can resume a query from a cursor; other indexes skip to an offset.
+    this.cursorPaging = cfg.getEnum("index", null, "type", IndexType.LUCENE) == IndexType.LUCENE;
   }
 
   void setLimit(int n) {
@@ -124,7 +144,15 @@ public class OutputStreamQuery {
   }
 
   public void setStart(int n) {
-    queryProcessor.setStart(n);
+    start = n;
+  }
+
+  /**
+   * Flush the output after each change, instead of after each page of results. Lets the client
+   * process results as soon as they are formatted, at the cost of more, smaller writes.
+   */
+  public void setFlushEachChange(boolean on) {
+    flushEachChange = on;
   }
 
   public void setIncludePatchSets(boolean on) {
@@ -203,17 +231,44 @@ public class OutputStreamQuery {
 
         Map<Project.NameKey, Repository> repos = new HashMap<>();
         Map<Project.NameKey, RevWalk> revWalks = new HashMap<>();
-        QueryResult<ChangeData> results = queryProcessor.query(queryBuilder.parse(queryString));
+        Predicate<ChangeData> query = queryBuilder.parse(queryString);
+        int remaining = queryProcessor.getTotalLimit(query);
+        int rowCount = 0;
+        boolean more = false;
+        queryProcessor.setStart(start);
         try {
-          for (ChangeData d : results.entities()) {
-            show(buildChangeAttribute(d, repos, revWalks));
+          boolean nextPage = remaining > 0;
+          while (nextPage) {
+            queryProcessor.setLimit(Math.min(remaining, PAGE_SIZE));
+            QueryResult<ChangeData> results = queryProcessor.query(query);
+            List<ChangeData> page = results.entities();
+            for (ChangeData d : page) {
+              show(buildChangeAttribute(d, repos, revWalks));
+              if (flushEachChange) {
+                out.flush();
+              }
+            }
+            out.flush();
+
+            rowCount += page.size();
+            remaining -= page.size();
+            more = results.more();
+            nextPage = more && remaining > 0 && !page.isEmpty();
+            if (nextPage) {
+              if (cursorPaging) {
+                queryProcessor.setStart(0);
+                queryProcessor.setSearchAfter(ChangeCursor.after(page.get(page.size() - 1)));
+              } else {
+                queryProcessor.setStart(start + rowCount);
+              }
+            }
           }
         } finally {
           closeAll(revWalks.values(), repos.values());
         }
 
-        stats.rowCount = results.entities().size();
-        stats.moreChanges = results.more();
+        stats.rowCount = rowCount;
+        stats.moreChanges = more;
         stats.runTimeMilliseconds = TimeUtil.nowMs() - stats.runTimeMilliseconds;
         show(stats);
       } catch (OrmException err) {
@@ -26,6 +26,7 @@ import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.server.change.ChangeJson;
+import com.google.gerrit.server.index.change.ChangeCursor;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.query.QueryParseException;
 import com.google.gerrit.server.query.QueryResult;
@@ -83,6 +84,14 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
     imp.setStart(start);
   }
 
+  @Option(
+    name = "--after",
+    aliases = {"-A"},
+    metaVar = "CURSOR",
+    usage = "Resume after the change with this cursor from a previous page of results"
+  )
+  private String after;
+
   @Inject
   QueryChanges(ChangeJson.Factory json, ChangeQueryBuilder qb, ChangeQueryProcessor qp) {
     this.json = json;
@@ -135,6 +144,10 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
       throw new QueryParseException("limit of 10 queries");
     }
 
+    if (after != null) {
+      imp.setSearchAfter(ChangeCursor.parse(after));
+    }
+
     int cnt = queries.size();
     List<QueryResult<ChangeData>> results = imp.query(qb.parse(queries));
 
@@ -151,8 +164,11 @@ public class QueryChanges implements RestReadView<TopLevelResource> {
 
     for (int n = 0; n < cnt; n++) {
       List<ChangeInfo> info = res.get(n);
-      if (results.get(n).more()) {
-        info.get(info.size() - 1)._moreChanges = true;
+      QueryResult<ChangeData> r = results.get(n);
+      if (r.more() && !info.isEmpty()) {
+        ChangeInfo last = info.get(info.size() - 1);
+        last._moreChanges = true;
+        last._cursor = ChangeCursor.after(r.entities().get(r.entities().size() - 1)).encode();
       }
     }
     return res;
@@ -0,0 +1,240 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.common;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import com.google.gerrit.common.UserScopedEventQueues.FullQueuePolicy;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UserScopedEventQueuesTest {
+  private ExecutorService executor;
+  private OneOffRequestContext requestContext;
+  private AtomicInteger dropped;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(2);
+    ManualRequestContext ctx = createNiceMock(ManualRequestContext.class);
+    requestContext = createMock(OneOffRequestContext.class);
+    expect(requestContext.open()).andStubReturn(ctx);
+    replay(ctx, requestContext);
+    dropped = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    executor.awaitTermination(10, SECONDS);
+  }
+
+  @Test
+  public void eventsAreDeliveredToEachListenerInOrder() throws Exception {
+    UserScopedEventQueues queues = newQueues(1000, FullQueuePolicy.DROP);
+    TestListener first = new TestListener(newUser(), 100);
+    TestListener second = new TestListener(newUser(), 100);
+    EventVisibility visibility = new EventVisibility(u -> true);
+    for (int i = 0; i < 100; i++) {
+      TestEvent event = new TestEvent(i);
+      queues.offer(first, event, visibility);
+      queues.offer(second, event, visibility);
+    }
+
+    first.awaitDelivered();
+    second.awaitDelivered();
+    assertThat(first.delivered()).containsExactlyElementsIn(range(100)).inOrder();
+    assertThat(second.delivered()).containsExactlyElementsIn(range(100)).inOrder();
+    assertThat(dropped.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void eventsForFullQueueAreDropped() throws Exception {
+    UserScopedEventQueues queues = newQueues(2, FullQueuePolicy.DROP);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    TestListener slow =
+        new TestListener(newUser(), 3) {
+          @Override
+          public void onEvent(Event event) {
+            if (((TestEvent) event).number == 0) {
+              blocked.countDown();
+              await(unblock);
+            }
+            super.onEvent(event);
+          }
+        };
+    TestListener fast = new TestListener(newUser(), 1);
+    EventVisibility visibility = new EventVisibility(u -> true);
+
+    queues.offer(slow, new TestEvent(0), visibility);
+    await(blocked);
+    // Event 0 is being delivered, events 1 and 2 fill the queue, event 3 does not fit.
+    for (int i = 1; i < 4; i++) {
+      queues.offer(slow, new TestEvent(i), visibility);
+    }
+    assertThat(dropped.get()).isEqualTo(1);
+
+    // A slow listener does not hold up the delivery of events to other listeners.
+    queues.offer(fast, new TestEvent(0), visibility);
+    fast.awaitDelivered();
+    assertThat(fast.delivered()).containsExactly(0);
+
+    unblock.countDown();
+    slow.awaitDelivered();
+    assertThat(slow.delivered()).containsExactly(0, 1, 2).inOrder();
+  }
+
+  @Test
+  public void visibilityIsCheckedOnDispatchThreadsOncePerUser() throws Exception {
+    UserScopedEventQueues queues = newQueues(1000, FullQueuePolicy.DROP);
+    CurrentUser allowed = newUser();
+    CurrentUser denied = newUser();
+    Set<Thread> checkThreads = new CopyOnWriteArraySet<>();
+    AtomicInteger checks = new AtomicInteger();
+    EventVisibility visibility =
+        new EventVisibility(
+            u -> {
+              checkThreads.add(Thread.currentThread());
+              checks.incrementAndGet();
+              return u == allowed;
+            });
+    TestListener allowed1 = new TestListener(allowed, 1);
+    TestListener allowed2 = new TestListener(allowed, 1);
+    TestListener denied1 = new TestListener(denied, 1);
+    TestListener last = new TestListener(allowed, 1);
+
+    queues.offer(allowed1, new TestEvent(0), visibility);
+    queues.offer(denied1, new TestEvent(0), visibility);
+    allowed1.awaitDelivered();
+    queues.offer(allowed2, new TestEvent(0), visibility);
+    allowed2.awaitDelivered();
+    // Deliveries to one listener are in order, so once the last event is delivered the check for
+    // the denied user is done too.
+    queues.offer(denied1, new TestEvent(1), new EventVisibility(u -> true));
+    denied1.awaitDelivered();
+    queues.offer(last, new TestEvent(0), visibility);
+    last.awaitDelivered();
+
+    assertThat(allowed1.delivered()).containsExactly(0);
+    assertThat(allowed2.delivered()).containsExactly(0);
+    assertThat(denied1.delivered()).containsExactly(1);
+    assertThat(checks.get()).isEqualTo(2);
+    assertThat(checkThreads).isNotEmpty();
+    assertThat(checkThreads).doesNotContain(Thread.currentThread());
+  }
+
+  private UserScopedEventQueues newQueues(int queueSize, FullQueuePolicy policy) {
+    return new UserScopedEventQueues(
+        executor,
+        requestContext,
+        queueSize,
+        policy,
+        new DisabledMetricMaker() {
+          @Override
+          public Counter0 newCounter(String name, Description desc) {
+            return new Counter0() {
+              @Override
+              public void incrementBy(long value) {
+                dropped.addAndGet((int) value);
+              }
+
+              @Override
+              public void remove() {}
+            };
+          }
+        });
+  }
+
+  private static CurrentUser newUser() {
+    CurrentUser user = createNiceMock(CurrentUser.class);
+    replay(user);
+    return user;
+  }
+
+  private static List<Integer> range(int n) {
+    return IntStream.range(0, n).boxed().collect(toList());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertThat(latch.await(10, SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static class TestEvent extends Event {
+    final int number;
+
+    TestEvent(int number) {
+      super("test-event");
+      this.number = number;
+    }
+  }
+
+  private static class TestListener implements UserScopedEventListener {
+    private final CurrentUser user;
+    private final List<Integer> delivered = new CopyOnWriteArrayList<>();
+    private final CountDownLatch done;
+
+    TestListener(CurrentUser user, int expected) {
+      this.user = user;
+      this.done = new CountDownLatch(expected);
+    }
+
+    @Override
+    public void onEvent(Event event) {
+      delivered.add(((TestEvent) event).number);
+      done.countDown();
+    }
+
+    @Override
+    public CurrentUser getUser() {
+      return user;
+    }
+
+    void awaitDelivered() {
+      await(done);
+    }
+
+    List<Integer> delivered() {
+      return delivered;
+    }
+  }
+}
@@ -0,0 +1,261 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.AccountGroup;
+import com.google.gerrit.server.IdentifiedUser;
+import com.google.gerrit.testutil.GerritBaseTests;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncludingGroupMembershipTest extends GerritBaseTests {
+  private static final AccountGroup.UUID A = internalGroup("a");
+  private static final AccountGroup.UUID B = internalGroup("b");
+  private static final AccountGroup.UUID C = internalGroup("c");
+  private static final AccountGroup.UUID D = internalGroup("d");
+  private static final AccountGroup.UUID OTHER = internalGroup("other");
+  private static final AccountGroup.UUID EXTERNAL = new AccountGroup.UUID("ldap:cn=devs");
+
+  // Maps each group to the groups that directly include it.
+  private final SetMultimap<AccountGroup.UUID, AccountGroup.UUID> parents = HashMultimap.create();
+  private final AtomicInteger closureLoads = new AtomicInteger();
+  private GroupIncludeCacheImpl includeCache;
+
+  @Before
+  public void setUp() {
+    LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> parentGroups =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>>() {
+                  @Override
+                  public ImmutableList<AccountGroup.UUID> load(AccountGroup.UUID key) {
+                    return ImmutableList.copyOf(parents.get(key));
+                  }
+                });
+    LoadingCache<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>> subgroups =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<AccountGroup.UUID, ImmutableList<AccountGroup.UUID>>() {
+                  @Override
+                  public ImmutableList<AccountGroup.UUID> load(AccountGroup.UUID key) {
+                    return parents
+                        .entries()
+                        .stream()
+                        .filter(e -> e.getValue().equals(key))
+                        .map(Map.Entry::getKey)
+                        .collect(toImmutableList());
+                  }
+                });
+    LoadingCache<ImmutableSet<AccountGroup.UUID>, ImmutableSet<AccountGroup.UUID>> closure =
+        CacheBuilder.newBuilder()
+            .build(
+                new GroupIncludeCacheImpl.ParentGroupsClosureLoader(parentGroups) {
+                  @Override
+                  public ImmutableSet<AccountGroup.UUID> load(ImmutableSet<AccountGroup.UUID> key)
+                      throws ExecutionException {
+                    closureLoads.incrementAndGet();
+                    return super.load(key);
+                  }
+                });
+    LoadingCache<String, ImmutableList<AccountGroup.UUID>> external =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<String, ImmutableList<AccountGroup.UUID>>() {
+                  @Override
+                  public ImmutableList<AccountGroup.UUID> load(String key) {
+                    return parents
+                        .keySet()
+                        .stream()
+                        .filter(g -> !AccountGroup.isInternalGroup(g))
+                        .collect(toImmutableList());
+                  }
+                });
+    includeCache = new GroupIncludeCacheImpl(subgroups, parentGroups, closure, external);
+  }
+
+  @Test
+  public void nestedInclusion() {
+    include(A, B);
+    include(B, C);
+
+    GroupMembership membership = membershipOf(C);
+    assertThat(membership.contains(A)).isTrue();
+    assertThat(membership.contains(B)).isTrue();
+    assertThat(membership.contains(C)).isTrue();
+    assertThat(membership.contains(OTHER)).isFalse();
+    assertThat(membership.contains(null)).isFalse();
+    assertThat(membership.getKnownGroups()).containsExactly(A, B, C);
+
+    // Membership in the middle of the chain does not extend to included groups.
+    assertThat(membershipOf(B).getKnownGroups()).containsExactly(A, B);
+  }
+
+  @Test
+  public void diamondInclusion() {
+    include(A, B);
+    include(A, C);
+    include(B, D);
+    include(C, D);
+
+    assertThat(membershipOf(D).getKnownGroups()).containsExactly(A, B, C, D);
+    assertThat(includeCache.transitiveParentGroupsOf(ImmutableSet.of(B, C)))
+        .containsExactly(A, B, C);
+  }
+
+  @Test
+  public void cyclicInclusion() {
+    include(A, B);
+    include(B, C);
+    include(C, A);
+
+    assertThat(membershipOf(A).getKnownGroups()).containsExactly(A, B, C);
+    assertThat(membershipOf(D).getKnownGroups()).containsExactly(D);
+  }
+
+  @Test
+  public void externalGroupIncludedInInternalGroup() {
+    include(A, EXTERNAL);
+    include(B, A);
+
+    GroupMembership membership = membershipOf(ImmutableSet.of(), ImmutableSet.of(EXTERNAL));
+    assertThat(membership.contains(A)).isTrue();
+    assertThat(membership.contains(B)).isTrue();
+    assertThat(membership.getKnownGroups()).containsExactly(A, B, EXTERNAL);
+
+    GroupMembership nonMember = membershipOf(ImmutableSet.of(), ImmutableSet.of());
+    assertThat(nonMember.contains(A)).isFalse();
+    assertThat(nonMember.getKnownGroups()).isEmpty();
+  }
+
+  @Test
+  public void containsAnyOfAndIntersection() {
+    include(A, B);
+    include(B, C);
+
+    GroupMembership membership = membershipOf(C);
+    assertThat(membership.containsAnyOf(ImmutableList.of(OTHER, A))).isTrue();
+    assertThat(membership.containsAnyOf(ImmutableList.of(C))).isTrue();
+    assertThat(membership.containsAnyOf(Arrays.asList(OTHER, null))).isFalse();
+    assertThat(membership.containsAnyOf(ImmutableList.of())).isFalse();
+    assertThat(membership.intersection(Arrays.asList(A, OTHER, C, null))).containsExactly(A, C);
+    assertThat(membership.intersection(ImmutableList.of(OTHER, D))).isEmpty();
+  }
+
+  @Test
+  public void closureIsSharedByUsersWithSameGroups() {
+    include(A, B);
+
+    assertThat(membershipOf(B).contains(A)).isTrue();
+    assertThat(membershipOf(B).contains(A)).isTrue();
+    assertThat(closureLoads.get()).isEqualTo(1);
+
+    // A user with other direct groups has a closure of their own.
+    assertThat(membershipOf(A).contains(B)).isFalse();
+    assertThat(closureLoads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void staleAncestorsAreDroppedWhenIncludeIsRemoved() {
+    include(A, B);
+    include(B, C);
+    assertThat(membershipOf(C).getKnownGroups()).containsExactly(A, B, C);
+
+    exclude(B, C);
+    assertThat(membershipOf(C).getKnownGroups()).containsExactly(C);
+
+    // The closure of other groups in the hierarchy is recomputed as well.
+    assertThat(membershipOf(B).getKnownGroups()).containsExactly(A, B);
+  }
+
+  @Test
+  public void newAncestorsAreFoundWhenIncludeIsAdded() {
+    include(A, B);
+    assertThat(membershipOf(B).contains(OTHER)).isFalse();
+
+    include(OTHER, A);
+    assertThat(membershipOf(B).contains(OTHER)).isTrue();
+  }
+
+  @Test
+  public void changedDirectMembershipUsesClosureOfNewGroups() {
+    include(A, B);
+    include(OTHER, C);
+    assertThat(membershipOf(B).getKnownGroups()).containsExactly(A, B);
+
+    // The user was moved from B to C; no eviction is needed.
+    assertThat(membershipOf(C).getKnownGroups()).containsExactly(C, OTHER);
+  }
+
+  /** Adds {@code child} to {@code parent}, evicting the caches like {@code GroupsUpdate}. */
+  private void include(AccountGroup.UUID parent, AccountGroup.UUID child) {
+    parents.put(child, parent);
+    includeCache.evictParentGroupsOf(child);
+    includeCache.evictSubgroupsOf(parent);
+  }
+
+  /** Removes {@code child} from {@code parent}, evicting the caches like {@code GroupsUpdate}. */
+  private void exclude(AccountGroup.UUID parent, AccountGroup.UUID child) {
+    parents.remove(child, parent);
+    includeCache.evictParentGroupsOf(child);
+    includeCache.evictSubgroupsOf(parent);
+  }
+
+  private IncludingGroupMembership membershipOf(AccountGroup.UUID directGroup) {
+    return membershipOf(ImmutableSet.of(directGroup), ImmutableSet.of());
+  }
+
+  private IncludingGroupMembership membershipOf(
+      Set<AccountGroup.UUID> directGroups, Set<AccountGroup.UUID> externalGroups) {
+    AccountState state =
+        new AccountState(
+            new Account(new Account.Id(1), TimeUtil.nowTs()),
+            new HashSet<>(directGroups),
+            ImmutableSet.of(),
+            ImmutableMap.of());
+    IdentifiedUser user = createNiceMock(IdentifiedUser.class);
+    expect(user.state()).andStubReturn(state);
+    expect(user.getEffectiveGroups()).andStubReturn(new ListGroupMembership(externalGroups));
+    replay(user);
+    return new IncludingGroupMembership(includeCache, user);
+  }
+
+  private static AccountGroup.UUID internalGroup(String name) {
+    return new AccountGroup.UUID(Hashing.sha1().hashString(name, UTF_8).toString());
+  }
+}
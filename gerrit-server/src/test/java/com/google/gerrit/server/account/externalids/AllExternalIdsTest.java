@@ -0,0 +1,66 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account.externalids;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.gerrit.reviewdb.client.Account;
+import java.io.IOException;
+import org.junit.Test;
+
+public class AllExternalIdsTest {
+  @Test
+  public void serializeEmpty() throws Exception {
+    assertRoundTrip(AllExternalIds.create(ImmutableListMultimap.of()));
+  }
+
+  @Test
+  public void serializeMultipleExternalIds() throws Exception {
+    Account.Id id1 = new Account.Id(1001);
+    Account.Id id2 = new Account.Id(1002);
+    AllExternalIds allExternalIds =
+        AllExternalIds.create(
+            ImmutableListMultimap.<Account.Id, ExternalId>builder()
+                .put(id1, ExternalId.create("gerrit", "foo", id1))
+                .put(id1, ExternalId.createEmail(id1, "foo@example.com"))
+                .put(id1, ExternalId.create("username", "foo", id1, null, "bcrypt:4:abc:def"))
+                .put(id2, ExternalId.create(null, "no:scheme", id2))
+                .build());
+
+    AllExternalIds roundTrip = assertRoundTrip(allExternalIds);
+    assertThat(roundTrip.byEmail().keySet()).containsExactly("foo@example.com");
+  }
+
+  @Test(expected = IOException.class)
+  public void deserializeTruncated() throws Exception {
+    Account.Id id = new Account.Id(1001);
+    byte[] raw =
+        AllExternalIds.Serializer.INSTANCE.serialize(
+            AllExternalIds.create(
+                ImmutableListMultimap.of(id, ExternalId.createEmail(id, "foo@example.com"))));
+    byte[] truncated = new byte[raw.length - 1];
+    System.arraycopy(raw, 0, truncated, 0, truncated.length);
+    AllExternalIds.Serializer.INSTANCE.deserialize(truncated);
+  }
+
+  private static AllExternalIds assertRoundTrip(AllExternalIds allExternalIds) throws IOException {
+    AllExternalIds roundTrip =
+        AllExternalIds.Serializer.INSTANCE.deserialize(
+            AllExternalIds.Serializer.INSTANCE.serialize(allExternalIds));
+    assertThat(roundTrip).isEqualTo(allExternalIds);
+    return roundTrip;
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account.externalids;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExternalIdCacheLoaderTest {
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final Account.Id ACCOUNT_1 = new Account.Id(1001);
+  private static final Account.Id ACCOUNT_2 = new Account.Id(1002);
+
+  private InMemoryRepositoryManager repoManager;
+  private Cache<ObjectId, AllExternalIds> cache;
+  private ExternalIdCacheLoader loader;
+
+  @Before
+  public void setUp() throws Exception {
+    repoManager = new InMemoryRepositoryManager();
+    repoManager.createRepository(ALL_USERS);
+    cache = CacheBuilder.newBuilder().build();
+    loader =
+        new ExternalIdCacheLoader(
+            repoManager,
+            ALL_USERS,
+            new ExternalIdReader(repoManager, ALL_USERS, new DisabledMetricMaker()),
+            () -> cache,
+            new DisabledMetricMaker());
+  }
+
+  @Test
+  public void loadAppliesChangesSinceCachedRevision() throws Exception {
+    ExternalId updated = ExternalId.createWithEmail("foo", "bar", ACCOUNT_1, "bar@example.com");
+    ExternalId removed = ExternalId.createEmail(ACCOUNT_2, "removed@example.com");
+    ObjectId rev1 =
+        update(
+            (rw, ins, noteMap) -> {
+              ExternalIdsUpdate.insert(rw, ins, noteMap, ExternalId.create("foo", "1", ACCOUNT_1));
+              ExternalIdsUpdate.insert(rw, ins, noteMap, updated);
+              ExternalIdsUpdate.insert(rw, ins, noteMap, removed);
+            });
+    cache.put(rev1, loader.load(rev1));
+
+    update(
+        (rw, ins, noteMap) -> {
+          ExternalIdsUpdate.insert(rw, ins, noteMap, ExternalId.create("foo", "2", ACCOUNT_2));
+          ExternalIdsUpdate.upsert(
+              rw,
+              ins,
+              noteMap,
+              ExternalId.createWithEmail("foo", "bar", ACCOUNT_1, "new@example.com"));
+        });
+    ObjectId rev3 =
+        update(
+            (rw, ins, noteMap) -> {
+              ExternalIdsUpdate.remove(rw, noteMap, removed);
+              ExternalIdsUpdate.insert(
+                  rw, ins, noteMap, ExternalId.createEmail(ACCOUNT_2, "added@example.com"));
+            });
+
+    AllExternalIds differential = loader.load(rev3);
+    assertThat(differential.byEmail().keySet())
+        .containsExactly("new@example.com", "added@example.com");
+    assertThat(differential.byAccount().get(ACCOUNT_1)).hasSize(2);
+    assertThat(differential.byAccount().get(ACCOUNT_2)).hasSize(2);
+
+    cache.invalidateAll();
+    assertThat(differential).isEqualTo(loader.load(rev3));
+  }
+
+  @Test
+  public void loadStartsFromCachedAncestor() throws Exception {
+    ObjectId rev1 =
+        update(
+            (rw, ins, noteMap) ->
+                ExternalIdsUpdate.insert(
+                    rw, ins, noteMap, ExternalId.create("foo", "1", ACCOUNT_1)));
+    ObjectId rev2 =
+        update(
+            (rw, ins, noteMap) ->
+                ExternalIdsUpdate.insert(
+                    rw, ins, noteMap, ExternalId.create("foo", "2", ACCOUNT_1)));
+
+    // Only loading the changes since the cached revision keeps an ID that is not in the notes.
+    ExternalId sentinel = ExternalId.create("sentinel", "1", ACCOUNT_2);
+    cache.put(rev1, AllExternalIds.create(ImmutableSetMultimap.of(ACCOUNT_2, sentinel)));
+
+    assertThat(loader.load(rev2).byAccount().get(ACCOUNT_2)).containsExactly(sentinel);
+  }
+
+  @Test
+  public void loadWithoutCachedAncestorReadsAllNotes() throws Exception {
+    ObjectId rev1 =
+        update(
+            (rw, ins, noteMap) ->
+                ExternalIdsUpdate.insert(
+                    rw, ins, noteMap, ExternalId.create("foo", "0", ACCOUNT_1)));
+    ObjectId rev = rev1;
+    for (int i = 1; i <= 11; i++) {
+      ExternalId extId = ExternalId.create("foo", Integer.toString(i), ACCOUNT_1);
+      rev = update((rw, ins, noteMap) -> ExternalIdsUpdate.insert(rw, ins, noteMap, extId));
+    }
+
+    // The cached revision is more commits back than the loader looks for one.
+    ExternalId sentinel = ExternalId.create("sentinel", "1", ACCOUNT_2);
+    cache.put(rev1, AllExternalIds.create(ImmutableSetMultimap.of(ACCOUNT_2, sentinel)));
+
+    AllExternalIds all = loader.load(rev);
+    assertThat(all.byAccount().keySet()).containsExactly(ACCOUNT_1);
+    assertThat(all.byAccount().get(ACCOUNT_1)).hasSize(12);
+  }
+
+  @Test
+  public void loadOfFirstRevisionReadsAllNotes() throws Exception {
+    ObjectId rev1 =
+        update(
+            (rw, ins, noteMap) -> {
+              ExternalIdsUpdate.insert(rw, ins, noteMap, ExternalId.create("foo", "1", ACCOUNT_1));
+              ExternalIdsUpdate.insert(rw, ins, noteMap, ExternalId.create("foo", "2", ACCOUNT_2));
+            });
+
+    AllExternalIds all = loader.load(rev1);
+    assertThat(all.byAccount().keySet()).containsExactly(ACCOUNT_1, ACCOUNT_2);
+  }
+
+  @Test
+  public void loadOfMissingBranchIsEmpty() throws Exception {
+    assertThat(loader.load(ObjectId.zeroId()).byAccount()).isEmpty();
+  }
+
+  private ObjectId update(NoteMapUpdate update) throws Exception {
+    try (Repository repo = repoManager.openRepository(ALL_USERS);
+        RevWalk rw = new RevWalk(repo);
+        ObjectInserter ins = repo.newObjectInserter()) {
+      ObjectId rev = ExternalIdReader.readRevision(repo);
+      NoteMap noteMap = ExternalIdReader.readNoteMap(rw, rev);
+      update.apply(rw, ins, noteMap);
+      PersonIdent ident = new PersonIdent("Gerrit Server", "noreply@gerritcodereview.com");
+      return ExternalIdsUpdate.commit(
+          repo, rw, ins, rev, noteMap, "Update external IDs", ident, ident);
+    }
+  }
+
+  @FunctionalInterface
+  private interface NoteMapUpdate {
+    void apply(RevWalk rw, ObjectInserter ins, NoteMap noteMap) throws Exception;
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.change.BlameResultCache.Blame;
+import com.google.gerrit.server.change.BlameResultCache.BlameRegion;
+import com.google.gerrit.server.change.BlameResultCache.Key;
+import java.util.List;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class BlameResultCacheTest {
+  private static final ObjectId A = ObjectId.fromString("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+  private static final ObjectId B = ObjectId.fromString("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+  private static final ObjectId C = ObjectId.fromString("cccccccccccccccccccccccccccccccccccccccc");
+
+  @Test
+  public void unchangedFileKeepsBlame() {
+    List<BlameRegion> old = ImmutableList.of(region(A, 2), region(B, 1));
+    assertThat(apply(old, "a\nb\nc\n", "a\nb\nc\n")).isEqualTo(old);
+  }
+
+  @Test
+  public void insertedLinesAreAttributedToCommit() {
+    List<BlameRegion> old = ImmutableList.of(region(A, 2), region(B, 1));
+    assertThat(apply(old, "a\nb\nc\n", "a\nnew\nb\nc\nend\n"))
+        .containsExactly(region(A, 1), region(C, 1), region(A, 1), region(B, 1), region(C, 1))
+        .inOrder();
+  }
+
+  @Test
+  public void replacedAndDeletedLines() {
+    List<BlameRegion> old = ImmutableList.of(region(A, 1), region(B, 2), region(A, 1));
+    assertThat(apply(old, "a\nb\nc\nd\n", "a\nx\nd\n"))
+        .containsExactly(region(A, 1), region(C, 1), region(A, 1))
+        .inOrder();
+  }
+
+  @Test
+  public void adjacentRegionsWithSameSourceAreMerged() {
+    List<BlameRegion> old = ImmutableList.of(region(A, 1), region(B, 1), region(A, 1));
+    assertThat(apply(old, "a\nb\nc\n", "a\nc\n")).containsExactly(region(A, 2));
+  }
+
+  @Test
+  public void serialize() throws Exception {
+    Key key = Key.create(A, "dir/file.txt");
+    assertThat(Key.Serializer.INSTANCE.deserialize(Key.Serializer.INSTANCE.serialize(key)))
+        .isEqualTo(key);
+
+    Blame blame = Blame.create(ImmutableList.of(region(A, 3), region(B, 1)));
+    assertThat(Blame.Serializer.INSTANCE.deserialize(Blame.Serializer.INSTANCE.serialize(blame)))
+        .isEqualTo(blame);
+  }
+
+  private static List<BlameRegion> apply(List<BlameRegion> old, String oldText, String newText) {
+    RawText a = new RawText(oldText.getBytes(UTF_8));
+    RawText b = new RawText(newText.getBytes(UTF_8));
+    EditList edits = new HistogramDiff().diff(RawTextComparator.DEFAULT, a, b);
+    return BlameResultCache.applyEdits(old, edits, b.size(), C, author(C));
+  }
+
+  private static BlameRegion region(ObjectId commit, int count) {
+    return BlameRegion.create(commit, author(commit), count);
+  }
+
+  private static String author(ObjectId commit) {
+    return "Author " + commit.name().charAt(0);
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.mail.send;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.mail.Address;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SmtpEmailSenderTest {
+  private FakeSmtpServer server;
+  private Config cfg;
+  private SmtpEmailSender sender;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeSmtpServer();
+    cfg = new Config();
+    cfg.setString("sendemail", null, "smtpserver", "127.0.0.1");
+    cfg.setInt("sendemail", null, "smtpserverport", server.getPort());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (sender != null) {
+      sender.stop();
+    }
+    server.close();
+  }
+
+  @Test
+  public void reusesConnection() throws Exception {
+    sender = new SmtpEmailSender(cfg, new DisabledMetricMaker());
+    send("first");
+    send("second");
+    send("third");
+
+    assertThat(server.connections.get()).isEqualTo(1);
+    assertThat(server.messages).containsExactly("first", "second", "third").inOrder();
+  }
+
+  @Test
+  public void newConnectionPerMessageWithoutPool() throws Exception {
+    cfg.setInt("sendemail", null, "connectionPoolSize", 0);
+    sender = new SmtpEmailSender(cfg, new DisabledMetricMaker());
+    send("first");
+    send("second");
+
+    assertThat(server.connections.get()).isEqualTo(2);
+    assertThat(server.messages).containsExactly("first", "second").inOrder();
+  }
+
+  @Test
+  public void reconnectsAfterMaxMessagesPerConnection() throws Exception {
+    cfg.setInt("sendemail", null, "maxMessagesPerConnection", 2);
+    sender = new SmtpEmailSender(cfg, new DisabledMetricMaker());
+    send("first");
+    send("second");
+    send("third");
+
+    assertThat(server.connections.get()).isEqualTo(2);
+    assertThat(server.messages).containsExactly("first", "second", "third").inOrder();
+  }
+
+  @Test
+  public void reconnectsIfServerClosedConnection() throws Exception {
+    sender = new SmtpEmailSender(cfg, new DisabledMetricMaker());
+    send("first");
+    server.dropConnections();
+    send("second");
+
+    assertThat(server.connections.get()).isEqualTo(2);
+    assertThat(server.messages).containsExactly("first", "second").inOrder();
+  }
+
+  private void send(String body) throws Exception {
+    sender.send(
+        new Address("Sender", "sender@example.com"),
+        ImmutableList.of(new Address("Recipient", "recipient@example.com")),
+        ImmutableMap.of("Subject", new EmailHeader.String("test")),
+        body);
+  }
+
+  /** Minimal SMTP server accepting all messages and recording their bodies. */
+  private static class FakeSmtpServer implements AutoCloseable {
+    final AtomicInteger connections = new AtomicInteger();
+    final List<String> messages = new CopyOnWriteArrayList<>();
+    private final List<Socket> open = new CopyOnWriteArrayList<>();
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+
+    FakeSmtpServer() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      acceptor = new Thread(this::acceptLoop, "FakeSmtpServer");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    void dropConnections() throws IOException {
+      for (Socket s : open) {
+        s.close();
+      }
+    }
+
+    private void acceptLoop() {
+      while (!serverSocket.isClosed()) {
+        try {
+          Socket s = serverSocket.accept();
+          connections.incrementAndGet();
+          open.add(s);
+          Thread t = new Thread(() -> serve(s), "FakeSmtpSession");
+          t.setDaemon(true);
+          t.start();
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    private void serve(Socket s) {
+      try (Socket socket = s;
+          BufferedReader in =
+              new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+          Writer out = new OutputStreamWriter(socket.getOutputStream(), UTF_8)) {
+        reply(out, "220 localhost ESMTP");
+        String line;
+        while ((line = in.readLine()) != null) {
+          String cmd = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line;
+          switch (cmd) {
+            case "DATA":
+              reply(out, "354 End data with <CR><LF>.<CR><LF>");
+              messages.add(readBody(in));
+              reply(out, "250 OK");
+              break;
+            case "QUIT":
+              reply(out, "221 Bye");
+              return;
+            default:
+              reply(out, "250 OK");
+              break;
+          }
+        }
+      } catch (IOException e) {
+        // Connection dropped.
+      } finally {
+        open.remove(s);
+      }
+    }
+
+    private static String readBody(BufferedReader in) throws IOException {
+      // Skip the headers, then collect the body up to the terminating dot.
+      String line;
+      while ((line = in.readLine()) != null && !line.isEmpty()) {}
+      StringBuilder body = new StringBuilder();
+      while ((line = in.readLine()) != null && !line.equals(".")) {
+        body.append(line);
+      }
+      return body.toString();
+    }
+
+    private static void reply(Writer out, String reply) throws IOException {
+      out.write(reply + "\r\n");
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+      dropConnections();
+    }
+  }
+}
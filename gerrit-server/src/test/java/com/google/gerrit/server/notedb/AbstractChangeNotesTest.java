@@ -18,6 +18,8 @@ import static com.google.inject.Scopes.SINGLETON;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gerrit.common.TimeUtil;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.extensions.config.FactoryModule;
@@ -171,6 +173,9 @@ public abstract class AbstractChangeNotesTest extends GerritBaseTests {
                     .toInstance(serverIdent);
                 bind(GitReferenceUpdated.class).toInstance(GitReferenceUpdated.DISABLED);
                 bind(MetricMaker.class).to(DisabledMetricMaker.class);
+                bind(ListeningExecutorService.class)
+                    .annotatedWith(ChangeNotesScanExecutor.class)
+                    .toInstance(MoreExecutors.newDirectExecutorService());
                 bind(ReviewDb.class).toProvider(Providers.<ReviewDb>of(null));
 
                 MutableNotesMigration migration = MutableNotesMigration.newDisabled();
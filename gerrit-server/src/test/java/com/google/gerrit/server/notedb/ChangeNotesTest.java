@@ -22,6 +22,9 @@ import static com.google.gerrit.server.notedb.ReviewerStateInternal.CC;
 import static com.google.gerrit.server.notedb.ReviewerStateInternal.REMOVED;
 import static com.google.gerrit.server.notedb.ReviewerStateInternal.REVIEWER;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
 import static org.junit.Assert.fail;
 
@@ -33,6 +36,7 @@ import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gerrit.common.TimeUtil;
 import com.google.gerrit.common.data.SubmitRecord;
 import com.google.gerrit.reviewdb.client.Account;
@@ -45,6 +49,8 @@ import com.google.gerrit.reviewdb.client.PatchLineComment.Status;
 import com.google.gerrit.reviewdb.client.PatchSet;
 import com.google.gerrit.reviewdb.client.PatchSetApproval;
 import com.google.gerrit.reviewdb.client.RevId;
+import com.google.gerrit.reviewdb.server.ChangeAccess;
+import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.reviewdb.server.ReviewDbUtil;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.IdentifiedUser;
@@ -55,14 +61,20 @@ import com.google.gerrit.server.notedb.ChangeNotesCommit.ChangeNotesRevWalk;
 import com.google.gerrit.server.util.RequestId;
 import com.google.gerrit.testutil.TestChanges;
 import com.google.gerrit.testutil.TestTimeUtil;
+import com.google.gwtorm.server.ListResultSet;
 import com.google.gwtorm.server.OrmException;
 import com.google.inject.Inject;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.easymock.EasyMock;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
@@ -3531,6 +3543,73 @@ public class ChangeNotesTest extends AbstractChangeNotesTest {
     update.commit();
   }
 
+  @Test
+  public void serializeState() throws Exception {
+    Change c = newChange();
+    RevCommit commit = tr.commit().message("PS2").create();
+    ChangeUpdate update = newUpdate(c, changeOwner);
+    update.putApproval("Code-Review", (short) -1);
+    update.putReviewer(otherUser.getAccountId(), CC);
+    update.putReviewerByEmail(new Address("Foo Bar", "foo.bar@gerritcodereview.com"), REVIEWER);
+    update.setHashtags(ImmutableSet.of("foo", "bar"));
+    update.setChangeMessage("Needs work");
+    update.putComment(
+        Status.PUBLISHED,
+        newComment(
+            c.currentPatchSetId(),
+            "a.txt",
+            "uuid1",
+            new CommentRange(1, 2, 3, 4),
+            1,
+            changeOwner,
+            null,
+            TimeUtil.nowTs(),
+            "Comment",
+            (short) 1,
+            commit.name(),
+            true));
+    update.commit();
+
+    ChangeNotesState state;
+    try (ChangeNotesRevWalk walk = ChangeNotesCommit.newRevWalk(repo)) {
+      state =
+          new ChangeNotesParser(c.getId(), newNotes(c).getMetaId(), walk, noteUtil, args.metrics)
+              .parseAll();
+    }
+    ChangeNotesState.Serializer serializer = ChangeNotesState.Serializer.INSTANCE;
+    byte[] bytes = serializer.serialize(state);
+    ChangeNotesState copy = serializer.deserialize(bytes);
+
+    assertThat(serializer.serialize(copy)).isEqualTo(bytes);
+    assertThat(copy.metaId()).isEqualTo(state.metaId());
+    assertThat(copy.columns()).isEqualTo(state.columns());
+    assertThat(copy.hashtags()).isEqualTo(state.hashtags());
+    assertThat(copy.approvals()).isEqualTo(state.approvals());
+    assertThat(copy.reviewers()).isEqualTo(state.reviewers());
+    assertThat(copy.reviewersByEmail()).isEqualTo(state.reviewersByEmail());
+    assertThat(copy.reviewerUpdates()).isEqualTo(state.reviewerUpdates());
+    assertThat(copy.allChangeMessages()).hasSize(1);
+    assertThat(copy.allChangeMessages().get(0).getMessage()).isEqualTo("Needs work");
+    assertThat(copy.changeMessagesByPatchSet().get(c.currentPatchSetId()).get(0))
+        .isSameAs(copy.allChangeMessages().get(0));
+    Comment comment = Iterables.getOnlyElement(copy.publishedComments().values());
+    assertThat(comment.message).isEqualTo("Comment");
+    assertThat(comment.parentUuid).isNull();
+    assertThat(comment.range).isEqualTo(new Comment.Range(1, 2, 3, 4));
+    assertThat(comment.unresolved).isTrue();
+  }
+
+  @Test
+  public void serializeCacheKey() throws Exception {
+    ChangeNotesCache.Key key =
+        new AutoValue_ChangeNotesCache_Key(
+            project,
+            new Change.Id(123),
+            ObjectId.fromString("deadbeefdeadbeefdeadbeefdeadbeefdeadbeef"));
+    ChangeNotesCache.Key.Serializer serializer = ChangeNotesCache.Key.Serializer.INSTANCE;
+    assertThat(serializer.deserialize(serializer.serialize(key))).isEqualTo(key);
+  }
+
   private boolean testJson() {
     return noteUtil.getWriteJson();
   }
@@ -3547,6 +3626,48 @@ public class ChangeNotesTest extends AbstractChangeNotesTest {
     }
   }
 
+  @Test
+  public void scanLoadsChangesOnScanExecutor() throws Exception {
+    List<Change> changes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Change c = newChange();
+      ChangeUpdate update = newUpdate(c, changeOwner);
+      update.setTopic("topic-" + i);
+      update.commit();
+      changes.add(c);
+    }
+
+    AtomicInteger tasks = new AtomicInteger();
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>()) {
+          @Override
+          protected void beforeExecute(Thread t, Runnable r) {
+            tasks.incrementAndGet();
+          }
+        };
+    try {
+      ChangeNotes.Factory factory =
+          new ChangeNotes.Factory(args, null, null, MoreExecutors.listeningDecorator(pool));
+      List<ChangeNotes> scanned = factory.scan(repo, emptyReviewDb(), project);
+
+      // All 3 changes fit in one batch, which is loaded by the pool.
+      assertThat(tasks.get()).isEqualTo(1);
+      Map<Change.Id, ChangeNotes> byId = new HashMap<>();
+      for (ChangeNotes notes : scanned) {
+        byId.put(notes.getChangeId(), notes);
+      }
+      assertThat(byId).hasSize(changes.size());
+      for (int i = 0; i < changes.size(); i++) {
+        Change c = changes.get(i);
+        ChangeNotes notes = byId.get(c.getId());
+        assertThat(notes.getChange().getKey()).isEqualTo(c.getKey());
+        assertThat(notes.getChange().getTopic()).isEqualTo("topic-" + i);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
   private void assertCause(
       Throwable e, Class<? extends Throwable> expectedClass, String expectedMsg) {
     Throwable cause = null;
@@ -3565,6 +3686,16 @@ public class ChangeNotesTest extends AbstractChangeNotesTest {
     assertThat(cause.getMessage()).isEqualTo(expectedMsg);
   }
 
+  private static ReviewDb emptyReviewDb() throws OrmException {
+    ChangeAccess changes = createNiceMock(ChangeAccess.class);
+    expect(changes.get(EasyMock.<Iterable<Change.Id>>anyObject()))
+        .andStubReturn(new ListResultSet<>(ImmutableList.of()));
+    ReviewDb db = createNiceMock(ReviewDb.class);
+    expect(db.changes()).andStubReturn(changes);
+    replay(changes, db);
+    return db;
+  }
+
   private void incrementCurrentPatchSetFieldOnly(Change c) {
     TestChanges.incrementPatchSet(c);
   }
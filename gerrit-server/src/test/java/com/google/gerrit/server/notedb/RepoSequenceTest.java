@@ -22,13 +22,21 @@ import static org.junit.Assert.fail;
 import com.github.rholder.retry.Retryer;
 import com.github.rholder.retry.RetryerBuilder;
 import com.github.rholder.retry.StopStrategies;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Runnables;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.reviewdb.client.RefNames;
 import com.google.gerrit.testutil.InMemoryRepositoryManager;
 import com.google.gwtorm.server.OrmException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -253,6 +261,70 @@ public class RepoSequenceTest {
     assertThat(s2.acquireCount).isEqualTo(1);
   }
 
+  @Test
+  public void prefetchNextBatch() throws Exception {
+    RepoSequence s =
+        new RepoSequence(
+            repoManager,
+            project,
+            "id",
+            () -> 1,
+            4,
+            Runnables.doNothing(),
+            RETRYER,
+            MoreExecutors.directExecutor(),
+            RepoSequence.NO_MONITOR);
+    assertThat(s.next()).isEqualTo(1);
+    assertThat(s.next()).isEqualTo(2);
+    assertThat(readBlob("id")).isEqualTo("5");
+
+    // Handing out the middle of the batch acquires the next one in the background.
+    assertThat(s.next()).isEqualTo(3);
+    assertThat(readBlob("id")).isEqualTo("9");
+    assertThat(s.acquireCount).isEqualTo(1);
+
+    assertThat(s.next()).isEqualTo(4);
+    assertThat(s.next()).isEqualTo(5);
+    assertThat(s.acquireCount).isEqualTo(2);
+    assertThat(s.next(3)).containsExactly(6, 7, 8).inOrder();
+    assertThat(readBlob("id")).isEqualTo("13");
+  }
+
+  @Test
+  public void concurrentCallersGetUniqueIds() throws Exception {
+    RepoSequence s = newSequence("id", 1, 7);
+    int threads = 8;
+    int perThread = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<Integer>>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  List<Integer> ids = new ArrayList<>();
+                  for (int i = 0; i < perThread; i++) {
+                    if (i % 2 == 0) {
+                      ids.add(s.next());
+                    } else {
+                      ids.addAll(s.next(3));
+                    }
+                  }
+                  return ids;
+                }));
+      }
+      Set<Integer> all = new HashSet<>();
+      for (Future<List<Integer>> f : futures) {
+        for (int id : f.get()) {
+          assertThat(all.add(id)).named("unique " + id).isTrue();
+        }
+      }
+      assertThat(all).hasSize(threads * perThread * 2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private RepoSequence newSequence(String name, int start, int batchSize) {
     return newSequence(name, start, batchSize, Runnables.doNothing(), RETRYER);
   }
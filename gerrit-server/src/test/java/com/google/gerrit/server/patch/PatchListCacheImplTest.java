@@ -0,0 +1,241 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assert_;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Patch;
+import com.google.gerrit.reviewdb.client.Patch.ChangeType;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PatchListCacheImplTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+  private static final String RENAMED_CONTENT = "1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n";
+
+  private InMemoryRepositoryManager repoManager;
+  private TestRepository<InMemoryRepository> tr;
+  private ExecutorService diffExecutor;
+  private AtomicInteger loads;
+  private boolean tooLarge;
+  private PatchListKey key;
+
+  @Before
+  public void setUp() throws Exception {
+    repoManager = new InMemoryRepositoryManager();
+    tr = new TestRepository<>(repoManager.createRepository(PROJECT));
+    diffExecutor = MoreExecutors.newDirectExecutorService();
+    loads = new AtomicInteger();
+
+    RevCommit parent =
+        tr.commit()
+            .add("modified.txt", "1\n2\n3\n")
+            .add("deleted.txt", "deleted\n")
+            .add("old.txt", RENAMED_CONTENT)
+            .create();
+    RevCommit commit =
+        tr.commit()
+            .parent(parent)
+            .add("modified.txt", "1\nx\n3\n")
+            .add("added.txt", "added\n")
+            .rm("deleted.txt")
+            .rm("old.txt")
+            .add("new.txt", RENAMED_CONTENT)
+            .create();
+    key = PatchListKey.againstDefaultBase(commit, Whitespace.IGNORE_NONE);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    diffExecutor.shutdownNow();
+  }
+
+  @Test
+  public void singleFileEntriesMatchFullList() throws Exception {
+    List<String> names =
+        ImmutableList.of(
+            Patch.COMMIT_MSG,
+            "modified.txt",
+            "added.txt",
+            "deleted.txt",
+            "new.txt",
+            // Old name of the renamed file, which neither list has an entry for.
+            "old.txt");
+    PatchList full = newCache().get(key, PROJECT);
+    assertThat(full.get("deleted.txt").getChangeType()).isEqualTo(ChangeType.DELETED);
+    assertThat(full.get("new.txt").getChangeType()).isEqualTo(ChangeType.RENAMED);
+    assertThat(full.get("new.txt").getOldName()).isEqualTo("old.txt");
+
+    for (String name : names) {
+      PatchList single = newCache().getFile(key, PROJECT, name);
+      assertThat(single).isNotSameAs(full);
+      assertSameEntry(single.get(name), full.get(name));
+      assertThat(single.getOldId()).isEqualTo(full.getOldId());
+      assertThat(single.getNewId()).isEqualTo(full.getNewId());
+    }
+  }
+
+  @Test
+  public void singleFileListOnlyContainsFile() throws Exception {
+    PatchList single = newCache().getFile(key, PROJECT, "modified.txt");
+    assertThat(single.getPatches().stream().map(PatchListEntry::getNewName).collect(toList()))
+        .containsExactly(Patch.COMMIT_MSG, "modified.txt");
+  }
+
+  @Test
+  public void getFileReturnsCachedFullList() throws Exception {
+    PatchListCacheImpl cache = newCache();
+    PatchList full = cache.get(key, PROJECT);
+    assertThat(loads.get()).isEqualTo(1);
+
+    assertThat(cache.getFile(key, PROJECT, "modified.txt")).isSameAs(full);
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void getFileCachesSingleFile() throws Exception {
+    PatchListCacheImpl cache = newCache();
+    PatchList single = cache.getFile(key, PROJECT, "modified.txt");
+    assertThat(cache.getFile(key, PROJECT, "modified.txt")).isSameAs(single);
+    assertThat(loads.get()).isEqualTo(1);
+
+    cache.getFile(key, PROJECT, "added.txt");
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void largeObjectIsNotComputedAgain() throws Exception {
+    PatchListCacheImpl cache = newCache();
+    tooLarge = true;
+    assertNotAvailable(cache, null);
+    assertThat(loads.get()).isEqualTo(1);
+
+    tooLarge = false;
+    assertNotAvailable(cache, null);
+    assertThat(loads.get()).isEqualTo(1);
+
+    // Failing to compute the full list does not prevent computing a single file.
+    PatchList single = cache.getFile(key, PROJECT, "modified.txt");
+    assertThat(single.get("modified.txt").getChangeType()).isEqualTo(ChangeType.MODIFIED);
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void largeSingleFileIsNotComputedAgain() throws Exception {
+    PatchListCacheImpl cache = newCache();
+    tooLarge = true;
+    assertNotAvailable(cache, "modified.txt");
+    assertThat(loads.get()).isEqualTo(1);
+
+    tooLarge = false;
+    assertNotAvailable(cache, "modified.txt");
+    assertThat(loads.get()).isEqualTo(1);
+
+    cache.getFile(key, PROJECT, "added.txt");
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  private void assertNotAvailable(PatchListCacheImpl cache, String fileName) throws Exception {
+    try {
+      if (fileName != null) {
+        cache.getFile(key, PROJECT, fileName);
+      } else {
+        cache.get(key, PROJECT);
+      }
+      assert_().fail("expected PatchListNotAvailableException");
+    } catch (PatchListNotAvailableException e) {
+      // Expected.
+    }
+  }
+
+  private static void assertSameEntry(PatchListEntry actual, PatchListEntry expected) {
+    assertThat(actual.getChangeType()).isEqualTo(expected.getChangeType());
+    assertThat(actual.getPatchType()).isEqualTo(expected.getPatchType());
+    assertThat(actual.getOldName()).isEqualTo(expected.getOldName());
+    assertThat(actual.getNewName()).isEqualTo(expected.getNewName());
+    assertThat(actual.getHeaderLines()).isEqualTo(expected.getHeaderLines());
+    assertThat(actual.getEdits()).isEqualTo(expected.getEdits());
+    assertThat(actual.getEditsDueToRebase()).isEqualTo(expected.getEditsDueToRebase());
+    assertThat(actual.getInsertions()).isEqualTo(expected.getInsertions());
+    assertThat(actual.getDeletions()).isEqualTo(expected.getDeletions());
+    assertThat(actual.getSize()).isEqualTo(expected.getSize());
+    assertThat(actual.getSizeDelta()).isEqualTo(expected.getSizeDelta());
+  }
+
+  private PatchListCacheImpl newCache() {
+    return new PatchListCacheImpl(
+        CacheBuilder.newBuilder().build(),
+        CacheBuilder.newBuilder().build(),
+        CacheBuilder.newBuilder().build(),
+        CacheBuilder.newBuilder().build(),
+        CacheBuilder.newBuilder().build(),
+        CacheBuilder.newBuilder().build(),
+        new LoaderFactory(),
+        null,
+        null,
+        new Config());
+  }
+
+  /** Creates loaders which count their runs and can fail like a too large object. */
+  private class LoaderFactory implements PatchListLoader.Factory {
+    @Override
+    public PatchListLoader create(PatchListKey key, Project.NameKey project) {
+      return create(key, project, null);
+    }
+
+    @Override
+    public PatchListLoader create(PatchListKey key, Project.NameKey project, String fileName) {
+      // The patch list cache and auto merger are not used for a commit with a single parent.
+      return new PatchListLoader(
+          repoManager,
+          null,
+          new Config(),
+          diffExecutor,
+          null,
+          new PatchListLoader.Metrics(new DisabledMetricMaker()),
+          key,
+          project,
+          fileName) {
+        @Override
+        public PatchList call() throws IOException, PatchListNotAvailableException {
+          loads.incrementAndGet();
+          if (tooLarge) {
+            throw new LargeObjectException();
+          }
+          return super.call();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright (C) 2017 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.patch.PatchListLoader.TimeoutCause;
+import com.google.gerrit.testutil.InMemoryRepositoryManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PatchListLoaderTest {
+  private static final Project.NameKey PROJECT = new Project.NameKey("project");
+  private static final List<String> FILES = ImmutableList.of("a.txt", "b.txt", "c.txt", "d.txt");
+
+  private InMemoryRepositoryManager repoManager;
+  private TestRepository<InMemoryRepository> tr;
+  private CountDownLatch unblock;
+  private ThreadPoolExecutor diffExecutor;
+  private boolean blockRunning;
+  private List<TimeoutCause> timeouts;
+
+  @Before
+  public void setUp() throws Exception {
+    repoManager = new InMemoryRepositoryManager();
+    tr = new TestRepository<>(repoManager.createRepository(PROJECT));
+    unblock = new CountDownLatch(1);
+    timeouts = Collections.synchronizedList(new ArrayList<>());
+
+    // Holds up the diff of one file on one thread, either before or after it started running. The
+    // other files are diffed on the other thread.
+    AtomicBoolean first = new AtomicBoolean(true);
+    diffExecutor =
+        new ThreadPoolExecutor(2, 2, 0, SECONDS, new LinkedBlockingQueue<>()) {
+          @Override
+          protected void beforeExecute(Thread t, Runnable r) {
+            if (!blockRunning && first.compareAndSet(true, false)) {
+              Uninterruptibles.awaitUninterruptibly(unblock);
+            }
+          }
+
+          @Override
+          protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return super.newTaskFor(
+                () -> {
+                  T result = callable.call();
+                  if (blockRunning && first.compareAndSet(true, false)) {
+                    Uninterruptibles.awaitUninterruptibly(unblock);
+                  }
+                  return result;
+                });
+          }
+        };
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    unblock.countDown();
+    diffExecutor.shutdownNow();
+    diffExecutor.awaitTermination(10, SECONDS);
+  }
+
+  @Test
+  public void timeoutOfQueuedFileDoesNotAffectOtherFiles() throws Exception {
+    assertTimeoutOfOneFile(TimeoutCause.QUEUED);
+  }
+
+  @Test
+  public void timeoutOfRunningFileDoesNotAffectOtherFiles() throws Exception {
+    blockRunning = true;
+    assertTimeoutOfOneFile(TimeoutCause.RUNNING);
+  }
+
+  private void assertTimeoutOfOneFile(TimeoutCause cause) throws Exception {
+    TestRepository<InMemoryRepository>.CommitBuilder parentBuilder = tr.commit();
+    for (String file : FILES) {
+      parentBuilder.add(file, "1\n2\n3\n");
+    }
+    RevCommit parent = parentBuilder.create();
+    TestRepository<InMemoryRepository>.CommitBuilder commitBuilder = tr.commit().parent(parent);
+    for (String file : FILES) {
+      commitBuilder.add(file, "1\nx\n3\n");
+    }
+    RevCommit commit = commitBuilder.create();
+
+    PatchList patchList = newLoader(commit).call();
+
+    assertThat(timeouts).containsExactly(cause);
+    // The file that timed out falls back to the simpler algorithm, which finds the same edit.
+    for (String file : FILES) {
+      assertThat(patchList.get(file).getEdits()).containsExactly(new Edit(1, 2, 1, 2));
+    }
+  }
+
+  private PatchListLoader newLoader(RevCommit commit) {
+    Config cfg = new Config();
+    cfg.setString("cache", "diff", "timeout", "1 s");
+    cfg.setInt("cache", "diff", "parallelism", FILES.size());
+    // The patch list cache and auto merger are not used for a commit with a single parent.
+    return new PatchListLoader(
+        repoManager,
+        null,
+        cfg,
+        diffExecutor,
+        null,
+        new PatchListLoader.Metrics(
+            new DisabledMetricMaker() {
+              @SuppressWarnings("unchecked")
+              @Override
+              public <F1> Counter1<F1> newCounter(String name, Description desc, Field<F1> field1) {
+                return new Counter1<F1>() {
+                  @Override
+                  public void incrementBy(F1 field1, long value) {
+                    for (long i = 0; i < value; i++) {
+                      timeouts.add((TimeoutCause) field1);
+                    }
+                  }
+
+                  @Override
+                  public void remove() {}
+                };
+              }
+            }),
+        PatchListKey.againstDefaultBase(commit, Whitespace.IGNORE_NONE),
+        PROJECT);
+  }
+}
@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import com.google.gerrit.reviewdb.client.Patch;
 import java.util.Arrays;
 import java.util.Comparator;
+import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Test;
 
 public class PatchListTest {
@@ -65,4 +66,22 @@ public class PatchListTest {
         });
     assertThat(names).isEqualTo(want);
   }
+
+  @Test
+  public void serializerRoundTrip() throws Exception {
+    ObjectId oldId = ObjectId.fromString("0123456789012345678901234567890123456789");
+    ObjectId newId = ObjectId.fromString("abcdefabcdefabcdefabcdefabcdefabcdefabcd");
+    PatchListEntry[] entries = {PatchListEntry.empty("b"), PatchListEntry.empty("a")};
+    PatchList pl =
+        new PatchList(oldId, newId, false, ComparisonType.againstOtherPatchSet(), entries);
+
+    PatchList.Serializer s = new PatchList.Serializer();
+    PatchList copy = s.deserialize(s.serialize(pl));
+    assertThat(copy.getOldId()).isEqualTo(oldId);
+    assertThat(copy.getNewId()).isEqualTo(newId);
+    assertThat(copy.getPatches().stream().map(PatchListEntry::getNewName).toArray())
+        .asList()
+        .containsExactly("a", "b")
+        .inOrder();
+  }
 }
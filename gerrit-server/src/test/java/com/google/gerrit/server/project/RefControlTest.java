@@ -122,10 +122,12 @@ public class RefControlTest {
 
   private void assertCanRead(String ref, ProjectControl u) {
     assertThat(u.controlForRef(ref).isVisible()).named("can read " + ref).isTrue();
+    assertThat(u.isRefVisible(ref)).named("ref visible " + ref).isTrue();
   }
 
   private void assertCannotRead(String ref, ProjectControl u) {
     assertThat(u.controlForRef(ref).isVisible()).named("cannot read " + ref).isFalse();
+    assertThat(u.isRefVisible(ref)).named("ref not visible " + ref).isFalse();
   }
 
   private void assertCanSubmit(String ref, ProjectControl u) {
@@ -488,6 +490,25 @@ public class RefControlTest {
     assertCanRead("refs/heads/foobar", u);
   }
 
+  @Test
+  public void refVisibilityIsSharedOnlyByRefsWithSameSections() {
+    allow(parent, READ, REGISTERED_USERS, "refs/*");
+    block(local, READ, REGISTERED_USERS, "refs/heads/hidden/*");
+    block(local, READ, REGISTERED_USERS, "refs/heads/secret");
+    block(local, READ, REGISTERED_USERS, "^refs/heads/.*-private");
+
+    ProjectControl u = user(local);
+    assertCanRead("refs/heads/master", u);
+    assertCannotRead("refs/heads/hidden/a", u);
+    assertCanRead("refs/heads/hiddenness", u);
+    assertCannotRead("refs/heads/hidden/b/c", u);
+    assertCannotRead("refs/heads/secret", u);
+    assertCanRead("refs/heads/secret2", u);
+    assertCannotRead("refs/heads/foo-private", u);
+    assertCanRead("refs/heads/feature/x", u);
+    assertCanRead("refs/tags/v1", u);
+  }
+
   @Test
   public void inheritSubmit_OverridesAndDeniesOfRef() {
     allow(parent, SUBMIT, REGISTERED_USERS, "refs/*");
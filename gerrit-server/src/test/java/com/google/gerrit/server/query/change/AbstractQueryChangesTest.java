@@ -18,6 +18,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.TruthJUnit.assume;
 import static com.google.gerrit.extensions.client.ListChangesOption.DETAILED_LABELS;
 import static com.google.gerrit.extensions.client.ListChangesOption.REVIEWED;
+import static com.google.gerrit.server.group.SystemGroupBackend.ANONYMOUS_USERS;
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -31,11 +32,13 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Streams;
 import com.google.common.truth.ThrowableSubject;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.TimeUtil;
+import com.google.gerrit.common.data.Permission;
 import com.google.gerrit.extensions.api.GerritApi;
 import com.google.gerrit.extensions.api.changes.AddReviewerInput;
 import com.google.gerrit.extensions.api.changes.Changes.QueryRequest;
@@ -59,6 +62,7 @@ import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.lifecycle.LifecycleManager;
 import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.AccountGroup;
 import com.google.gerrit.reviewdb.client.Branch;
 import com.google.gerrit.reviewdb.client.Change;
 import com.google.gerrit.reviewdb.client.Patch;
@@ -84,6 +88,7 @@ import com.google.gerrit.server.change.ChangeTriplet;
 import com.google.gerrit.server.change.PatchSetInserter;
 import com.google.gerrit.server.config.AllUsersName;
 import com.google.gerrit.server.git.MetaDataUpdate;
+import com.google.gerrit.server.git.ProjectConfig;
 import com.google.gerrit.server.index.FieldDef;
 import com.google.gerrit.server.index.IndexConfig;
 import com.google.gerrit.server.index.QueryOptions;
@@ -98,6 +103,8 @@ import com.google.gerrit.server.notedb.NoteDbChangeState;
 import com.google.gerrit.server.notedb.NoteDbChangeState.PrimaryStorage;
 import com.google.gerrit.server.project.ChangeControl;
 import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.Util;
+import com.google.gerrit.server.query.Predicate;
 import com.google.gerrit.server.schema.SchemaCreator;
 import com.google.gerrit.server.update.BatchUpdate;
 import com.google.gerrit.server.util.ManualRequestContext;
@@ -1506,6 +1513,99 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     assertQuery(q + " visibleto:" + user2.get(), change1);
   }
 
+  @Test
+  public void queryIsRestrictedToVisibleProjects() throws Exception {
+    TestRepository<Repo> repo1 = createProject("repo1");
+    TestRepository<Repo> repo2 = createProject("repo2");
+    Change change1 = insert(repo1, newChange(repo1));
+    Change change2 = insert(repo2, newChange(repo2));
+
+    requestContext.setContext(newRequestContext(createAccount("anotheruser")));
+    assertQuery("status:open", change2, change1);
+
+    // Revoking access takes effect without waiting for the user's cached projects to expire.
+    ProjectConfig cfg = projectCache.checkedGet(new Project.NameKey("repo2")).getConfig();
+    Util.block(cfg, Permission.READ, ANONYMOUS_USERS, "refs/*");
+    commitAndEvict(cfg);
+
+    Predicate<ChangeData> q = queryBuilder.parse("status:open");
+    Predicate<ChangeData> restricted = queryProcessor.restrictToVisible(q);
+    assertThat(restricted.getChild(0)).isSameAs(q);
+    assertThat(restricted.getChild(1).getChildren()).contains(new ProjectPredicate("repo1"));
+    assertThat(restricted.getChild(1).getChildren())
+        .doesNotContain(new ProjectPredicate("repo2"));
+    assertQuery("status:open", change1);
+
+    // The first user is an administrator and can access every project.
+    requestContext.setContext(newRequestContext(userId));
+    q = queryBuilder.parse("status:open");
+    assertThat(queryProcessor.restrictToVisible(q)).isSameAs(q);
+  }
+
+  @Test
+  public void visibleProjectsFollowGroupMembership() throws Exception {
+    TestRepository<Repo> repo1 = createProject("repo1");
+    TestRepository<Repo> repo2 = createProject("repo2");
+    Change change1 = insert(repo1, newChange(repo1));
+    Change change2 = insert(repo2, newChange(repo2));
+    String readers = createGroup("readers", "Administrators");
+    ProjectConfig cfg = projectCache.checkedGet(new Project.NameKey("repo2")).getConfig();
+    Util.allow(
+        cfg,
+        Permission.READ,
+        new AccountGroup.UUID(gApi.groups().id(readers).get().id),
+        "refs/*",
+        true);
+    commitAndEvict(cfg);
+
+    Account.Id user2 = createAccount("anotheruser");
+    requestContext.setContext(newRequestContext(user2));
+    assertQuery("status:open", change1);
+
+    requestContext.setContext(newRequestContext(userId));
+    gApi.groups().id(readers).addMembers("anotheruser");
+    requestContext.setContext(newRequestContext(user2));
+    assertQuery("status:open", change2, change1);
+
+    requestContext.setContext(newRequestContext(userId));
+    gApi.groups().id(readers).removeMembers("anotheruser");
+    requestContext.setContext(newRequestContext(user2));
+    assertQuery("status:open", change1);
+  }
+
+  @Test
+  public void queryLimitedToProjectOrChangeIsNotRestricted() throws Exception {
+    TestRepository<Repo> repo1 = createProject("repo1");
+    TestRepository<Repo> repo2 = createProject("repo2");
+    Change change1 = insert(repo1, newChange(repo1));
+    insert(repo2, newChange(repo2));
+    ProjectConfig cfg = projectCache.checkedGet(new Project.NameKey("repo2")).getConfig();
+    Util.block(cfg, Permission.READ, ANONYMOUS_USERS, "refs/*");
+    commitAndEvict(cfg);
+
+    requestContext.setContext(newRequestContext(createAccount("anotheruser")));
+    for (String query :
+        ImmutableList.of(
+            "project:repo1",
+            "status:open project:repo1",
+            "project:repo1 OR project:repo2",
+            "change:" + change1.getId().get(),
+            "change:" + change1.getKey().get() + " status:open")) {
+      Predicate<ChangeData> q = queryBuilder.parse(query);
+      assertThat(queryProcessor.restrictToVisible(q)).named(query).isSameAs(q);
+    }
+
+    Predicate<ChangeData> q = queryBuilder.parse("project:repo1 OR status:open");
+    assertThat(queryProcessor.restrictToVisible(q)).isNotSameAs(q);
+  }
+
+  private void commitAndEvict(ProjectConfig cfg) throws Exception {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(cfg.getName())) {
+      cfg.commit(md);
+    }
+    projectCache.evict(cfg.getProject());
+  }
+
   @Test
   public void byCommentBy() throws Exception {
     TestRepository<Repo> repo = createProject("repo");
@@ -1992,6 +2092,27 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     testByCommitsOnBranchNotMerged(repo, ImmutableSet.of(missing));
   }
 
+  @Test
+  public void byBranchKeys() throws Exception {
+    TestRepository<Repo> repo = createProject("repo");
+    Change change1 = insert(repo, newChange(repo));
+    Change change2 = insert(repo, newChange(repo));
+    Change.Key missing = new Change.Key("I0000000000000000000000000000000000000000");
+
+    ListMultimap<Change.Key, ChangeData> byKey =
+        internalChangeQuery.byBranchKeys(
+            change1.getDest(), ImmutableList.of(change1.getKey(), change2.getKey(), missing));
+    assertThat(byKey.keySet()).containsExactly(change1.getKey(), change2.getKey());
+    assertThat(Iterables.getOnlyElement(byKey.get(change1.getKey())).getId())
+        .isEqualTo(change1.getId());
+    assertThat(Iterables.getOnlyElement(byKey.get(change2.getKey())).getId())
+        .isEqualTo(change2.getId());
+
+    Branch.NameKey other = new Branch.NameKey(change1.getProject(), "refs/heads/other");
+    assertThat(internalChangeQuery.byBranchKeys(other, ImmutableList.of(change1.getKey())))
+        .isEmpty();
+  }
+
   private void testByCommitsOnBranchNotMerged(TestRepository<Repo> repo, Collection<ObjectId> extra)
       throws Exception {
     int n = 10;
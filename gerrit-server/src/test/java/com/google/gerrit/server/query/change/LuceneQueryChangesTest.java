@@ -14,8 +14,12 @@
 
 package com.google.gerrit.server.query.change;
 
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.index.change.ChangeCursor;
 import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
 import com.google.gerrit.testutil.ConfigSuite;
 import com.google.gerrit.testutil.InMemoryModule;
@@ -23,6 +27,7 @@ import com.google.gerrit.testutil.InMemoryRepositoryManager.Repo;
 import com.google.gerrit.testutil.IndexVersions;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.eclipse.jgit.junit.TestRepository;
@@ -73,4 +78,29 @@ public class LuceneQueryChangesTest extends AbstractQueryChangesTest {
     exception.expectMessage("Cannot create full-text query with value: \\");
     assertQuery("owner: \"" + nameEmail + "\"\\", change1);
   }
+
+  @Test
+  public void searchAfterCursor() throws Exception {
+    TestRepository<Repo> repo = createProject("repo");
+    List<Change> changes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      changes.add(insert(repo, newChange(repo)));
+    }
+
+    assertThat(queryAfter(changes.get(2)))
+        .containsExactly(changes.get(1).getId(), changes.get(0).getId())
+        .inOrder();
+    assertThat(queryAfter(changes.get(1))).containsExactly(changes.get(0).getId());
+    assertThat(queryAfter(changes.get(0))).isEmpty();
+  }
+
+  private List<Change.Id> queryAfter(Change c) throws Exception {
+    return queryProcessor
+        .setSearchAfter(ChangeCursor.create(c.getLastUpdatedOn().getTime(), c.getId().get()))
+        .query(queryBuilder.parse("status:new"))
+        .entities()
+        .stream()
+        .map(ChangeData::getId)
+        .collect(toList());
+  }
 }
@@ -29,6 +29,7 @@ import com.google.gerrit.reviewdb.server.ReviewDb;
 import com.google.gerrit.server.GerritPersonIdent;
 import com.google.gerrit.server.GerritPersonIdentProvider;
 import com.google.gerrit.server.cache.h2.DefaultCacheFactory;
+import com.google.gerrit.server.change.ChangeJsonExecutor;
 import com.google.gerrit.server.config.AllProjectsName;
 import com.google.gerrit.server.config.AllProjectsNameProvider;
 import com.google.gerrit.server.config.AllUsersName;
@@ -59,6 +60,7 @@ import com.google.gerrit.server.index.group.AllGroupsIndexer;
 import com.google.gerrit.server.index.group.GroupSchemaDefinitions;
 import com.google.gerrit.server.mail.SignedTokenEmailTokenVerifier;
 import com.google.gerrit.server.notedb.ChangeBundleReader;
+import com.google.gerrit.server.notedb.ChangeNotesScanExecutor;
 import com.google.gerrit.server.notedb.GwtormChangeBundleReader;
 import com.google.gerrit.server.notedb.MutableNotesMigration;
 import com.google.gerrit.server.notedb.NotesMigration;
@@ -215,6 +217,19 @@ public class InMemoryModule extends FactoryModule {
             return MoreExecutors.newDirectExecutorService();
           }
         });
+    // Replacement of ChangeNotesScanExecutorModule to not use thread pool in the tests
+    install(
+        new AbstractModule() {
+          @Override
+          protected void configure() {}
+
+          @Provides
+          @Singleton
+          @ChangeNotesScanExecutor
+          public ListeningExecutorService createChangeNotesScanExecutor() {
+            return MoreExecutors.newDirectExecutorService();
+          }
+        });
     install(new DefaultCacheFactory.Module());
     install(new FakeEmailSender.Module());
     install(new SignedTokenEmailTokenVerifier.Module());
@@ -255,6 +270,13 @@ public class InMemoryModule extends FactoryModule {
     return MoreExecutors.newDirectExecutorService();
   }
 
+  @Provides
+  @Singleton
+  @ChangeJsonExecutor
+  public ListeningExecutorService createChangeJsonExecutor() {
+    return MoreExecutors.newDirectExecutorService();
+  }
+
   @Provides
   @Singleton
   InMemoryDatabase getInMemoryDatabase(SchemaCreator schemaCreator) throws OrmException {
@@ -83,6 +83,11 @@ public class Query extends SshCommand {
     processor.setIncludeSubmitRecords(on);
   }
 
+  @Option(name = "--stream", usage = "Send each change as soon as it is formatted")
+  void setStream(boolean on) {
+    processor.setFlushEachChange(on);
+  }
+
   @Option(
     name = "--start",
     aliases = {"-S"},